@@ -14,6 +14,10 @@ public class Address {
         this.city = city;
     }
 
+    public Address(Address other) {
+        this(other.street, other.state, other.zip, other.country, other.city);
+    }
+
     public String getStreet() {
         return street;
     }
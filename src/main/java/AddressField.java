@@ -0,0 +1,23 @@
+/**
+ * Parts of a customer's mailing address that transactions can be grouped by for regional reporting
+ */
+public enum AddressField {
+    STATE, ZIP, COUNTRY;
+
+    /**
+     * This part of the address, or null if the address or the field isn't filled in
+     */
+    public String of(Address address) {
+        if (address == null) {
+            return null;
+        }
+        switch (this) {
+            case STATE:
+                return address.getState();
+            case ZIP:
+                return address.getZip();
+            default:
+                return address.getCountry();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Non-blocking front end to a VehicleManager. Every operation returns a CompletableFuture straight away and runs on a
+ * small fixed pool of worker threads, so a service can take requests from many callers without tying up one of its
+ * own threads for each file read or write.
+ *
+ * The pool only accepts a bounded amount of work: at most one running operation per thread plus queueCapacity waiting
+ * ones. What happens past that depends on the saturation policy, either the new operation fails straight away with a
+ * RejectedExecutionException, or it is held back until there is room, up to waitCapacity held back operations after
+ * which it fails the same way. Neither ever blocks the caller.
+ */
+public class AsyncVehicleManager implements AutoCloseable {
+
+    public enum SaturationPolicy {
+        // Fail the returned future immediately when the pool and queue are full
+        REJECT,
+        // Hold the operation back until there is room, its future completing once it has had its turn. Held back
+        // operations are admitted in the order they were submitted, ahead of anything submitted after them
+        WAIT
+    }
+
+    // Operations the WAIT policy holds back when no limit is given
+    private static final int DEFAULT_WAIT_CAPACITY = 10000;
+
+    private final VehicleManager manager;
+    private final ThreadPoolExecutor executor;
+    private final SaturationPolicy policy;
+
+    // One permit per operation the pool can hold, running or queued
+    private final Semaphore admission;
+    private final AtomicLong rejected = new AtomicLong();
+
+    // Operations held back by the WAIT policy, in the order they were submitted. Guarded by itself, which is also held
+    // while deciding whether a new operation can go straight to the pool, so it can't overtake ones held back
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private final int waitCapacity;
+
+    /**
+     * Holds back up to DEFAULT_WAIT_CAPACITY operations under the WAIT policy
+     *
+     * @param manager manager the operations are run against
+     * @param threads number of worker threads doing the blocking I/O
+     * @param queueCapacity number of operations allowed to wait for a free thread
+     * @param policy what to do with new operations when the pool and queue are full
+     */
+    public AsyncVehicleManager(VehicleManager manager, int threads, int queueCapacity, SaturationPolicy policy) {
+        this(manager, threads, queueCapacity, policy, DEFAULT_WAIT_CAPACITY);
+    }
+
+    /**
+     * @param manager manager the operations are run against
+     * @param threads number of worker threads doing the blocking I/O
+     * @param queueCapacity number of operations allowed to wait for a free thread
+     * @param policy what to do with new operations when the pool and queue are full
+     * @param waitCapacity number of operations the WAIT policy holds back before rejecting more
+     */
+    public AsyncVehicleManager(VehicleManager manager, int threads, int queueCapacity, SaturationPolicy policy,
+                               int waitCapacity) {
+        this.manager = manager;
+        this.policy = policy;
+        this.waitCapacity = waitCapacity;
+        this.admission = new Semaphore(threads + queueCapacity);
+
+        // The semaphore is what bounds the queue, so the executor's own queue never turns anything away
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "vehicle-manager-async-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public CompletableFuture<Void> addTransaction(Transaction transaction) {
+        return run(m -> m.addTransaction(transaction));
+    }
+
+    public CompletableFuture<Void> updateTransaction(Transaction transaction) {
+        return run(m -> m.updateTransaction(transaction));
+    }
+
+    public CompletableFuture<Void> activateTransaction(Transaction transaction) {
+        return run(m -> m.activateTransaction(transaction));
+    }
+
+    public CompletableFuture<Void> activateTransaction(int id) {
+        return run(m -> m.activateTransaction(id));
+    }
+
+    public CompletableFuture<Void> cancelTransaction(Transaction transaction) {
+        return run(m -> m.cancelTransaction(transaction));
+    }
+
+    public CompletableFuture<Void> cancelTransaction(int id) {
+        return run(m -> m.cancelTransaction(id));
+    }
+
+    public CompletableFuture<CancelSummary> cancelWhere(
+            Function<VehicleManager.TransactionQuery, VehicleManager.TransactionQuery> filters) {
+        return supply(m -> m.cancelWhere(filters.apply(m.getTransactions())));
+    }
+
+    public CompletableFuture<CancelSummary> purgeWhere(Predicate<Transaction> filter) {
+        return supply(m -> m.purgeWhere(filter));
+    }
+
+    /**
+     * Run a query built from getTransactions(), for example:
+     * async.query(q -> q.withState(ACTIVE).withEmail(email))
+     */
+    public CompletableFuture<ArrayList<Transaction>> query(
+            Function<VehicleManager.TransactionQuery, VehicleManager.TransactionQuery> filters) {
+        return supply(m -> filters.apply(m.getTransactions()).asList());
+    }
+
+    public CompletableFuture<Void> addVehicle(Vehicle vehicle) {
+        return run(m -> m.addVehicle(vehicle));
+    }
+
+    public CompletableFuture<Void> addVehicle(String fileName) {
+        return run(m -> m.addVehicle(fileName));
+    }
+
+    public CompletableFuture<ArrayList<Vehicle>> getVehicles() {
+        return supply(VehicleManager::getVehicles);
+    }
+
+    public CompletableFuture<Void> removeVehicle(Vehicle vehicle) {
+        return run(m -> m.removeVehicle(vehicle));
+    }
+
+    public CompletableFuture<Void> removeVehicle(String vin) {
+        return run(m -> m.removeVehicle(vin));
+    }
+
+    /**
+     * Run any other operation against the manager on the pool, subject to the same admission control
+     */
+    public <T> CompletableFuture<T> supply(Function<VehicleManager, T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                result.complete(operation.apply(manager));
+            } catch (Throwable e) {
+                result.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+            } finally {
+                release();
+            }
+        };
+
+        boolean admitted;
+        synchronized (waiting) {
+            admitted = waiting.isEmpty() && admission.tryAcquire();
+            if (!admitted && (policy == SaturationPolicy.REJECT || waiting.size() >= waitCapacity)) {
+                rejected.incrementAndGet();
+                result.completeExceptionally(new RejectedExecutionException(
+                        "Vehicle manager is saturated, try again later"));
+                return result;
+            }
+            if (!admitted) {
+                waiting.add(() -> {
+                    if (!dispatch(task, result)) {
+                        admission.release();
+                    }
+                });
+            }
+        }
+
+        if (admitted) {
+            if (!dispatch(task, result)) {
+                release();
+            }
+        } else {
+            // A permit may have come free while this was being queued
+            admitWaiting();
+        }
+        return result;
+    }
+
+    /**
+     * Number of operations turned away because the pool was full or shut down
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of operations held back by the WAIT policy until there is room in the pool
+     */
+    public int getWaitingCount() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * Number of operations currently running or waiting for a thread
+     */
+    public int getPendingCount() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+
+    /**
+     * The manager operations are run against
+     */
+    public VehicleManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Stop accepting operations. Ones already accepted still run to completion
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Void> run(Consumer<VehicleManager> operation) {
+        return supply(m -> {
+            operation.accept(m);
+            return null;
+        });
+    }
+
+    /**
+     * Hand an admitted operation to the pool, failing its future if the pool has been shut down
+     *
+     * @return whether the pool took it
+     */
+    private boolean dispatch(Runnable task, CompletableFuture<?> result) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            result.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    private void release() {
+        admission.release();
+        admitWaiting();
+    }
+
+    /**
+     * Pass free permits on to operations held back by the WAIT policy
+     */
+    private void admitWaiting() {
+        while (true) {
+            Runnable next;
+            synchronized (waiting) {
+                if (waiting.isEmpty() || !admission.tryAcquire()) {
+                    return;
+                }
+                next = waiting.poll();
+            }
+            // Dispatched outside the lock, the pool never runs anything on this thread
+            next.run();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Each vehicle's bookings by VIN, sorted by start time, for telling whether a vehicle is free over a stretch of time.
+ * Rents and leases book a vehicle from their start up to but not including their end. A buy books it from its start
+ * on for good. Active transactions always count. A draft counts only while it can still be activated, that is until
+ * its start time: after that it has been abandoned and holds nothing. Cancelled transactions are gone from the store
+ * and so from here too.
+ *
+ * Each vehicle also remembers the longest rent or lease it has had, so anything overlapping a range must start no
+ * earlier than that long before it. A lookup only reads the bookings starting in that window, however many older
+ * ones the vehicle has built up. The longest length is not shrunk when bookings go, which only makes the window a
+ * little wider than it has to be.
+ *
+ * Kept up to date as a store listener; lookups must be made under the store's read lock.
+ */
+class BookingIndex implements TransactionStore.Listener {
+
+    private final Map<String, Bookings> byVin = new HashMap<>();
+
+    /**
+     * Whether the vehicle has no booking overlapping the time from one instant up to but not including another, with
+     * drafts judged as of now
+     */
+    boolean isFree(String vin, long from, long to, long now) {
+        Bookings bookings = byVin.get(vin);
+        return bookings == null || bookings.overlapping(from, to, now, null);
+    }
+
+    /**
+     * The vehicle's bookings that overlap the time from one instant up to but not including another, with drafts
+     * judged as of now, rents and leases earliest first and then any buy
+     */
+    List<Transaction> overlapping(String vin, long from, long to, long now) {
+        List<Transaction> found = new ArrayList<>();
+        Bookings bookings = byVin.get(vin);
+        if (bookings != null) {
+            bookings.overlapping(from, to, now, found);
+        }
+        return found;
+    }
+
+    @Override
+    public void added(Transaction transaction) {
+        if (isBooking(transaction)) {
+            byVin.computeIfAbsent(transaction.getVehicle().getVin(), vin -> new Bookings()).add(transaction);
+        }
+    }
+
+    @Override
+    public void removed(Transaction transaction) {
+        if (isBooking(transaction)) {
+            String vin = transaction.getVehicle().getVin();
+            Bookings bookings = byVin.get(vin);
+            if (bookings != null && bookings.remove(transaction) && bookings.isEmpty()) {
+                byVin.remove(vin);
+            }
+        }
+    }
+
+    @Override
+    public void reloaded(Collection<Transaction> transactions) {
+        byVin.clear();
+        transactions.forEach(this::added);
+    }
+
+    private static boolean isBooking(Transaction transaction) {
+        return transaction.getVehicle() != null && transaction.getStartTime() != Transaction.NO_TIME;
+    }
+
+    /**
+     * Whether the transaction holds its vehicle as of now: it is active, or a draft that can still be activated
+     */
+    private static boolean holds(Transaction transaction, long now) {
+        return transaction.getState() == TransactionState.ACTIVE || now < transaction.getStartTime();
+    }
+
+    /**
+     * When the booking ends, or Long.MAX_VALUE for a buy, which never does
+     */
+    private static long end(Transaction transaction) {
+        Date end = transaction.getEndDate();
+        return end == null ? Long.MAX_VALUE : end.getTime();
+    }
+
+    /**
+     * One vehicle's bookings. Rents and leases are kept by start time; buys are kept apart since they never end and
+     * would otherwise make every lookup read back to the first booking
+     */
+    private static final class Bookings {
+        private final TreeMap<Long, List<Booking>> byStart = new TreeMap<>();
+        private final List<Booking> sales = new ArrayList<>();
+        private long longest;
+
+        void add(Transaction transaction) {
+            Booking booking = new Booking(transaction, transaction.getStartTime(), end(transaction));
+            if (booking.end == Long.MAX_VALUE) {
+                sales.add(booking);
+            } else {
+                byStart.computeIfAbsent(booking.start, start -> new ArrayList<>(1)).add(booking);
+                longest = Math.max(longest, booking.end - booking.start);
+            }
+        }
+
+        boolean remove(Transaction transaction) {
+            // Stored transactions are replaced rather than changed, so the start is still the one it was added with
+            if (sales.removeIf(booking -> booking.transaction == transaction)) {
+                return true;
+            }
+            List<Booking> starting = byStart.get(transaction.getStartTime());
+            if (starting == null || !starting.removeIf(booking -> booking.transaction == transaction)) {
+                return false;
+            }
+            if (starting.isEmpty()) {
+                byStart.remove(transaction.getStartTime());
+            }
+            return true;
+        }
+
+        boolean isEmpty() {
+            return byStart.isEmpty() && sales.isEmpty();
+        }
+
+        /**
+         * Collect the bookings overlapping the range into found, or with found null just say whether there are none
+         */
+        boolean overlapping(long from, long to, long now, List<Transaction> found) {
+            boolean free = true;
+            for (List<Booking> starting : byStart.subMap(from - longest, true, to, false).values()) {
+                for (Booking booking : starting) {
+                    if (booking.end > from && holds(booking.transaction, now)) {
+                        if (found == null) {
+                            return false;
+                        }
+                        free = false;
+                        found.add(booking.transaction);
+                    }
+                }
+            }
+            for (Booking sale : sales) {
+                if (sale.start < to && holds(sale.transaction, now)) {
+                    if (found == null) {
+                        return false;
+                    }
+                    free = false;
+                    found.add(sale.transaction);
+                }
+            }
+            return free;
+        }
+    }
+
+    private static final class Booking {
+        private final Transaction transaction;
+        private final long start;
+        private final long end;
+
+        Booking(Transaction transaction, long start, long end) {
+            this.transaction = transaction;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
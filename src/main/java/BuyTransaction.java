@@ -12,12 +12,40 @@ public class BuyTransaction extends Transaction {
         calculatePrice();
     }
 
+    /**
+     * For gson, which fills in the fields from the file
+     */
+    private BuyTransaction() {
+    }
+
+    /**
+     * Restore a stored buy with the price it was saved with
+     */
+    BuyTransaction(int id, Customer customer, Vehicle vehicle, long startTime, float warrantyPrice,
+                   TransactionState state, long activationTime, float price) {
+        super(id, customer, vehicle, startTime, state, activationTime, price);
+        this.warrantyPrice = warrantyPrice;
+        labelType();
+    }
+
+    private BuyTransaction(BuyTransaction other) {
+        super(other);
+        this.warrantyPrice = other.warrantyPrice;
+    }
+
     /**
      * Calculates the price using the formula: car price + warranty + tax fee (5% of price)
      * Note that this will not round to two decimal places, we leave it to other systems to decide how to treat rounding
      */
     protected void calculatePrice() {
-        price = (float) (vehicle.getPrice() * 1.05 + warrantyPrice);
+        price = quote(vehicle.getPrice(), warrantyPrice);
+    }
+
+    /**
+     * Price of buying a vehicle with this price and warranty, the same as a buy's price would be
+     */
+    public static float quote(float vehiclePrice, float warrantyPrice) {
+        return (float) (vehiclePrice * 1.05 + warrantyPrice);
     }
 
     @Override
@@ -25,6 +53,11 @@ public class BuyTransaction extends Transaction {
         this.type = "buy";
     }
 
+    @Override
+    public BuyTransaction copy() {
+        return new BuyTransaction(this);
+    }
+
     public float getWarrantyPrice() {
         return warrantyPrice;
     }
@@ -0,0 +1,44 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk cancel: which of the matching transactions were cancelled, and which were refused because they
+ * were already active and past their start date
+ */
+public class CancelSummary {
+
+    private final List<Transaction> cancelled;
+    private final List<Transaction> refused;
+
+    public CancelSummary(List<Transaction> cancelled, List<Transaction> refused) {
+        this.cancelled = Collections.unmodifiableList(cancelled);
+        this.refused = Collections.unmodifiableList(refused);
+    }
+
+    /**
+     * Copies of the transactions that were removed
+     */
+    public List<Transaction> getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Copies of the transactions that matched but could not be cancelled, and are still in the system
+     */
+    public List<Transaction> getRefused() {
+        return refused;
+    }
+
+    public int getCancelledCount() {
+        return cancelled.size();
+    }
+
+    public int getRefusedCount() {
+        return refused.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CancelSummary{cancelled=" + cancelled.size() + ", refused=" + refused.size() + "}";
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * A single change made through a VehicleManager, as published on its ChangeFeed. Sequence numbers are assigned in the
+ * order changes are committed and can be used to resume a feed subscription after a disconnect.
+ *
+ * Events are shared between all subscribers, so the transaction and vehicle on them should be treated as read-only.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        TRANSACTION_ADDED, TRANSACTION_UPDATED, TRANSACTION_ACTIVATED, TRANSACTION_CANCELLED, TRANSACTION_ENDED,
+        TRANSACTION_ARCHIVED, VEHICLE_ADDED, VEHICLE_REMOVED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final long timestamp;
+    private final Transaction transaction;
+    private final Vehicle vehicle;
+
+    public ChangeEvent(long sequence, Type type, long timestamp, Transaction transaction, Vehicle vehicle) {
+        this.sequence = sequence;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.transaction = transaction;
+        this.vehicle = vehicle;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Time the change was published, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Transaction the change applies to, or null for vehicle events
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Vehicle the change applies to. For transaction events this is the transaction's vehicle
+     */
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + (transaction != null ? " transaction " + transaction.getId()
+                : " vehicle " + vehicle.getVin());
+    }
+}
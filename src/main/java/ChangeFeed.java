@@ -0,0 +1,244 @@
+import exceptions.InvalidOperationException;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the changes made through a VehicleManager to any number of subscribers, so downstream systems can react to
+ * changes instead of polling the full transaction list.
+ *
+ * Publishing never blocks the manager. Each subscriber gets its own bounded buffer and is fed on a separate thread, at
+ * the pace it requests events. A subscriber that lets its buffer fill up is dropped and told the last sequence number
+ * it received, and can then resubscribe from that sequence as long as the events are still held in the feed's history.
+ *
+ * Sequence numbers start again at 1 with every new feed, so each feed also has a random epoch. A sequence number only
+ * means something together with the epoch of the feed that gave it out.
+ */
+public class ChangeFeed {
+
+    private final int historySize;
+    private final Clock clock;
+    private final long epoch;
+    private final ArrayDeque<ChangeEvent> history;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long nextSequence = 1;
+
+    /**
+     * @param historySize number of most recent events kept so subscribers can resume from an earlier sequence
+     */
+    public ChangeFeed(int historySize) {
+        this(historySize, Clock.systemUTC());
+    }
+
+    /**
+     * @param historySize number of most recent events kept so subscribers can resume from an earlier sequence
+     * @param clock source of each event's timestamp
+     */
+    public ChangeFeed(int historySize, Clock clock) {
+        this.historySize = historySize;
+        this.clock = clock;
+        this.history = new ArrayDeque<>(historySize);
+        // 0 is left for "no epoch yet"
+        long random;
+        do {
+            random = ThreadLocalRandom.current().nextLong();
+        } while (random == 0);
+        this.epoch = random;
+    }
+
+    /**
+     * Random number telling this feed's sequence numbers apart from those of any other feed, such as the one a
+     * restarted manager had before
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Assign the next sequence number to a change and hand it to every subscriber
+     */
+    ChangeEvent publish(ChangeEvent.Type type, Transaction transaction, Vehicle vehicle) {
+        synchronized (this) {
+            ChangeEvent event = new ChangeEvent(nextSequence++, type, clock.millis(), transaction, vehicle);
+
+            // Keep the most recent events around for resuming subscribers
+            if (history.size() == historySize) {
+                history.removeFirst();
+            }
+            history.addLast(event);
+
+            // Offering never blocks, so holding the lock here just keeps every subscriber's buffer in sequence order
+            subscriptions.forEach(s -> s.offer(event));
+            return event;
+        }
+    }
+
+    /**
+     * Subscribe to changes published from now on
+     *
+     * @param bufferSize maximum number of events held for this listener before it is considered too far behind
+     */
+    public Subscription subscribe(ChangeListener listener, int bufferSize) {
+        return subscribe(listener, bufferSize, getLastSequence());
+    }
+
+    /**
+     * Subscribe to every change after the given sequence number, replaying any the listener missed from the history
+     *
+     * @param fromSequence last sequence number the listener has already seen, or 0 to start at the oldest retained
+     * @param bufferSize maximum number of events held for this listener before it is considered too far behind. It
+     *                   needs to be large enough for the replayed events as well as new ones
+     */
+    public Subscription subscribe(ChangeListener listener, int bufferSize, long fromSequence) {
+        Subscription subscription = new Subscription(listener, bufferSize);
+
+        synchronized (this) {
+            long oldest = history.isEmpty() ? nextSequence : history.peekFirst().getSequence();
+            if (fromSequence > 0 && fromSequence + 1 < oldest) {
+                throw new InvalidOperationException("Cannot resume from sequence " + fromSequence
+                        + ", oldest event still retained is " + oldest);
+            }
+
+            // Replay what was missed, then join the live feed under the same lock so nothing falls in between
+            history.stream().filter(e -> e.getSequence() > fromSequence).forEach(subscription::offer);
+            if (!subscription.isCancelled()) {
+                subscriptions.add(subscription);
+            }
+        }
+
+        listener.onSubscribe(subscription);
+        return subscription;
+    }
+
+    /**
+     * Sequence number of the most recently published event, or 0 if nothing has been published yet
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * A single listener's place in the feed. Events are only delivered as they are requested, and delivery for one
+     * subscription happens on one thread at a time so the listener never sees events out of order.
+     */
+    public final class Subscription {
+        private final ChangeListener listener;
+        private final ArrayBlockingQueue<ChangeEvent> buffer;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private volatile boolean cancelled;
+        private volatile boolean overflowed;
+        private volatile boolean overflowNotified;
+        private volatile long lastSequence;
+
+        private Subscription(ChangeListener listener, int bufferSize) {
+            this.listener = listener;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        /**
+         * Allow up to n more events to be delivered
+         */
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Must request a positive number of events, got " + n);
+            }
+            // Add to the outstanding demand, capping at Long.MAX_VALUE which means unbounded
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            scheduleDrain();
+        }
+
+        /**
+         * Stop receiving events. Anything still buffered is discarded
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Sequence number of the last event delivered to the listener
+         */
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        private void offer(ChangeEvent event) {
+            if (cancelled) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                // Listener is too far behind, drop it rather than hold up the publisher or grow without bound
+                overflowed = true;
+                cancel();
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    if (overflowed) {
+                        buffer.clear();
+                        if (!overflowNotified) {
+                            overflowNotified = true;
+                            listener.onOverflow(lastSequence);
+                        }
+                        return;
+                    }
+                    if (cancelled) {
+                        buffer.clear();
+                        return;
+                    }
+                    if (demand.get() == 0 || buffer.isEmpty()) {
+                        break;
+                    }
+
+                    ChangeEvent event = buffer.poll();
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    lastSequence = event.getSequence();
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        // A failing listener is dropped so it doesn't take the feed thread down with it
+                        cancel();
+                    }
+                }
+            } finally {
+                draining.set(false);
+            }
+
+            // Something may have arrived between the last check and clearing the flag
+            if ((overflowed && !overflowNotified) || (!cancelled && demand.get() > 0 && !buffer.isEmpty())) {
+                scheduleDrain();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Receives events from a ChangeFeed subscription. Events are delivered one at a time, in sequence order, on a feed
+ * thread rather than the thread that made the change.
+ */
+public interface ChangeListener {
+
+    /**
+     * Called once when the subscription is created. By default this asks for every event; listeners that want to
+     * control the pace themselves can keep the subscription and call request as they are ready for more.
+     */
+    default void onSubscribe(ChangeFeed.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    /**
+     * Called for each event, only as many times as has been requested through the subscription
+     */
+    void onEvent(ChangeEvent event);
+
+    /**
+     * Called if the listener fell so far behind that its buffer filled up. The subscription is cancelled and no more
+     * events arrive; subscribe again from lastSequence to pick up where it left off.
+     *
+     * @param lastSequence sequence number of the last event delivered to this listener
+     */
+    default void onOverflow(long lastSequence) {
+    }
+}
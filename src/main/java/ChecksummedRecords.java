@@ -0,0 +1,161 @@
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk layout for the json data files with a CRC32C checksum on every record.
+ *
+ * The file is still a json array, but each record sits on a line of its own wrapped in an envelope:
+ *
+ *   [
+ *   {"crc":"1f2e3d4c","data":{...the record...}},
+ *   {"crc":"0a9b8c7d","data":{...}}
+ *   ]
+ *
+ * The checksum covers the exact text of the data value, so verifying a record needs no parsing at all. Keeping one
+ * record per line means a damaged record, or even damaged brackets, only cost that one line: everything else can still
+ * be found and checked line by line.
+ */
+class ChecksummedRecords {
+
+    private static final String ENVELOPE_START = "{\"crc\":\"";
+    private static final String DATA_START = "\",\"data\":";
+    private static final int CRC_LENGTH = 8;
+
+    // Characters in front of the data value on every record line
+    private static final int PREFIX_LENGTH = ENVELOPE_START.length() + CRC_LENGTH + DATA_START.length();
+
+    private ChecksummedRecords() {
+    }
+
+    /**
+     * Write the records out in the checksummed layout, each serialized by gson as its runtime type
+     */
+    static void write(Writer writer, Collection<?> records, Gson gson) throws IOException {
+        writer.write("[\n");
+        int written = 0;
+        for (Object record : records) {
+            String data = gson.toJson(record);
+            writer.write(ENVELOPE_START);
+            writer.write(String.format("%08x", crc(data)));
+            writer.write(DATA_START);
+            writer.write(data);
+            writer.write('}');
+            if (++written < records.size()) {
+                writer.write(',');
+            }
+            writer.write('\n');
+        }
+        writer.write("]\n");
+    }
+
+    /**
+     * Whether the text is in the checksummed layout, as opposed to a plain json array from before checksums were added
+     */
+    static boolean isChecksummed(char[] text) {
+        int i = skipWhitespace(text, 0);
+        if (i == text.length || text[i] != '[') {
+            return false;
+        }
+        i = skipWhitespace(text, i + 1);
+        return startsWith(text, i, ENVELOPE_START);
+    }
+
+    /**
+     * Start and end offsets of every line that should hold a record, without its trailing comma. Lines that are only
+     * brackets or whitespace are skipped, anything else is returned even if it is damaged so it can be reported
+     */
+    static List<int[]> recordLines(char[] text, int from, int to) {
+        List<int[]> lines = new ArrayList<>();
+        int start = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || text[i] == '\n') {
+                int[] line = trim(text, start, i);
+                if (line != null) {
+                    lines.add(line);
+                }
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Offsets of the data value in a record line if its checksum matches, otherwise null
+     */
+    static int[] verifiedData(char[] text, int[] line) {
+        int start = line[0];
+        int end = line[1];
+        if (end - start < PREFIX_LENGTH + 1 || !startsWith(text, start, ENVELOPE_START) || text[end - 1] != '}'
+                || !startsWith(text, start + ENVELOPE_START.length() + CRC_LENGTH, DATA_START)) {
+            return null;
+        }
+
+        long expected;
+        try {
+            expected = Long.parseLong(new String(text, start + ENVELOPE_START.length(), CRC_LENGTH), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int dataStart = start + PREFIX_LENGTH;
+        int dataEnd = end - 1;
+        return crc(new String(text, dataStart, dataEnd - dataStart)) == expected ? new int[]{dataStart, dataEnd} : null;
+    }
+
+    /**
+     * Line number, counting from 1, of an offset in the text. Only used for error messages, so a plain scan is fine
+     */
+    static int lineNumber(char[] text, int offset) {
+        int line = 1;
+        for (int i = 0; i < offset && i < text.length; i++) {
+            if (text[i] == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private static long crc(String data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static int[] trim(char[] text, int start, int end) {
+        while (start < end && Character.isWhitespace(text[start])) {
+            start++;
+        }
+        while (end > start && (Character.isWhitespace(text[end - 1]) || text[end - 1] == ',')) {
+            end--;
+        }
+        if (start == end || (end - start == 1 && (text[start] == '[' || text[start] == ']'))) {
+            return null;
+        }
+        return new int[]{start, end};
+    }
+
+    private static boolean startsWith(char[] text, int offset, String prefix) {
+        if (offset + prefix.length() > text.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(char[] text, int from) {
+        while (from < text.length && Character.isWhitespace(text[from])) {
+            from++;
+        }
+        return from;
+    }
+}
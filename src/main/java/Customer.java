@@ -14,6 +14,14 @@ public class Customer {
         this.email = email;
     }
 
+    /**
+     * Copy constructor, the mailing address is copied as well since it is mutable
+     */
+    public Customer(Customer other) {
+        this(other.firstName, other.lastName, other.mailingAddress == null ? null : new Address(other.mailingAddress),
+                other.phoneNumber, other.email);
+    }
+
     public String getFirstName() {
         return firstName;
     }
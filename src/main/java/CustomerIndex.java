@@ -0,0 +1,131 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Type-ahead indexes over the customer on each transaction: last name prefix, email domain and phone number prefix.
+ *
+ * Kept up to date as a store listener, so every add, remove and reload is applied as it happens and lookups never
+ * scan the whole transactions list. Lookups must be made under the store's read lock, which is what keeps them from
+ * overlapping a change.
+ *
+ * Last names and emails are matched ignoring case, and phone numbers on their digits alone so "(555) 12" finds
+ * "555-123-4567".
+ */
+class CustomerIndex implements TransactionStore.Listener {
+
+    private final PrefixTrie<Transaction> lastNames = new PrefixTrie<>();
+    private final PrefixTrie<Transaction> phones = new PrefixTrie<>();
+
+    // Domains are stored reversed, "mail.umgc.edu" as "ude.cgmu.liam", so a domain and its subdomains share a prefix
+    private final PrefixTrie<Transaction> domains = new PrefixTrie<>();
+
+    /**
+     * Transactions whose customer's last name starts with the prefix
+     */
+    List<Transaction> withLastNamePrefix(String prefix) {
+        return lastNames.withPrefix(normalize(prefix));
+    }
+
+    /**
+     * Transactions whose customer's email is at the domain or one of its subdomains
+     */
+    List<Transaction> withEmailDomain(String domain) {
+        String reversed = reverse(normalize(domain));
+        List<Transaction> matches = domains.get(reversed);
+        matches.addAll(domains.withPrefix(reversed + "."));
+        return matches;
+    }
+
+    /**
+     * Transactions whose customer's phone number starts with the given digits, ignoring any punctuation in either
+     */
+    List<Transaction> withPhonePrefix(String prefix) {
+        return phones.withPrefix(digits(prefix));
+    }
+
+    @Override
+    public void added(Transaction transaction) {
+        Customer customer = transaction.getCustomer();
+        if (customer == null) {
+            return;
+        }
+        if (customer.getLastName() != null) {
+            lastNames.add(normalize(customer.getLastName()), transaction);
+        }
+        if (customer.getEmail() != null) {
+            domains.add(domainKey(customer.getEmail()), transaction);
+        }
+        if (customer.getPhoneNumber() != null) {
+            phones.add(digits(customer.getPhoneNumber()), transaction);
+        }
+    }
+
+    @Override
+    public void removed(Transaction transaction) {
+        Customer customer = transaction.getCustomer();
+        if (customer == null) {
+            return;
+        }
+        if (customer.getLastName() != null) {
+            lastNames.remove(normalize(customer.getLastName()), transaction);
+        }
+        if (customer.getEmail() != null) {
+            domains.remove(domainKey(customer.getEmail()), transaction);
+        }
+        if (customer.getPhoneNumber() != null) {
+            phones.remove(digits(customer.getPhoneNumber()), transaction);
+        }
+    }
+
+    @Override
+    public void reloaded(Collection<Transaction> transactions) {
+        lastNames.clear();
+        domains.clear();
+        phones.clear();
+        transactions.forEach(this::added);
+    }
+
+    /**
+     * Whether a customer matches a last name prefix, for checking transactions that didn't come from the index
+     */
+    static boolean lastNameStartsWith(Customer customer, String prefix) {
+        return customer.getLastName() != null && normalize(customer.getLastName()).startsWith(normalize(prefix));
+    }
+
+    static boolean emailAtDomain(Customer customer, String domain) {
+        if (customer.getEmail() == null) {
+            return false;
+        }
+        String reversed = reverse(normalize(domain));
+        String key = domainKey(customer.getEmail());
+        return key.equals(reversed) || key.startsWith(reversed + ".");
+    }
+
+    static boolean phoneStartsWith(Customer customer, String prefix) {
+        return customer.getPhoneNumber() != null && digits(customer.getPhoneNumber()).startsWith(digits(prefix));
+    }
+
+    private static String domainKey(String email) {
+        return reverse(normalize(email.substring(email.lastIndexOf('@') + 1)));
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String reverse(String value) {
+        return new StringBuilder(value).reverse().toString();
+    }
+
+    private static String digits(String value) {
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+}
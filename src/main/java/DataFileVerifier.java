@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the per-record checksums of a data file without decoding any records, so even a large file can be checked
+ * quickly. The file is cut into slices at line boundaries and each slice is checked on its own thread.
+ *
+ * Can be run from the command line against any number of files, and exits with status 1 if any of them are damaged:
+ *   java DataFileVerifier [--threads n] transactions.json vehicles.json
+ */
+public class DataFileVerifier {
+
+    private DataFileVerifier() {
+    }
+
+    /**
+     * Check every record in the file using up to the given number of threads
+     */
+    public static Report verify(File file, int threads) throws IOException {
+        char[] text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).toCharArray();
+        if (!ChecksummedRecords.isChecksummed(text)) {
+            // Written before checksums were added, there is nothing to check until the manager next writes it
+            List<int[]> elements = JsonArrayLoader.findElements(text);
+            return new Report(file, false, elements == null ? 0 : elements.size(), Collections.emptyList());
+        }
+
+        // Cut at the first line break after each even split, so no record is shared between two slices
+        int slices = Math.max(1, Math.min(threads, text.length / (64 * 1024)));
+        int[] bounds = new int[slices + 1];
+        bounds[slices] = text.length;
+        for (int i = 1; i < slices; i++) {
+            int cut = Math.max(bounds[i - 1], (int) ((long) text.length * i / slices));
+            while (cut < text.length && text[cut] != '\n') {
+                cut++;
+            }
+            bounds[i] = cut;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(slices);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int i = 0; i < slices; i++) {
+                int from = bounds[i];
+                int to = bounds[i + 1];
+                results.add(executor.submit(() -> checkSlice(text, from, to)));
+            }
+
+            int records = 0;
+            List<Integer> corruptLines = new ArrayList<>();
+            for (Future<int[]> result : results) {
+                // First entry is the number of records in the slice, the rest are offsets of the bad ones
+                int[] slice = result.get();
+                records += slice[0];
+                for (int i = 1; i < slice.length; i++) {
+                    corruptLines.add(ChecksummedRecords.lineNumber(text, slice[i]));
+                }
+            }
+            return new Report(file, true, records, corruptLines);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to verify " + file + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying " + file, e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int[] checkSlice(char[] text, int from, int to) {
+        List<int[]> lines = ChecksummedRecords.recordLines(text, from, to);
+        List<Integer> bad = new ArrayList<>();
+        for (int[] line : lines) {
+            if (ChecksummedRecords.verifiedData(text, line) == null) {
+                bad.add(line[0]);
+            }
+        }
+        int[] result = new int[bad.size() + 1];
+        result[0] = lines.size();
+        for (int i = 0; i < bad.size(); i++) {
+            result[i + 1] = bad.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Result of checking one file
+     */
+    public static class Report {
+        private final File file;
+        private final boolean checksummed;
+        private final int records;
+        private final List<Integer> corruptLines;
+
+        Report(File file, boolean checksummed, int records, List<Integer> corruptLines) {
+            this.file = file;
+            this.checksummed = checksummed;
+            this.records = records;
+            this.corruptLines = Collections.unmodifiableList(corruptLines);
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Whether the file has checksums at all. Files from before they were added can't be checked
+         */
+        public boolean isChecksummed() {
+            return checksummed;
+        }
+
+        /**
+         * Number of records found, including corrupt ones
+         */
+        public int getRecords() {
+            return records;
+        }
+
+        /**
+         * Line numbers, counting from 1, of the records that failed their checksum
+         */
+        public List<Integer> getCorruptLines() {
+            return corruptLines;
+        }
+
+        public boolean isIntact() {
+            return corruptLines.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            if (!checksummed) {
+                return file + ": " + records + " records, no checksums to verify";
+            }
+            return file + ": " + records + " records, " + (isIntact() ? "all intact"
+                    : corruptLines.size() + " corrupt on lines " + corruptLines);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean damaged = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+                continue;
+            }
+            Report report = verify(new File(args[i]), threads);
+            System.out.println(report);
+            damaged |= !report.isIntact();
+        }
+        System.exit(damaged ? 1 : 0);
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.Date;
+
+/**
+ * A point in time at which something happens to a transaction on its own, tracked by the DeadlineScheduler
+ */
+public class Deadline {
+
+    public enum Kind {
+        // An active rental or lease has reached the end of its days or months
+        TRANSACTION_ENDED,
+        // A transaction was never activated and its start date has now passed
+        DRAFT_EXPIRED
+    }
+
+    private final Kind kind;
+    private final int transactionId;
+    private final long due;
+
+    // Stored version of the transaction the deadline was worked out from
+    final Transaction transaction;
+
+    // Set when the transaction changes or goes away before the deadline fires
+    boolean cancelled;
+
+    Deadline(Kind kind, Transaction transaction, long due) {
+        this.kind = kind;
+        this.transactionId = transaction.getId();
+        this.transaction = transaction;
+        this.due = due;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Time the deadline falls due, in milliseconds since the epoch
+     */
+    public long getDue() {
+        return due;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " for transaction " + transactionId + " at " + new Date(due);
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Called by the DeadlineScheduler when a deadline falls due
+ */
+public interface DeadlineListener {
+
+    /**
+     * @param deadline the deadline that was reached
+     * @param transaction a copy of the transaction as it was when the deadline fired
+     */
+    void onDeadline(Deadline deadline, Transaction transaction);
+
+    /**
+     * Called from the background thread started by DeadlineScheduler.start when refreshing the transactions or firing
+     * deadlines fails. The thread keeps going and tries again on its next pass
+     */
+    default void onError(RuntimeException error) {
+    }
+}
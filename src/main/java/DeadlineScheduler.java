@@ -0,0 +1,313 @@
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of when each transaction next needs something to happen to it (an active rental or lease running out,
+ * or a draft whose start date passes without being activated) and tells its listeners as each one falls due.
+ *
+ * Upcoming deadlines sit in a priority queue ordered by due time and are kept up to date as the manager's transactions
+ * change, so nothing has to sweep the full list to find them. Deadlines are fired either by calling runDue directly,
+ * which is what tests do with a fixed clock, or by a background thread started with start() that sleeps until the
+ * next one is due.
+ */
+public class DeadlineScheduler implements TransactionStore.Listener {
+
+    // How long the background thread waits at most before checking for changes written by other processes
+    private static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+
+    // Longest the background thread waits before trying again after failures in a row
+    private static final long MAX_ERROR_BACKOFF_MILLIS = 30000;
+
+    private final Clock clock;
+    private final Runnable refresh;
+    private final List<DeadlineListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>(Comparator.comparingLong(Deadline::getDue));
+    private final HashMap<Integer, List<Deadline>> byTransaction = new HashMap<>();
+
+    // Cancelled deadlines still sitting in the queue, which is purged of them once they make up half of it
+    private int cancelledInQueue;
+
+    // Everything due up to this time has already been fired, so reloading the file doesn't fire it again
+    private long firedThrough = Long.MIN_VALUE;
+
+    private volatile Thread thread;
+
+    /**
+     * @param clock source of the current time for deciding what is due
+     * @param refresh brings the transactions up to date with the file, which reports any changes back to this
+     *                scheduler as a store listener
+     */
+    DeadlineScheduler(Clock clock, Runnable refresh) {
+        this.clock = clock;
+        this.refresh = refresh;
+    }
+
+    public void addListener(DeadlineListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DeadlineListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start a background thread that fires each deadline as it falls due. Does nothing if already started
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "deadline-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the background thread. Deadlines can still be fired by calling runDue
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Fire every deadline that is due as of the clock's current time
+     *
+     * @return the number of deadlines fired
+     */
+    public int runDue() {
+        List<Deadline> due = new ArrayList<>();
+
+        lock.lock();
+        try {
+            long now = clock.millis();
+            while (!queue.isEmpty() && queue.peek().getDue() <= now) {
+                Deadline deadline = queue.poll();
+                if (deadline.cancelled) {
+                    cancelledInQueue--;
+                } else {
+                    due.add(deadline);
+                    forget(deadline);
+                }
+            }
+            firedThrough = now;
+        } finally {
+            lock.unlock();
+        }
+
+        // Listeners are called without holding the lock since they are likely to change transactions in response
+        RuntimeException failure = null;
+        for (Deadline deadline : due) {
+            for (DeadlineListener listener : listeners) {
+                try {
+                    listener.onDeadline(deadline, deadline.transaction.copy());
+                } catch (RuntimeException e) {
+                    // Keep firing the rest, the first failure is passed on once everything has had its turn
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return due.size();
+    }
+
+    /**
+     * The next deadline that will fire, or null if there are none
+     */
+    public Deadline peekNext() {
+        lock.lock();
+        try {
+            while (!queue.isEmpty() && queue.peek().cancelled) {
+                queue.poll();
+                cancelledInQueue--;
+            }
+            return queue.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of deadlines in the queue, counting cancelled ones that haven't been cleared out yet
+     */
+    int queuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Every change to a stored transaction arrives as a remove and an add, so deadlines that have already been fired
+     * are skipped here as they are on reload. Otherwise editing a rental that has ended would fire its end again
+     */
+    @Override
+    public void added(Transaction transaction) {
+        lock.lock();
+        try {
+            schedule(transaction, firedThrough);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removed(Transaction transaction) {
+        lock.lock();
+        try {
+            List<Deadline> deadlines = byTransaction.get(transaction.getId());
+            if (deadlines != null) {
+                // Cancelled deadlines are left in the queue and skipped when they reach the front, unless enough of them
+                // build up that it's worth a pass to clear them out
+                deadlines.removeIf(d -> {
+                    if (d.transaction == transaction) {
+                        d.cancelled = true;
+                        cancelledInQueue++;
+                        return true;
+                    }
+                    return false;
+                });
+                if (deadlines.isEmpty()) {
+                    byTransaction.remove(transaction.getId());
+                }
+                if (cancelledInQueue > queue.size() / 2) {
+                    queue.removeIf(d -> d.cancelled);
+                    cancelledInQueue = 0;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reloaded(Collection<Transaction> transactions) {
+        lock.lock();
+        try {
+            queue.clear();
+            byTransaction.clear();
+            cancelledInQueue = 0;
+            for (Transaction transaction : transactions) {
+                schedule(transaction, firedThrough);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue up whatever deadlines apply to the transaction in its current state, skipping any that were due before
+     * the given time. Must hold the lock
+     */
+    private void schedule(Transaction transaction, long skipThrough) {
+        Deadline deadline = null;
+        if (transaction.getState() == TransactionState.DRAFT && transaction.getStartTime() != Transaction.NO_TIME) {
+            deadline = new Deadline(Deadline.Kind.DRAFT_EXPIRED, transaction, transaction.getStartTime());
+        } else if (transaction.getState() == TransactionState.ACTIVE && transaction.getEndDate() != null) {
+            deadline = new Deadline(Deadline.Kind.TRANSACTION_ENDED, transaction, transaction.getEndDate().getTime());
+        }
+
+        if (deadline != null && deadline.getDue() > skipThrough) {
+            queue.add(deadline);
+            byTransaction.computeIfAbsent(transaction.getId(), id -> new ArrayList<>()).add(deadline);
+        }
+    }
+
+    private void forget(Deadline deadline) {
+        List<Deadline> deadlines = byTransaction.get(deadline.getTransactionId());
+        if (deadlines != null) {
+            deadlines.remove(deadline);
+            if (deadlines.isEmpty()) {
+                byTransaction.remove(deadline.getTransactionId());
+            }
+        }
+    }
+
+    private void reportError(RuntimeException error) {
+        for (DeadlineListener listener : listeners) {
+            try {
+                listener.onError(error);
+            } catch (RuntimeException e) {
+                // Nowhere left to report it, the loop carries on regardless
+            }
+        }
+    }
+
+    /**
+     * Background loop: fire what's due, then sleep until the next deadline or until the transactions change. After a
+     * failure it waits before trying again, twice as long for each failure in a row up to MAX_ERROR_BACKOFF_MILLIS
+     */
+    private void run() {
+        int failures = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                refresh.run();
+                runDue();
+                failures = 0;
+
+                lock.lock();
+                try {
+                    long wait = DEFAULT_POLL_INTERVAL_MILLIS;
+                    Deadline next = queue.peek();
+                    if (next != null) {
+                        wait = Math.min(wait, next.getDue() - clock.millis());
+                    }
+                    if (wait > 0) {
+                        changed.await(wait, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // One bad listener or a temporarily unreadable file shouldn't stop deadlines from firing for good
+                reportError(e);
+                failures++;
+                if (!backOff(failures)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait before retrying after failures in a row, or less if the transactions change meanwhile
+     *
+     * @return false if interrupted, meaning the thread should stop
+     */
+    private boolean backOff(int failures) {
+        long wait = Math.min(DEFAULT_POLL_INTERVAL_MILLIS << Math.min(failures - 1, 5), MAX_ERROR_BACKOFF_MILLIS);
+        lock.lock();
+        try {
+            changed.await(wait, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
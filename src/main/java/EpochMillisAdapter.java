@@ -0,0 +1,50 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Reads and writes a transaction time as a plain number of epoch milliseconds. Files written before times were kept
+ * as numbers hold them as gson's formatted date strings, so those are still accepted on the way in.
+ *
+ * Transaction.NO_TIME is written as null, which gson leaves out of the object entirely, and a missing or null value
+ * leaves the field at NO_TIME.
+ */
+class EpochMillisAdapter extends TypeAdapter<Long> {
+
+    // Gson's own date handling, which is what wrote the old date strings
+    private static final TypeAdapter<Date> LEGACY_DATES = new Gson().getAdapter(Date.class);
+
+    @Override
+    public void write(JsonWriter out, Long millis) throws IOException {
+        if (millis == null || millis == Transaction.NO_TIME) {
+            out.nullValue();
+        } else {
+            out.value(millis);
+        }
+    }
+
+    @Override
+    public Long read(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        } else if (token == JsonToken.NUMBER) {
+            return in.nextLong();
+        }
+
+        String text = in.nextString();
+        try {
+            return LEGACY_DATES.fromJsonTree(new JsonPrimitive(text)).getTime();
+        } catch (JsonSyntaxException e) {
+            throw new JsonSyntaxException("Unreadable time \"" + text + "\" at " + in.getPath(), e);
+        }
+    }
+}
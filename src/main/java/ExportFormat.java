@@ -0,0 +1,27 @@
+/**
+ * Formats transactions can be exported in, one flat row per transaction with the customer and vehicle spread out into
+ * columns of their own
+ */
+public enum ExportFormat {
+    /**
+     * Comma separated values with a header row, quoted only where a value needs it
+     */
+    CSV("text/csv"),
+    /**
+     * One json object per line, with missing values left out rather than written as null
+     */
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    ExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * MIME type to serve the export as
+     */
+    public String getContentType() {
+        return contentType;
+    }
+}
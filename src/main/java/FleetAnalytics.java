@@ -0,0 +1,385 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * How much of a window of time the fleet spent rented or leased out, for each vehicle, each vehicle type and the fleet
+ * as a whole. Get one from VehicleManager.utilization.
+ *
+ * Each group is worked out with a sweep over its bookings' start and end times in order, keeping a count of how many
+ * are running at once, instead of comparing bookings with each other. That makes it O(n log n) for the sort, and the
+ * same sweep gives the booked time, the idle gaps and the peak number of bookings running together. Vehicles are
+ * independent of each other, so with enough bookings they are swept in parallel.
+ *
+ * Bookings are taken as running from their start up to but not including their end, and are cut to the window.
+ */
+public final class FleetAnalytics {
+
+    private final long from;
+    private final long to;
+    private final Map<String, Usage> vehicles;
+    private final Map<VehicleType, Usage> types;
+    private final Usage fleet;
+
+    private FleetAnalytics(long from, long to, Map<String, Usage> vehicles, Map<VehicleType, Usage> types,
+                           Usage fleet) {
+        this.from = from;
+        this.to = to;
+        this.vehicles = Collections.unmodifiableMap(vehicles);
+        this.types = Collections.unmodifiableMap(types);
+        this.fleet = fleet;
+    }
+
+    public Date getFrom() {
+        return new Date(from);
+    }
+
+    public Date getTo() {
+        return new Date(to);
+    }
+
+    /**
+     * Usage of one vehicle, or null if it is neither in the fleet nor booked in the window
+     */
+    public Usage getVehicle(String vin) {
+        return vehicles.get(vin);
+    }
+
+    /**
+     * Usage of every vehicle in the fleet or booked in the window, by VIN in VIN order
+     */
+    public Map<String, Usage> getVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Usage of all the vehicles of one type together. Its capacity is the window once for each of those vehicles, and
+     * its gaps are the times none of them were booked. Vehicles without a type only count towards their own usage and
+     * the fleet's
+     */
+    public Usage getType(VehicleType type) {
+        return types.get(type);
+    }
+
+    /**
+     * Usage of each vehicle type, including types with no vehicles
+     */
+    public Map<VehicleType, Usage> getTypes() {
+        return types;
+    }
+
+    /**
+     * Usage of the whole fleet together, counted the same way as a vehicle type
+     */
+    public Usage getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Work out the usage of the given vehicles, plus any others that were booked, from bookings already cut to the
+     * window. Vehicles are split over the pool when there are enough bookings to be worth it
+     */
+    static FleetAnalytics compute(Collection<Vehicle> fleetVehicles, List<Booking> bookings, long from, long to,
+                                  ForkJoinPool pool) {
+        Map<String, List<Booking>> byVin = new TreeMap<>();
+        Map<String, VehicleType> vehicleTypes = new HashMap<>();
+        for (Vehicle vehicle : fleetVehicles) {
+            byVin.put(vehicle.getVin(), new ArrayList<>());
+            vehicleTypes.put(vehicle.getVin(), vehicle.getType());
+        }
+        Map<VehicleType, List<Booking>> byType = new EnumMap<>(VehicleType.class);
+        for (VehicleType type : VehicleType.values()) {
+            byType.put(type, new ArrayList<>());
+        }
+        for (Booking booking : bookings) {
+            byVin.computeIfAbsent(booking.vin, vin -> new ArrayList<>()).add(booking);
+            vehicleTypes.putIfAbsent(booking.vin, booking.type);
+            VehicleType type = vehicleTypes.get(booking.vin);
+            if (type != null) {
+                byType.get(type).add(booking);
+            }
+        }
+
+        // Sweep each vehicle, in chunks so each task has a fair amount of work
+        List<String> vins = new ArrayList<>(byVin.keySet());
+        boolean parallel = pool != null && pool.getParallelism() > 1
+                && bookings.size() >= ParallelFilter.PARALLEL_THRESHOLD;
+        int chunks = parallel ? Math.min(vins.size(), pool.getParallelism() * ParallelFilter.LEAVES_PER_THREAD) : 1;
+        List<Callable<Map<String, Usage>>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            List<String> part = vins.subList(vins.size() * chunk / chunks, vins.size() * (chunk + 1) / chunks);
+            tasks.add(() -> {
+                Map<String, Usage> usages = new HashMap<>();
+                for (String vin : part) {
+                    List<Booking> booked = byVin.get(vin);
+                    usages.put(vin, sweep(booked, from, to, 1, -1));
+                }
+                return usages;
+            });
+        }
+        Map<String, Usage> vehicles = new TreeMap<>();
+        for (Map<String, Usage> usages : run(tasks, parallel ? pool : null)) {
+            vehicles.putAll(usages);
+        }
+
+        // A group's booked time is the sum of its vehicles', so a double booked vehicle isn't counted twice
+        Map<VehicleType, Long> typeBooked = new EnumMap<>(VehicleType.class);
+        Map<VehicleType, Integer> typeCounts = new EnumMap<>(VehicleType.class);
+        long fleetBooked = 0;
+        for (Map.Entry<String, Usage> entry : vehicles.entrySet()) {
+            VehicleType type = vehicleTypes.get(entry.getKey());
+            if (type != null) {
+                typeBooked.merge(type, entry.getValue().getBookedMillis(), Long::sum);
+                typeCounts.merge(type, 1, Integer::sum);
+            }
+            fleetBooked += entry.getValue().getBookedMillis();
+        }
+        Map<VehicleType, Usage> types = new EnumMap<>(VehicleType.class);
+        for (VehicleType type : VehicleType.values()) {
+            types.put(type, sweep(byType.get(type), from, to, typeCounts.getOrDefault(type, 0),
+                    typeBooked.getOrDefault(type, 0L)));
+        }
+        Usage fleet = sweep(bookings, from, to, vehicles.size(), fleetBooked);
+        return new FleetAnalytics(from, to, vehicles, types, fleet);
+    }
+
+    private static <T> List<T> run(List<Callable<T>> tasks, ForkJoinPool pool) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                for (Future<T> future : pool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while working out utilization", e);
+        } catch (Exception e) {
+            // Only the tasks above are called, and they throw nothing checked
+            throw new IllegalStateException(e);
+        }
+        return results;
+    }
+
+    /**
+     * Sweep a group's bookings in time order, ends before starts at the same time so back to back bookings don't
+     * overlap
+     *
+     * @param units how many vehicles the group has, which the capacity is the window times
+     * @param booked the group's booked time if already known, or -1 to use the time at least one booking was running
+     */
+    private static Usage sweep(List<Booking> bookings, long from, long to, int units, long booked) {
+        int n = bookings.size();
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = bookings.get(i).start;
+            ends[i] = bookings.get(i).end;
+        }
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+
+        List<Gap> gaps = new ArrayList<>();
+        int running = 0;
+        int peak = 0;
+        long peakTime = 0;
+        long covered = 0;
+        long busySince = from;
+        long freeSince = from;
+        int started = 0;
+        int ended = 0;
+        while (ended < n) {
+            if (started < n && starts[started] < ends[ended]) {
+                long time = starts[started++];
+                if (running == 0) {
+                    if (time > freeSince) {
+                        gaps.add(new Gap(freeSince, time));
+                    }
+                    busySince = time;
+                }
+                running++;
+                if (running > peak) {
+                    peak = running;
+                    peakTime = time;
+                }
+            } else {
+                long time = ends[ended++];
+                running--;
+                if (running == 0) {
+                    covered += time - busySince;
+                    freeSince = time;
+                }
+            }
+        }
+        if (to > freeSince) {
+            gaps.add(new Gap(freeSince, to));
+        }
+        return new Usage(n, booked < 0 ? covered : booked, (to - from) * units, peak, peakTime, gaps);
+    }
+
+    /**
+     * Bookings and booked time for a vehicle or group of vehicles over the window
+     */
+    public static final class Usage {
+        private final int bookings;
+        private final long bookedMillis;
+        private final long capacityMillis;
+        private final int peakConcurrent;
+        private final long peakTime;
+        private final List<Gap> idleGaps;
+
+        private Usage(int bookings, long bookedMillis, long capacityMillis, int peakConcurrent, long peakTime,
+                      List<Gap> idleGaps) {
+            this.bookings = bookings;
+            this.bookedMillis = bookedMillis;
+            this.capacityMillis = capacityMillis;
+            this.peakConcurrent = peakConcurrent;
+            this.peakTime = peakTime;
+            this.idleGaps = Collections.unmodifiableList(idleGaps);
+        }
+
+        /**
+         * Number of bookings that overlap the window
+         */
+        public int getBookings() {
+            return bookings;
+        }
+
+        /**
+         * Time the vehicles spent booked within the window, each vehicle counted once however many bookings it had at
+         * the same time
+         */
+        public long getBookedMillis() {
+            return bookedMillis;
+        }
+
+        /**
+         * The window's length once for each vehicle
+         */
+        public long getCapacityMillis() {
+            return capacityMillis;
+        }
+
+        /**
+         * Booked time as a percentage of capacity, 0 if there are no vehicles
+         */
+        public double getUtilization() {
+            return capacityMillis == 0 ? 0 : 100.0 * bookedMillis / capacityMillis;
+        }
+
+        /**
+         * Most bookings running at the same moment. More than one for a single vehicle means it was double booked
+         */
+        public int getPeakConcurrent() {
+            return peakConcurrent;
+        }
+
+        /**
+         * When the peak was first reached, or null if nothing was booked
+         */
+        public Date getPeakTime() {
+            return peakConcurrent == 0 ? null : new Date(peakTime);
+        }
+
+        /**
+         * The stretches of the window with nothing booked, in order
+         */
+        public List<Gap> getIdleGaps() {
+            return idleGaps;
+        }
+    }
+
+    /**
+     * A stretch of time from its start up to but not including its end
+     */
+    public static final class Gap {
+        private final long start;
+        private final long end;
+
+        private Gap(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStartMillis() {
+            return start;
+        }
+
+        public long getEndMillis() {
+            return end;
+        }
+
+        public Date getStart() {
+            return new Date(start);
+        }
+
+        public Date getEnd() {
+            return new Date(end);
+        }
+
+        public long getMillis() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return getStart() + " - " + getEnd();
+        }
+    }
+
+    /**
+     * A rental or lease's time cut to the window, taken from the transaction under the store's lock so the sweep can
+     * run without it
+     */
+    static final class Booking {
+        private final String vin;
+        private final VehicleType type;
+        private final long start;
+        private final long end;
+
+        private Booking(String vin, VehicleType type, long start, long end) {
+            this.vin = vin;
+            this.type = type;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * The part of a rental or lease that falls within the window, or null if none of it does or the transaction
+         * isn't a booking with an end, like a buy
+         */
+        static Booking of(Transaction transaction, long from, long to) {
+            Date end = transaction.getEndDate();
+            if (end == null || transaction.getStartTime() == Transaction.NO_TIME || transaction.getVehicle() == null) {
+                return null;
+            }
+            long start = Math.max(transaction.getStartTime(), from);
+            long clippedEnd = Math.min(end.getTime(), to);
+            if (clippedEnd <= start) {
+                return null;
+            }
+            Vehicle vehicle = transaction.getVehicle();
+            return new Booking(vehicle.getVin(), vehicle.getType(), start, clippedEnd);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out transaction IDs so callers don't have to pick their own and risk colliding with each other.
+ *
+ * Allocation is a single atomic increment, so any number of threads can take IDs without locking. The allocator
+ * listens to the store and always stays above the highest ID it has seen, whether that transaction was added here, by
+ * a caller that picked its own ID, or by another process and picked up on reload. Bulk loaders can reserve a whole
+ * block of IDs at once and number their transactions from it without coming back for each one.
+ *
+ * IDs are unique within this process. Two processes sharing a file each allocate from their own counter, so they can
+ * still race for the same ID; the duplicate check in addTransaction catches that, and the loser can take a new one.
+ */
+public class IdAllocator implements TransactionStore.Listener {
+
+    // Next ID to hand out
+    private final AtomicInteger next = new AtomicInteger(1);
+
+    /**
+     * A new ID, never handed out before by this allocator and above every ID it has seen
+     */
+    public int next() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * Reserve count consecutive IDs and return the first of them
+     */
+    public int reserveBlock(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Block size must be at least 1, got " + count);
+        }
+        return next.getAndAdd(count);
+    }
+
+    /**
+     * The ID next() would hand out right now
+     */
+    public int peek() {
+        return next.get();
+    }
+
+    /**
+     * Make sure IDs up to and including this one are never handed out
+     */
+    void advancePast(int id) {
+        next.accumulateAndGet(id + 1, Math::max);
+    }
+
+    @Override
+    public void added(Transaction transaction) {
+        advancePast(transaction.getId());
+    }
+
+    @Override
+    public void removed(Transaction transaction) {
+        // Never reuse an ID, even once its transaction is gone
+    }
+
+    @Override
+    public void reloaded(Collection<Transaction> transactions) {
+        int max = 0;
+        for (Transaction transaction : transactions) {
+            max = Math.max(max, transaction.getId());
+        }
+        advancePast(max);
+    }
+}
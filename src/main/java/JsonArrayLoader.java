@@ -0,0 +1,302 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses the json array data files into lists, optionally spreading the work over several threads. Reads both plain
+ * json arrays and the checksummed layout described in ChecksummedRecords.
+ *
+ * Gson can only read a stream from front to back, so for a parallel load the file is read into memory first and
+ * scanned once for the boundaries of each top level element. The elements are then split into chunks which are decoded
+ * on a ForkJoinPool and stitched back together in file order. Scanning only has to track brackets and strings, which is
+ * much cheaper than building objects, so most of the load time ends up spread across the pool.
+ */
+class JsonArrayLoader {
+
+    // Below this many elements a file is decoded on the calling thread, handing out chunks would cost more than it saves
+    private static final int MIN_PARALLEL_ELEMENTS = 1000;
+
+    // Chunks per thread, so a thread that finishes early can pick up more work instead of sitting idle
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final Gson gson;
+    private final ForkJoinPool pool;
+    private final boolean recover;
+    private final AtomicLong quarantined = new AtomicLong();
+
+    JsonArrayLoader(Gson gson, int threads) {
+        this(gson, threads, false);
+    }
+
+    /**
+     * @param gson gson instance that knows how to decode the element types
+     * @param threads number of threads to decode with, 1 to always decode on the calling thread
+     * @param recover whether to skip and quarantine corrupt records rather than failing the whole load
+     */
+    JsonArrayLoader(Gson gson, int threads, boolean recover) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Loader needs at least one thread, got " + threads);
+        }
+        this.gson = gson;
+        this.pool = threads == 1 ? null : new ForkJoinPool(threads);
+        this.recover = recover;
+    }
+
+    /**
+     * Number of threads elements are decoded on
+     */
+    int getThreads() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Pool the parallel work runs on, or null for a single threaded loader
+     */
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Decode a json array of elementType from the reader. An empty file gives an empty list, like an empty array.
+     *
+     * Files in the checksummed layout have every record verified before it is decoded. A record that fails its
+     * checksum or can't be decoded makes the whole load fail, unless this loader is recovering, in which case the
+     * record is skipped and its raw text appended to a ".quarantine" file next to the source instead
+     *
+     * @param source file being read, used in error messages and to place the quarantine file
+     */
+    <T> ArrayList<T> load(Reader reader, Class<T> elementType, File source) throws IOException {
+        char[] text = readFully(reader);
+        TypeAdapter<T> adapter = gson.getAdapter(elementType);
+
+        boolean checked = ChecksummedRecords.isChecksummed(text);
+        List<int[]> elements = checked ? ChecksummedRecords.recordLines(text, 0, text.length) : findElements(text);
+
+        if (elements == null) {
+            // Not a plain array or its brackets don't match up, so leave it all to gson to load or report on
+            return loadWhole(text, elementType, source);
+        }
+
+        Decoded<T> decoded = decodeAll(text, elements, adapter, checked, source);
+        if (!decoded.corrupt.isEmpty()) {
+            quarantine(source, text, decoded.corrupt);
+        }
+        return decoded.records;
+    }
+
+    /**
+     * Number of records skipped and quarantined by this loader since it was created
+     */
+    long getQuarantinedCount() {
+        return quarantined.get();
+    }
+
+    private <T> ArrayList<T> loadWhole(char[] text, Class<T> elementType, File source) throws IOException {
+        try {
+            ArrayList<T> loaded = gson.fromJson(new CharArrayReader(text),
+                    TypeToken.getParameterized(ArrayList.class, elementType).getType());
+            return loaded == null ? new ArrayList<>() : loaded;
+        } catch (JsonParseException e) {
+            if (!recover) {
+                throw e;
+            }
+            // Nothing in it can be told apart from anything else, so the whole file goes to quarantine
+            List<int[]> whole = new ArrayList<>();
+            whole.add(new int[]{0, text.length});
+            quarantine(source, text, whole);
+            return new ArrayList<>();
+        }
+    }
+
+    private <T> Decoded<T> decodeAll(char[] text, List<int[]> elements, TypeAdapter<T> adapter, boolean checked,
+                                     File source) throws IOException {
+        // Small files, or a single threaded loader, are decoded right here
+        if (pool == null || elements.size() < MIN_PARALLEL_ELEMENTS) {
+            return decode(text, elements, adapter, checked, source);
+        }
+
+        int chunkCount = Math.min(elements.size(), getThreads() * CHUNKS_PER_THREAD);
+        List<Callable<Decoded<T>>> chunks = new ArrayList<>(chunkCount);
+        for (int c = 0; c < chunkCount; c++) {
+            List<int[]> chunk = elements.subList(c * elements.size() / chunkCount,
+                    (c + 1) * elements.size() / chunkCount);
+            chunks.add(() -> decode(text, chunk, adapter, checked, source));
+        }
+
+        Decoded<T> all = new Decoded<>(elements.size());
+        try {
+            for (Future<Decoded<T>> chunk : pool.invokeAll(chunks)) {
+                all.records.addAll(chunk.get().records);
+                all.corrupt.addAll(chunk.get().corrupt);
+            }
+        } catch (ExecutionException e) {
+            // Surface the chunk's own failure, the same as a single threaded parse would have
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        }
+        return all;
+    }
+
+    private <T> Decoded<T> decode(char[] text, List<int[]> elements, TypeAdapter<T> adapter, boolean checked,
+                                  File source) throws IOException {
+        Decoded<T> decoded = new Decoded<>(elements.size());
+        for (int[] element : elements) {
+            int[] data = checked ? ChecksummedRecords.verifiedData(text, element) : element;
+            if (data == null) {
+                if (!recover) {
+                    throw new JsonSyntaxException("Checksum mismatch in record on line "
+                            + ChecksummedRecords.lineNumber(text, element[0]) + " of " + source.getPath());
+                }
+                decoded.corrupt.add(element);
+                continue;
+            }
+
+            try {
+                JsonReader reader = new JsonReader(new CharArrayReader(text, data[0], data[1] - data[0]));
+                decoded.records.add(adapter.read(reader));
+            } catch (JsonParseException | IllegalStateException | IOException e) {
+                if (!recover) {
+                    throw new JsonSyntaxException("Unable to read record on line "
+                            + ChecksummedRecords.lineNumber(text, element[0]) + " of " + source.getPath() + ": "
+                            + e.getMessage(), e);
+                }
+                decoded.corrupt.add(element);
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Append the raw text of corrupt records to the source's quarantine file, one per line with when it was found and
+     * the line it came from, so nothing that was skipped is lost for good
+     */
+    private void quarantine(File source, char[] text, List<int[]> corrupt) throws IOException {
+        File quarantineFile = new File(source.getPath() + ".quarantine");
+        long now = System.currentTimeMillis();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(quarantineFile, true),
+                StandardCharsets.UTF_8)) {
+            for (int[] element : corrupt) {
+                String raw = new String(text, element[0], element[1] - element[0]).replace('\n', ' ');
+                writer.write(now + "\t" + ChecksummedRecords.lineNumber(text, element[0]) + "\t" + raw + "\n");
+            }
+        }
+        quarantined.addAndGet(corrupt.size());
+    }
+
+    /**
+     * Records decoded from some elements, and the elements that had to be skipped
+     */
+    private static final class Decoded<T> {
+        private final ArrayList<T> records;
+        private final List<int[]> corrupt = new ArrayList<>();
+
+        Decoded(int expected) {
+            records = new ArrayList<>(expected);
+        }
+    }
+
+    /**
+     * Find the start and end offsets of each top level element of a json array, or null if the text isn't one. Only
+     * brackets outside of strings are counted, anything malformed inside an element is left for gson to report
+     */
+    static List<int[]> findElements(char[] text) {
+        int i = skipWhitespace(text, 0);
+        if (i == text.length || text[i] != '[') {
+            return null;
+        }
+
+        List<int[]> elements = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (i = i + 1; i < text.length; i++) {
+            char c = text[i];
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            if (start == -1 && !Character.isWhitespace(c) && c != ']') {
+                start = i;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || (c == ']' && depth > 0)) {
+                depth--;
+            } else if (depth == 0 && (c == ',' || c == ']')) {
+                if (start != -1) {
+                    elements.add(new int[]{start, trimEnd(text, start, i)});
+                }
+                if (c == ']') {
+                    return elements;
+                }
+                start = -1;
+            }
+        }
+
+        // Never found the closing bracket, let gson work out what is wrong with it
+        return null;
+    }
+
+    private static int skipWhitespace(char[] text, int from) {
+        while (from < text.length && Character.isWhitespace(text[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(char[] text, int start, int end) {
+        while (end > start && Character.isWhitespace(text[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    private static char[] readFully(Reader reader) throws IOException {
+        char[] buffer = new char[64 * 1024];
+        int length = 0;
+        int read;
+        while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                char[] bigger = new char[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, length);
+                buffer = bigger;
+            }
+        }
+        char[] text = new char[length];
+        System.arraycopy(buffer, 0, text, 0, length);
+        return text;
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.Calendar;
 import java.util.Date;
 
 public class LeaseTransaction extends Transaction {
@@ -11,12 +12,40 @@ public class LeaseTransaction extends Transaction {
         calculatePrice();
     }
 
+    /**
+     * For gson, which fills in the fields from the file
+     */
+    private LeaseTransaction() {
+    }
+
+    /**
+     * Restore a stored lease with the price it was saved with
+     */
+    LeaseTransaction(int id, Customer customer, Vehicle vehicle, long startTime, int months, TransactionState state,
+                     long activationTime, float price) {
+        super(id, customer, vehicle, startTime, state, activationTime, price);
+        this.months = months;
+        labelType();
+    }
+
+    private LeaseTransaction(LeaseTransaction other) {
+        super(other);
+        this.months = other.months;
+    }
+
     /**
      * Calculates the price using the formula:
      * 1% of vehicle price * number of months of lease
      */
     protected void calculatePrice() {
-        price = (float) 0.01 * vehicle.getPrice() * months;
+        price = quote(vehicle.getPrice(), months);
+    }
+
+    /**
+     * Price of leasing a vehicle with this price for this many months, the same as a lease's price would be
+     */
+    public static float quote(float vehiclePrice, int months) {
+        return (float) 0.01 * vehiclePrice * months;
     }
 
     @Override
@@ -24,6 +53,22 @@ public class LeaseTransaction extends Transaction {
         this.type = "lease";
     }
 
+    @Override
+    public LeaseTransaction copy() {
+        return new LeaseTransaction(this);
+    }
+
+    /**
+     * The lease ends the given number of months after the start date
+     */
+    @Override
+    public Date getEndDate() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(startTime);
+        calendar.add(Calendar.MONTH, months);
+        return calendar.getTime();
+    }
+
     public int getMonths() {
         return months;
     }
@@ -0,0 +1,237 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Wraps one of the json data files so that several processes can read and write it without racing each other.
+ *
+ * Coordination is done with OS level FileChannel locks on a sidecar ".lock" file next to the data file: shared locks
+ * for reads and an exclusive lock for writes. The sidecar also holds a generation counter that every writer bumps, so
+ * a reader can tell whether anyone has written since it last loaded and skip the parse entirely if not. The data
+ * file's modified time and length are part of the check as well, which catches edits made without going through here.
+ *
+ * The data file is always read and written as UTF-8, whatever the platform's default charset.
+ */
+class LockedFile {
+
+    // FileChannel locks belong to the whole JVM and throw if two threads overlap them, so every LockedFile for the same
+    // path funnels through one in-process lock before touching the OS lock
+    private static final ConcurrentHashMap<String, PathLock> processLocks = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final File lockFile;
+    private final PathLock processLock;
+
+    // Fingerprint of the data file as of the last time this instance read or wrote it
+    private long generation = -1;
+    private FileTime lastModified;
+    private long length = -1;
+
+    LockedFile(File file) {
+        this.file = file;
+        this.lockFile = new File(file.getPath() + ".lock");
+        this.processLock = processLocks.computeIfAbsent(file.getAbsolutePath(), p -> new PathLock());
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Run an action while holding a shared lock on the file. Other readers may run at the same time, writers may not
+     */
+    <T> T withSharedLock(LockedAction<T> action) throws IOException {
+        return withLock(true, action);
+    }
+
+    /**
+     * Run an action while holding an exclusive lock on the file. Use this around a whole read-modify-write cycle
+     */
+    <T> T withExclusiveLock(LockedAction<T> action) throws IOException {
+        return withLock(false, action);
+    }
+
+    /**
+     * Hand the data file to the loader if it has changed since this instance last saw it. Must be called from inside
+     * one of the lock methods. Readers sharing this instance take turns here, so only the first of them reloads
+     *
+     * @return true if the loader was run
+     */
+    synchronized boolean reloadIfChanged(FileLoader loader) throws IOException {
+        long currentGeneration = readGeneration();
+        FileTime currentModified = Files.getLastModifiedTime(file.toPath());
+        long currentLength = file.length();
+
+        if (currentGeneration == generation && currentModified.equals(lastModified) && currentLength == length) {
+            return false;
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            loader.load(reader);
+        }
+        generation = currentGeneration;
+        lastModified = currentModified;
+        length = currentLength;
+        return true;
+    }
+
+    /**
+     * Replace the contents of the data file and bump the generation so other processes know to reload. Must be called
+     * from inside withExclusiveLock. The new contents are written alongside and moved over the data file once complete,
+     * so if the writer fails the data file is left as it was
+     */
+    synchronized void write(FileWriterAction writerAction) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                writerAction.write(writer);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        generation = readGeneration() + 1;
+        writeGeneration(generation);
+        lastModified = Files.getLastModifiedTime(file.toPath());
+        length = file.length();
+    }
+
+    private <T> T withLock(boolean shared, LockedAction<T> action) throws IOException {
+        ReentrantReadWriteLock lock = processLock.lock;
+
+        // Nested calls from the same thread already hold the OS lock, just run the action
+        if (lock.isWriteLockedByCurrentThread() || (shared && lock.getReadHoldCount() > 0)) {
+            return action.run();
+        }
+        if (lock.getReadHoldCount() > 0) {
+            // The in-process lock can't be upgraded, waiting for it here would never end
+            throw new IllegalStateException("Cannot lock " + file.getPath() + " exclusively while reading it");
+        }
+
+        // Fail the same way a FileReader would rather than leaving a stray lock file behind for a missing data file
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+        }
+
+        if (shared) {
+            lock.readLock().lock();
+            try {
+                processLock.addReader(lockFile);
+                try {
+                    return action.run();
+                } finally {
+                    processLock.removeReader();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        lock.writeLock().lock();
+        try (FileChannel channel = openLockFile(lockFile)) {
+            FileLock fileLock = channel.lock(0, Long.MAX_VALUE, false);
+            processLock.channel = channel;
+            try {
+                return action.run();
+            } finally {
+                processLock.channel = null;
+                fileLock.release();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static FileChannel openLockFile(File lockFile) throws IOException {
+        return FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private long readGeneration() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        int read = processLock.channel.read(buffer, 0);
+        if (read < Long.BYTES) {
+            // New lock file, nothing has been written through it yet
+            return 0;
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void writeGeneration(long value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        buffer.putLong(value).flip();
+        processLock.channel.write(buffer, 0);
+    }
+
+    /**
+     * In-process lock for one path. Readers in this process run side by side and share a single OS level shared lock,
+     * taken by the first of them and released by the last, while a writer has the path to itself
+     */
+    private static final class PathLock {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // Channel for the lock file while anyone in this process holds the OS lock
+        volatile FileChannel channel;
+
+        private FileLock sharedLock;
+        private int readers;
+
+        synchronized void addReader(File lockFile) throws IOException {
+            if (readers == 0) {
+                FileChannel opened = openLockFile(lockFile);
+                try {
+                    sharedLock = opened.lock(0, Long.MAX_VALUE, true);
+                } catch (IOException | RuntimeException e) {
+                    opened.close();
+                    throw e;
+                }
+                channel = opened;
+            }
+            readers++;
+        }
+
+        synchronized void removeReader() throws IOException {
+            if (--readers == 0) {
+                FileChannel opened = channel;
+                channel = null;
+                try {
+                    sharedLock.release();
+                } finally {
+                    sharedLock = null;
+                    opened.close();
+                }
+            }
+        }
+    }
+
+    interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    interface FileLoader {
+        void load(Reader reader) throws IOException;
+    }
+
+    interface FileWriterAction {
+        void write(Writer writer) throws IOException;
+    }
+}
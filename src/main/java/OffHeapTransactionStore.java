@@ -0,0 +1,573 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import exceptions.InvalidTransactionException;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Transaction storage for data sets too large to keep as objects. Every transaction is one fixed width row in direct
+ * ByteBuffers outside the java heap, so millions of them cost the garbage collector nothing to keep around:
+ *
+ *   offset  0  int    id
+ *           4  byte   state, or DELETED once removed
+ *           5  byte   type, rent, lease or buy
+ *           8  float  price
+ *          12  int    days for a rent, months for a lease, the bits of the warranty price for a buy
+ *          16  long   start date as epoch millis
+ *          24  long   activation date as epoch millis, or Transaction.NO_TIME
+ *          32  int    vehicle reference
+ *          36  int    customer reference
+ *
+ * Vehicles and customers are shared by many transactions, so they stay on the heap once each and rows refer to them by
+ * index. Rows are read through a Row view that is moved from one row to the next, so a scan allocates nothing per
+ * transaction; only the ones that are wanted are turned back into Transaction objects.
+ *
+ * Removing a transaction only marks its row, the space is taken back by compact().
+ *
+ * The store stands on its own, for tools working through very large files. A VehicleManager still keeps its
+ * transactions on the heap. Rows are searched with the store's own count, select and forEach and a predicate on Row;
+ * TransactionQuery and TransactionFilter only work on Transaction objects and can't be run over the store.
+ */
+public class OffHeapTransactionStore {
+
+    static final int ROW_SIZE = 40;
+    private static final int ROWS_PER_CHUNK_SHIFT = 14;
+    private static final int ROWS_PER_CHUNK = 1 << ROWS_PER_CHUNK_SHIFT;
+
+    private static final int ID = 0;
+    private static final int STATE = 4;
+    private static final int TYPE = 5;
+    private static final int PRICE = 8;
+    private static final int TERM = 12;
+    private static final int START = 16;
+    private static final int ACTIVATION = 24;
+    private static final int VEHICLE = 32;
+    private static final int CUSTOMER = 36;
+
+    private static final byte DELETED = -1;
+
+    private static final byte RENT = 0;
+    private static final byte LEASE = 1;
+    private static final byte BUY = 2;
+    private static final String[] TYPE_NAMES = {"rent", "lease", "buy"};
+    private static final TransactionState[] STATES = TransactionState.values();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final IdIndex rowsById = new IdIndex();
+    private int rows;
+    private int live;
+
+    private final List<Vehicle> vehicles = new ArrayList<>();
+    private final Map<String, Integer> vehicleRefs = new HashMap<>();
+    private final List<Customer> customers = new ArrayList<>();
+    private final Map<String, Integer> customerRefs = new HashMap<>();
+
+    /**
+     * Load a transactions file without ever holding more than one decoded transaction at a time, so files far bigger
+     * than the heap can be read. Takes both the checksummed layout and plain json arrays, and fails on a record that
+     * doesn't match its checksum just like the manager does
+     */
+    public static OffHeapTransactionStore load(File file) throws IOException {
+        return load(file, VehicleManager.gson);
+    }
+
+    static OffHeapTransactionStore load(File file, Gson gson) throws IOException {
+        OffHeapTransactionStore store = new OffHeapTransactionStore();
+        TypeAdapter<Transaction> adapter = gson.getAdapter(Transaction.class);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+            // Only the start of the file is needed to tell the layouts apart
+            char[] head = new char[256];
+            reader.mark(head.length);
+            int length = Math.max(0, reader.read(head, 0, head.length));
+            reader.reset();
+            char[] start = new char[length];
+            System.arraycopy(head, 0, start, 0, length);
+
+            if (new String(start).trim().isEmpty()) {
+                // An empty file holds no transactions, the same as for the manager
+                return store;
+            } else if (ChecksummedRecords.isChecksummed(start)) {
+                store.loadChecksummed(reader, adapter, file);
+            } else {
+                store.loadPlain(reader, adapter);
+            }
+        }
+        return store;
+    }
+
+    private void loadChecksummed(BufferedReader reader, TypeAdapter<Transaction> adapter, File file)
+            throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            char[] text = line.toCharArray();
+            for (int[] record : ChecksummedRecords.recordLines(text, 0, text.length)) {
+                int[] data = ChecksummedRecords.verifiedData(text, record);
+                if (data == null) {
+                    throw new JsonSyntaxException("Checksum mismatch in record on line " + lineNumber + " of "
+                            + file.getPath());
+                }
+                add(adapter.read(new JsonReader(new CharArrayReader(text, data[0], data[1] - data[0]))));
+            }
+        }
+    }
+
+    private void loadPlain(BufferedReader reader, TypeAdapter<Transaction> adapter) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            add(adapter.read(json));
+        }
+        json.endArray();
+    }
+
+    /**
+     * Store a copy of the transaction's columns. Later changes to the transaction object are not seen by the store
+     */
+    public void add(Transaction transaction) {
+        lock.writeLock().lock();
+        try {
+            if (rowsById.get(transaction.getId()) != -1) {
+                throw new InvalidTransactionException("Transaction with this ID already exists");
+            }
+            int row = rows;
+            if ((row >>> ROWS_PER_CHUNK_SHIFT) == chunks.size()) {
+                chunks.add(ByteBuffer.allocateDirect(ROWS_PER_CHUNK * ROW_SIZE));
+            }
+            write(row, transaction);
+            rowsById.put(transaction.getId(), row);
+            rows++;
+            live++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the transaction with this ID
+     *
+     * @return whether there was one to remove
+     */
+    public boolean remove(int id) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.get(id);
+            if (row == -1) {
+                return false;
+            }
+            chunk(row).put(offset(row) + STATE, DELETED);
+            rowsById.remove(id);
+            live--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Slide the remaining rows down over removed ones so their space can be reused, and free any chunks left empty
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            int to = 0;
+            for (int from = 0; from < rows; from++) {
+                ByteBuffer source = chunk(from);
+                int sourceOffset = offset(from);
+                if (source.get(sourceOffset + STATE) == DELETED) {
+                    continue;
+                }
+                if (to != from) {
+                    ByteBuffer target = chunk(to);
+                    int targetOffset = offset(to);
+                    for (int i = 0; i < ROW_SIZE; i += Long.BYTES) {
+                        target.putLong(targetOffset + i, source.getLong(sourceOffset + i));
+                    }
+                    rowsById.put(source.getInt(sourceOffset + ID), to);
+                }
+                to++;
+            }
+            rows = to;
+            int chunksNeeded = (rows + ROWS_PER_CHUNK - 1) >>> ROWS_PER_CHUNK_SHIFT;
+            while (chunks.size() > chunksNeeded) {
+                chunks.remove(chunks.size() - 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of transactions held
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes of direct memory allocated for rows, including the unused end of the last chunk and removed rows
+     */
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) chunks.size() * ROWS_PER_CHUNK * ROW_SIZE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The transaction with this ID as an object, or null if there isn't one
+     */
+    public Transaction get(int id) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(id);
+            return row == -1 ? null : new Row().moveTo(row).toTransaction();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hand every transaction to the consumer in the order they were added. The same Row is moved along for every
+     * call, so it must not be kept once the consumer returns, use toTransaction() for anything that needs to be kept
+     */
+    public void forEach(Consumer<Row> consumer) {
+        lock.readLock().lock();
+        try {
+            Row row = new Row();
+            for (int i = 0; i < rows; i++) {
+                if (row.moveTo(i).isLive()) {
+                    consumer.accept(row);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of transactions matching the predicate, without creating any objects for them
+     */
+    public int count(Predicate<Row> predicate) {
+        int[] count = new int[1];
+        forEach(row -> {
+            if (predicate.test(row)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Transactions matching the predicate as objects, in the order they were added. Only the matches are created
+     */
+    public List<Transaction> select(Predicate<Row> predicate) {
+        List<Transaction> matches = new ArrayList<>();
+        forEach(row -> {
+            if (predicate.test(row)) {
+                matches.add(row.toTransaction());
+            }
+        });
+        return matches;
+    }
+
+    private void write(int row, Transaction transaction) {
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+        byte type = typeOf(transaction);
+        chunk.putInt(offset + ID, transaction.getId());
+        chunk.put(offset + STATE, (byte) transaction.getState().ordinal());
+        chunk.put(offset + TYPE, type);
+        chunk.putFloat(offset + PRICE, transaction.getPrice());
+        chunk.putInt(offset + TERM, termOf(transaction, type));
+        chunk.putLong(offset + START, transaction.getStartTime());
+        chunk.putLong(offset + ACTIVATION, transaction.getActivationTime());
+        chunk.putInt(offset + VEHICLE, vehicleRef(transaction.getVehicle()));
+        chunk.putInt(offset + CUSTOMER, customerRef(transaction.getCustomer()));
+    }
+
+    private static byte typeOf(Transaction transaction) {
+        if (transaction instanceof RentTransaction) {
+            return RENT;
+        } else if (transaction instanceof LeaseTransaction) {
+            return LEASE;
+        } else if (transaction instanceof BuyTransaction) {
+            return BUY;
+        }
+        throw new InvalidTransactionException("Unknown transaction type: " + transaction.getClass().getSimpleName());
+    }
+
+    private static int termOf(Transaction transaction, byte type) {
+        switch (type) {
+            case RENT:
+                return ((RentTransaction) transaction).getDays();
+            case LEASE:
+                return ((LeaseTransaction) transaction).getMonths();
+            default:
+                return Float.floatToIntBits(((BuyTransaction) transaction).getWarrantyPrice());
+        }
+    }
+
+    private int vehicleRef(Vehicle vehicle) {
+        if (vehicle == null) {
+            return -1;
+        }
+        return vehicleRefs.computeIfAbsent(vehicle.getVin(), vin -> {
+            vehicles.add(vehicle);
+            return vehicles.size() - 1;
+        });
+    }
+
+    /**
+     * Customers have no identity of their own, so ones with all the same details share a reference
+     */
+    private int customerRef(Customer customer) {
+        if (customer == null) {
+            return -1;
+        }
+        Address address = customer.getMailingAddress();
+        String key = String.join("\u0000", String.valueOf(customer.getFirstName()),
+                String.valueOf(customer.getLastName()), String.valueOf(customer.getPhoneNumber()),
+                String.valueOf(customer.getEmail()),
+                address == null ? "" : String.join("\u0000", String.valueOf(address.getStreet()),
+                        String.valueOf(address.getCity()), String.valueOf(address.getState()),
+                        String.valueOf(address.getZip()), String.valueOf(address.getCountry())));
+        return customerRefs.computeIfAbsent(key, k -> {
+            customers.add(new Customer(customer));
+            return customers.size() - 1;
+        });
+    }
+
+    private ByteBuffer chunk(int row) {
+        return chunks.get(row >>> ROWS_PER_CHUNK_SHIFT);
+    }
+
+    private static int offset(int row) {
+        return (row & (ROWS_PER_CHUNK - 1)) * ROW_SIZE;
+    }
+
+    /**
+     * View of one stored transaction with the same accessors as Transaction, reading straight from the row. The
+     * vehicle and customer are shared by every row that refers to them and must not be changed
+     */
+    public final class Row {
+        private ByteBuffer chunk;
+        private int offset;
+
+        private Row() {
+        }
+
+        private Row moveTo(int row) {
+            chunk = chunk(row);
+            offset = offset(row);
+            return this;
+        }
+
+        private boolean isLive() {
+            return chunk.get(offset + STATE) != DELETED;
+        }
+
+        public int getId() {
+            return chunk.getInt(offset + ID);
+        }
+
+        public TransactionState getState() {
+            return STATES[chunk.get(offset + STATE)];
+        }
+
+        /**
+         * "rent", "lease" or "buy", the same as the type field on a transaction
+         */
+        public String getType() {
+            return TYPE_NAMES[chunk.get(offset + TYPE)];
+        }
+
+        public float getPrice() {
+            return chunk.getFloat(offset + PRICE);
+        }
+
+        public long getStartTime() {
+            return chunk.getLong(offset + START);
+        }
+
+        /**
+         * Activation time as epoch millis, or Transaction.NO_TIME if it hasn't been activated
+         */
+        public long getActivationTime() {
+            return chunk.getLong(offset + ACTIVATION);
+        }
+
+        /**
+         * Allocates a Date, use getStartTime() while scanning
+         */
+        public Date getStartDate() {
+            return Transaction.toDate(getStartTime());
+        }
+
+        /**
+         * Allocates a Date, use getActivationTime() while scanning
+         */
+        public Date getActivationDate() {
+            return Transaction.toDate(getActivationTime());
+        }
+
+        public Vehicle getVehicle() {
+            int ref = chunk.getInt(offset + VEHICLE);
+            return ref == -1 ? null : vehicles.get(ref);
+        }
+
+        public Customer getCustomer() {
+            int ref = chunk.getInt(offset + CUSTOMER);
+            return ref == -1 ? null : customers.get(ref);
+        }
+
+        /**
+         * Build a standalone transaction from the row, with its own copy of the customer
+         */
+        public Transaction toTransaction() {
+            int id = getId();
+            Customer customer = getCustomer();
+            customer = customer == null ? null : new Customer(customer);
+            int term = chunk.getInt(offset + TERM);
+            // Restored with the stored price rather than a recalculated one, it is what the transaction was agreed at
+            switch (chunk.get(offset + TYPE)) {
+                case RENT:
+                    return new RentTransaction(id, customer, getVehicle(), getStartTime(), term, getState(),
+                            getActivationTime(), getPrice());
+                case LEASE:
+                    return new LeaseTransaction(id, customer, getVehicle(), getStartTime(), term, getState(),
+                            getActivationTime(), getPrice());
+                default:
+                    return new BuyTransaction(id, customer, getVehicle(), getStartTime(), Float.intBitsToFloat(term),
+                            getState(), getActivationTime(), getPrice());
+            }
+        }
+    }
+
+    /**
+     * Open addressing map from transaction ID to row, so finding a row needs no boxed keys. EMPTY marks a free slot,
+     * so the one ID equal to it is held outside the table
+     */
+    private static final class IdIndex {
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        private int[] keys = newKeys(16);
+        private int[] values = new int[16];
+        private int size;
+        private int emptyIdRow = -1;
+
+        int get(int id) {
+            if (id == EMPTY) {
+                return emptyIdRow;
+            }
+            int mask = keys.length - 1;
+            for (int slot = hash(id) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == id) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(int id, int row) {
+            if (id == EMPTY) {
+                emptyIdRow = row;
+                return;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = hash(id) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = id;
+                size++;
+            }
+            values[slot] = row;
+        }
+
+        void remove(int id) {
+            if (id == EMPTY) {
+                emptyIdRow = -1;
+                return;
+            }
+            int mask = keys.length - 1;
+            int slot = hash(id) & mask;
+            while (keys[slot] != id) {
+                if (keys[slot] == EMPTY) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // Shift later entries of the same probe run back over the gap, so lookups never stop short
+            int gap = slot;
+            for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = EMPTY;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(capacity);
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int[] newKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
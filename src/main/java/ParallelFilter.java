@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the items of a collection that pass a predicate, in their original order, splitting the work across a
+ * ForkJoinPool when there are enough items for that to pay off.
+ *
+ * The range is halved until pieces are small enough to scan on one thread, each piece collects its own matches, and
+ * the pieces are joined back together left to right. Small inputs, or a pool with only one thread, are scanned right
+ * on the calling thread since forking would only add overhead.
+ */
+class ParallelFilter {
+
+    // Below this many items a single pass on the calling thread is quicker than handing out work
+    static final int PARALLEL_THRESHOLD = 20000;
+
+    // Smallest piece worth forking off on its own
+    private static final int MIN_LEAF_SIZE = 2048;
+
+    // Pieces per thread, so a thread that finishes early can steal more instead of sitting idle
+    static final int LEAVES_PER_THREAD = 4;
+
+    private ParallelFilter() {
+    }
+
+    /**
+     * Items passing the predicate, in the order the collection gives them. The predicate may be called from several
+     * threads at once and must not change anything
+     *
+     * @param pool pool to split the work over, or null to always run on the calling thread
+     */
+    static <T> ArrayList<T> filter(Collection<T> items, Predicate<? super T> predicate, ForkJoinPool pool) {
+        if (pool == null || pool.getParallelism() < 2 || items.size() < PARALLEL_THRESHOLD) {
+            ArrayList<T> matches = new ArrayList<>();
+            for (T item : items) {
+                if (predicate.test(item)) {
+                    matches.add(item);
+                }
+            }
+            return matches;
+        }
+
+        // Splitting needs indexed access, anything else is copied into a list first
+        List<T> list = items instanceof List && items instanceof RandomAccess ? (List<T>) items : new ArrayList<>(items);
+        int leafSize = Math.max(MIN_LEAF_SIZE, list.size() / (pool.getParallelism() * LEAVES_PER_THREAD));
+        return pool.invoke(new Slice<>(list, 0, list.size(), predicate, leafSize));
+    }
+
+    private static final class Slice<T> extends RecursiveTask<ArrayList<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> items;
+        private final int from;
+        private final int to;
+        private final Predicate<? super T> predicate;
+        private final int leafSize;
+
+        Slice(List<T> items, int from, int to, Predicate<? super T> predicate, int leafSize) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.predicate = predicate;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected ArrayList<T> compute() {
+            if (to - from <= leafSize) {
+                ArrayList<T> matches = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    T item = items.get(i);
+                    if (predicate.test(item)) {
+                        matches.add(item);
+                    }
+                }
+                return matches;
+            }
+
+            // Fork the right half, work on the left half here, then join them back in order
+            int middle = (from + to) >>> 1;
+            Slice<T> right = new Slice<>(items, middle, to, predicate, leafSize);
+            right.fork();
+            ArrayList<T> matches = new Slice<>(items, from, middle, predicate, leafSize).compute();
+            matches.addAll(right.join());
+            return matches;
+        }
+    }
+}
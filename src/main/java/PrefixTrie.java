@@ -0,0 +1,172 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Character trie mapping string keys to any number of values, for prefix lookups that only touch the keys that match.
+ *
+ * Each node keeps its children in a small sorted array rather than a map, since most nodes have only one or two
+ * children and there is one node per character of every distinct key. Nodes left with no values or children are pruned
+ * on removal. Values are compared by identity, so two equal values under one key are tracked separately.
+ *
+ * Not thread safe, callers are expected to hold their own lock around changes.
+ */
+class PrefixTrie<V> {
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * Add a value under a key. A key can hold several values
+     */
+    void add(String key, V value) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        if (node.values == null) {
+            node.values = new ArrayList<>(1);
+        }
+        node.values.add(value);
+        size++;
+    }
+
+    /**
+     * Remove one value from under a key, if it is there
+     */
+    void remove(String key, V value) {
+        remove(root, key, 0, value);
+    }
+
+    void clear() {
+        root.labels = Node.NO_LABELS;
+        root.children = null;
+        root.childCount = 0;
+        root.values = null;
+        size = 0;
+    }
+
+    /**
+     * Number of values held across all keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Values stored under exactly this key
+     */
+    List<V> get(String key) {
+        Node<V> node = find(key);
+        return node == null || node.values == null ? new ArrayList<>() : new ArrayList<>(node.values);
+    }
+
+    /**
+     * Values stored under every key starting with the prefix, in key order
+     */
+    List<V> withPrefix(String prefix) {
+        List<V> matches = new ArrayList<>();
+        collect(find(prefix), matches);
+        return matches;
+    }
+
+    private Node<V> find(String key) {
+        Node<V> node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node;
+    }
+
+    private static <V> void collect(Node<V> from, List<V> into) {
+        if (from == null) {
+            return;
+        }
+
+        // Walk depth first, pushing children in reverse so they come off the stack in sorted order
+        Deque<Node<V>> stack = new ArrayDeque<>();
+        stack.push(from);
+        while (!stack.isEmpty()) {
+            Node<V> node = stack.pop();
+            if (node.values != null) {
+                into.addAll(node.values);
+            }
+            for (int i = node.childCount - 1; i >= 0; i--) {
+                stack.push(node.children[i]);
+            }
+        }
+    }
+
+    /**
+     * @return true if the node is now empty and can be pruned by its parent
+     */
+    private boolean remove(Node<V> node, String key, int depth, V value) {
+        if (depth == key.length()) {
+            if (node.values != null) {
+                for (int i = 0; i < node.values.size(); i++) {
+                    if (node.values.get(i) == value) {
+                        node.values.remove(i);
+                        size--;
+                        break;
+                    }
+                }
+                if (node.values.isEmpty()) {
+                    node.values = null;
+                }
+            }
+        } else {
+            Node<V> child = node.child(key.charAt(depth));
+            if (child != null && remove(child, key, depth + 1, value)) {
+                node.removeChild(key.charAt(depth));
+            }
+        }
+        return node.values == null && node.childCount == 0;
+    }
+
+    private static final class Node<V> {
+        private static final char[] NO_LABELS = new char[0];
+
+        private char[] labels = NO_LABELS;
+        private Node<V>[] children;
+        private int childCount;
+        private List<V> values;
+
+        Node<V> child(char label) {
+            int index = Arrays.binarySearch(labels, 0, childCount, label);
+            return index < 0 ? null : children[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<V> childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, 0, childCount, label);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertAt = -index - 1;
+            if (childCount == labels.length) {
+                int capacity = Math.max(2, childCount * 2);
+                labels = Arrays.copyOf(labels, capacity);
+                children = children == null ? (Node<V>[]) new Node<?>[capacity] : Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, insertAt, labels, insertAt + 1, childCount - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+            Node<V> child = new Node<>();
+            labels[insertAt] = label;
+            children[insertAt] = child;
+            childCount++;
+            return child;
+        }
+
+        void removeChild(char label) {
+            int index = Arrays.binarySearch(labels, 0, childCount, label);
+            if (index >= 0) {
+                System.arraycopy(labels, index + 1, labels, index, childCount - index - 1);
+                System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+                children[--childCount] = null;
+            }
+        }
+    }
+}
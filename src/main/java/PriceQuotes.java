@@ -0,0 +1,94 @@
+import java.util.List;
+
+/**
+ * Prices for renting, leasing or buying a batch of vehicles, such as a page of search results or every vehicle of one
+ * type from VehicleManager.getVehicles(type), without building a transaction for each just to read its price. The
+ * formulas are the transactions' own, so a quote is always exactly the price the transaction would get.
+ *
+ * Quotes come back in a float array in the same order as the vehicles. The versions that take an array fill that in
+ * instead of making a new one, so a caller that keeps one around quotes without allocating anything.
+ */
+public final class PriceQuotes {
+
+    private PriceQuotes() {
+    }
+
+    /**
+     * Price of renting each vehicle for this many days
+     */
+    public static float[] rent(List<? extends Vehicle> vehicles, int days) {
+        return rent(vehicles, days, new float[vehicles.size()]);
+    }
+
+    /**
+     * Price of renting each vehicle for this many days, written to the start of the given array
+     *
+     * @return the array passed in
+     */
+    public static float[] rent(List<? extends Vehicle> vehicles, int days, float[] quotes) {
+        checkLength(vehicles, quotes);
+        for (int i = 0; i < vehicles.size(); i++) {
+            quotes[i] = RentTransaction.quote(vehicles.get(i).getType(), days);
+        }
+        return quotes;
+    }
+
+    /**
+     * Price of renting any vehicle of each type for this many days, indexed by the type's ordinal
+     */
+    public static float[] rentByType(int days) {
+        VehicleType[] types = VehicleType.values();
+        float[] quotes = new float[types.length];
+        for (VehicleType type : types) {
+            quotes[type.ordinal()] = RentTransaction.quote(type, days);
+        }
+        return quotes;
+    }
+
+    /**
+     * Price of leasing each vehicle for this many months
+     */
+    public static float[] lease(List<? extends Vehicle> vehicles, int months) {
+        return lease(vehicles, months, new float[vehicles.size()]);
+    }
+
+    /**
+     * Price of leasing each vehicle for this many months, written to the start of the given array
+     *
+     * @return the array passed in
+     */
+    public static float[] lease(List<? extends Vehicle> vehicles, int months, float[] quotes) {
+        checkLength(vehicles, quotes);
+        for (int i = 0; i < vehicles.size(); i++) {
+            quotes[i] = LeaseTransaction.quote(vehicles.get(i).getPrice(), months);
+        }
+        return quotes;
+    }
+
+    /**
+     * Price of buying each vehicle with this warranty
+     */
+    public static float[] buy(List<? extends Vehicle> vehicles, float warrantyPrice) {
+        return buy(vehicles, warrantyPrice, new float[vehicles.size()]);
+    }
+
+    /**
+     * Price of buying each vehicle with this warranty, written to the start of the given array
+     *
+     * @return the array passed in
+     */
+    public static float[] buy(List<? extends Vehicle> vehicles, float warrantyPrice, float[] quotes) {
+        checkLength(vehicles, quotes);
+        for (int i = 0; i < vehicles.size(); i++) {
+            quotes[i] = BuyTransaction.quote(vehicles.get(i).getPrice(), warrantyPrice);
+        }
+        return quotes;
+    }
+
+    private static void checkLength(List<? extends Vehicle> vehicles, float[] quotes) {
+        if (quotes.length < vehicles.size()) {
+            throw new IllegalArgumentException("Need room for " + vehicles.size() + " quotes, array holds "
+                    + quotes.length);
+        }
+    }
+}
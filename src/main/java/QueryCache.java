@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of TransactionQuery results, keyed by the set of filters on the query.
+ *
+ * Entries hold the stored transactions that matched, and are dropped as soon as a change could affect them: adding or
+ * removing a transaction only drops the entries whose filters match that transaction, so a change to one customer's
+ * rental doesn't throw away every other cached query. A reload of the whole file clears everything. When the cache is
+ * full the least recently used entry is evicted.
+ */
+public class QueryCache implements TransactionStore.Listener {
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, List<Transaction>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public QueryCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+
+        // Access ordered so the eldest entry is always the least recently used
+        this.entries = new LinkedHashMap<Key, List<Transaction>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Transaction>> eldest) {
+                if (size() > QueryCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Cached result for a set of filters, or null if there isn't one. Must be called under the store's read lock so
+     * the result can't be invalidated while it is being used
+     */
+    synchronized List<Transaction> get(Key key) {
+        List<Transaction> result = entries.get(key);
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Remember the result for a set of filters. Must be called under the same store read lock the result was worked
+     * out under, otherwise a change in between could leave a stale result behind
+     */
+    synchronized void put(Key key, List<Transaction> result) {
+        entries.put(key, result);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of entries dropped because a change affected them
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Number of entries dropped to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Fraction of lookups answered from the cache, or 0 if there haven't been any
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public void added(Transaction transaction) {
+        invalidate(transaction);
+    }
+
+    @Override
+    public void removed(Transaction transaction) {
+        invalidate(transaction);
+    }
+
+    @Override
+    public void reloaded(Collection<Transaction> transactions) {
+        synchronized (this) {
+            invalidations.addAndGet(entries.size());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Drop only the entries whose filters would match the changed transaction, the rest can't have been affected
+     */
+    private synchronized void invalidate(Transaction transaction) {
+        entries.keySet().removeIf(key -> {
+            if (key.matches(transaction)) {
+                invalidations.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{size=" + size() + ", hits=" + hits + ", misses=" + misses + ", invalidations="
+                + invalidations + ", evictions=" + evictions + "}";
+    }
+
+    /**
+     * The set of filters on a query. Two queries with the same filter values share a cache entry
+     */
+    static final class Key {
+        private final Object[] filters;
+        private final Predicate<Transaction> matcher;
+
+        /**
+         * @param matcher whether a transaction passes every filter, used to work out which entries a change affects
+         * @param filters the value of each filter, in a fixed order with null for ones that aren't set. Values must be
+         *                immutable, so dates should be passed as epoch milliseconds
+         */
+        Key(Predicate<Transaction> matcher, Object... filters) {
+            this.matcher = matcher;
+            this.filters = filters;
+        }
+
+        /**
+         * Whether a transaction passes every filter in this key
+         */
+        boolean matches(Transaction transaction) {
+            return matcher.test(transaction);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            return Arrays.equals(filters, ((Key) o).filters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(filters);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Hash indexes from each customer address field (state, zip and country) to the transactions for that value.
+ *
+ * Alongside the transactions, each value keeps a running count and total price per transaction state, so grouped
+ * reports read a few numbers per region instead of touching any transactions at all. Kept up to date as a store
+ * listener; lookups must be made under the store's read lock.
+ */
+class RegionIndex implements TransactionStore.Listener {
+
+    private final EnumMap<AddressField, Map<String, Bucket>> indexes = new EnumMap<>(AddressField.class);
+
+    RegionIndex() {
+        for (AddressField field : AddressField.values()) {
+            indexes.put(field, new HashMap<>());
+        }
+    }
+
+    /**
+     * Transactions whose customer's address has exactly this value for the field, in the order they were added
+     */
+    Collection<Transaction> get(AddressField field, String value) {
+        Bucket bucket = indexes.get(field).get(value);
+        return bucket == null ? Collections.emptySet() : Collections.unmodifiableSet(bucket.transactions);
+    }
+
+    /**
+     * Number of transactions for each value of the field, optionally only those in one state, sorted by value
+     */
+    Map<String, Integer> counts(AddressField field, TransactionState state) {
+        Map<String, Integer> counts = new TreeMap<>();
+        indexes.get(field).forEach((value, bucket) -> {
+            int count = state == null ? bucket.transactions.size() : bucket.counts[state.ordinal()];
+            if (count > 0) {
+                counts.put(value, count);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Total price of the transactions for each value of the field, optionally only those in one state, sorted by value
+     */
+    Map<String, Double> revenue(AddressField field, TransactionState state) {
+        Map<String, Double> revenue = new TreeMap<>();
+        indexes.get(field).forEach((value, bucket) -> {
+            long cents = 0;
+            int count = 0;
+            for (TransactionState s : TransactionState.values()) {
+                if (state == null || state == s) {
+                    cents += bucket.revenueCents[s.ordinal()];
+                    count += bucket.counts[s.ordinal()];
+                }
+            }
+            if (count > 0) {
+                revenue.put(value, cents / 100.0);
+            }
+        });
+        return revenue;
+    }
+
+    @Override
+    public void added(Transaction transaction) {
+        Address address = address(transaction);
+        for (AddressField field : AddressField.values()) {
+            String value = field.of(address);
+            if (value != null) {
+                indexes.get(field).computeIfAbsent(value, v -> new Bucket()).add(transaction);
+            }
+        }
+    }
+
+    @Override
+    public void removed(Transaction transaction) {
+        Address address = address(transaction);
+        for (AddressField field : AddressField.values()) {
+            String value = field.of(address);
+            Bucket bucket = value == null ? null : indexes.get(field).get(value);
+            if (bucket != null && bucket.remove(transaction) && bucket.transactions.isEmpty()) {
+                indexes.get(field).remove(value);
+            }
+        }
+    }
+
+    @Override
+    public void reloaded(Collection<Transaction> transactions) {
+        indexes.values().forEach(Map::clear);
+        transactions.forEach(this::added);
+    }
+
+    private static Address address(Transaction transaction) {
+        return transaction.getCustomer() == null ? null : transaction.getCustomer().getMailingAddress();
+    }
+
+    /**
+     * Transactions for one value of a field, with their counts and totals by state. Money is kept in whole cents so
+     * that adding and removing the same transaction always nets out to exactly zero
+     */
+    private static final class Bucket {
+        // Transactions don't override equals, so this is an identity set that keeps insertion order
+        private final Set<Transaction> transactions = new LinkedHashSet<>();
+        private final int[] counts = new int[TransactionState.values().length];
+        private final long[] revenueCents = new long[TransactionState.values().length];
+
+        void add(Transaction transaction) {
+            if (transactions.add(transaction)) {
+                counts[transaction.getState().ordinal()]++;
+                revenueCents[transaction.getState().ordinal()] += Math.round(transaction.getPrice() * 100.0);
+            }
+        }
+
+        boolean remove(Transaction transaction) {
+            if (transactions.remove(transaction)) {
+                counts[transaction.getState().ordinal()]--;
+                revenueCents[transaction.getState().ordinal()] -= Math.round(transaction.getPrice() * 100.0);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.Calendar;
 import java.util.Date;
 
 public class RentTransaction extends Transaction {
@@ -11,8 +12,37 @@ public class RentTransaction extends Transaction {
         calculatePrice();
     }
 
+    /**
+     * For gson, which fills in the fields from the file
+     */
+    private RentTransaction() {
+    }
+
+    /**
+     * Restore a stored rental with the price it was saved with
+     */
+    RentTransaction(int id, Customer customer, Vehicle vehicle, long startTime, int days, TransactionState state,
+                    long activationTime, float price) {
+        super(id, customer, vehicle, startTime, state, activationTime, price);
+        this.days = days;
+        labelType();
+    }
+
+    private RentTransaction(RentTransaction other) {
+        super(other);
+        this.days = other.days;
+    }
+
     protected void calculatePrice() {
-        price = (float) (days * vehicle.getType().getFee());
+        price = quote(vehicle.getType(), days);
+    }
+
+    /**
+     * Price of renting a vehicle of this type for this many days, the same as a rental's price would be. See
+     * PriceQuotes for quoting many vehicles at once
+     */
+    public static float quote(VehicleType type, int days) {
+        return (float) (days * type.getFee());
     }
 
     @Override
@@ -20,6 +50,22 @@ public class RentTransaction extends Transaction {
         this.type = "rent";
     }
 
+    @Override
+    public RentTransaction copy() {
+        return new RentTransaction(this);
+    }
+
+    /**
+     * The rental ends the given number of days after the start date
+     */
+    @Override
+    public Date getEndDate() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(startTime);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return calendar.getTime();
+    }
+
     public int getDays() {
         return days;
     }
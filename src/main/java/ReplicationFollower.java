@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a VehicleManager in step with a ReplicationLeader, so it can serve the same queries from its own copy of the
+ * data. The replica needs data files of its own, and shouldn't be changed any other way or have stale draft expiry
+ * turned on, since anything it did by itself would be overwritten or never reach the leader.
+ *
+ * Changes are applied in the leader's order on a background thread, and reads from the replica see each one once it
+ * is applied. When the connection drops the follower keeps retrying, and resumes after the last sequence it applied,
+ * or takes a fresh snapshot if the leader can no longer replay from there or has restarted with a new feed since.
+ */
+public class ReplicationFollower {
+
+    private static final long RETRY_MILLIS = 200;
+
+    private final VehicleManager replica;
+    private final String host;
+    private final int port;
+    private final Object progress = new Object();
+
+    private volatile long lastSequence;
+    private volatile long epoch;
+    private volatile long snapshotCount;
+    private volatile boolean connected;
+    private volatile boolean stopped;
+    private volatile Socket socket;
+    private Thread thread;
+
+    /**
+     * Follower for a replica with nothing in it yet, which starts with a snapshot
+     */
+    public ReplicationFollower(VehicleManager replica, String host, int port) {
+        this(replica, host, port, 0, 0);
+    }
+
+    /**
+     * Follower for a replica that already holds the leader's changes up to a sequence number of the feed with the
+     * given epoch, such as one restarted on the files it had before, which only needs what came after. If the leader's
+     * feed has another epoch by now the follower takes a snapshot instead
+     */
+    public ReplicationFollower(VehicleManager replica, String host, int port, long lastSequence, long epoch) {
+        this.replica = replica;
+        this.host = host;
+        this.port = port;
+        this.lastSequence = lastSequence;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Start following on a background thread. Does nothing if already started
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        stopped = false;
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Disconnect and stop following. The replica keeps what it has, and a new follower given getLastSequence and
+     * getEpoch can carry on from there
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (thread == null) {
+            return;
+        }
+        disconnect();
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Sequence number, in the leader's feed, of the last change applied to the replica
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Epoch of the leader's feed that getLastSequence belongs to, or 0 before the first snapshot
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Number of snapshots taken, once when starting empty and again whenever the leader couldn't replay from where
+     * this follower left off
+     */
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Wait until the replica has applied the change with this sequence number, for reading back something just written
+     * to the leader
+     *
+     * @return whether it got there before the timeout
+     */
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progress) {
+            while (lastSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                progress.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop the current connection. The follower reconnects and resumes by itself unless stopped
+     */
+    void disconnect() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Closing is all that was wanted
+            }
+        }
+    }
+
+    private void run() {
+        while (!stopped) {
+            try (Socket current = new Socket(host, port)) {
+                socket = current;
+                if (stopped) {
+                    return;
+                }
+                connected = true;
+                follow(current);
+            } catch (IOException | RuntimeException e) {
+                // Leader unreachable, connection dropped, or a change couldn't be applied; try again from lastSequence
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket current) throws IOException {
+        current.setTcpNoDelay(true);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(current.getOutputStream(), StandardCharsets.UTF_8));
+        VehicleManager.gson.toJson(ReplicationMessage.resume(lastSequence, epoch), writer);
+        writer.write('\n');
+        writer.flush();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(current.getInputStream(),
+                StandardCharsets.UTF_8));
+        ReplicationMessage snapshot = null;
+        List<Transaction> snapshotTransactions = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            ReplicationMessage message = VehicleManager.gson.fromJson(line, ReplicationMessage.class);
+            switch (message.kind) {
+                case SNAPSHOT:
+                    snapshot = message;
+                    snapshotTransactions = new ArrayList<>();
+                    break;
+                case SNAPSHOT_TRANSACTION:
+                    snapshotTransactions.add(message.getTransaction());
+                    break;
+                case SNAPSHOT_END:
+                    replica.loadReplicated(snapshot.vehicles, snapshotTransactions);
+                    snapshotCount++;
+                    epoch = snapshot.epoch;
+                    advance(snapshot.sequence);
+                    snapshot = null;
+                    snapshotTransactions = null;
+                    break;
+                case EVENT:
+                    if (message.sequence <= lastSequence) {
+                        break;
+                    }
+                    if (message.sequence != lastSequence + 1) {
+                        throw new IOException("Missed changes between " + lastSequence + " and " + message.sequence);
+                    }
+                    replica.applyReplicated(message.type, message.getTransaction(), message.vehicle);
+                    advance(message.sequence);
+                    break;
+                default:
+                    throw new IOException("Unexpected " + message.kind + " from leader");
+            }
+        }
+    }
+
+    private void advance(long sequence) {
+        synchronized (progress) {
+            lastSequence = sequence;
+            progress.notifyAll();
+        }
+    }
+}
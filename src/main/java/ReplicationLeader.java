@@ -0,0 +1,218 @@
+import exceptions.InvalidOperationException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ships every change made through a VehicleManager to ReplicationFollowers over a local socket, so followers holding
+ * their own copy of the data can take reads off the leader. Changes go out in the order of the leader's ChangeFeed,
+ * each with its feed sequence number. A follower that reconnects picks up after the last sequence it applied, and one
+ * that is new, has been gone too long for the feed's history, or was following a different feed, as it was before
+ * the leader's manager restarted, is sent a snapshot of everything first.
+ *
+ * Only changes made through the leader's manager are shipped, since those are what the feed sees. A follower that
+ * falls so far behind that its feed buffer fills is disconnected and catches up when it reconnects.
+ *
+ * The leader only listens on the loopback address.
+ */
+public class ReplicationLeader {
+
+    // Events a follower can fall behind by, including those published while its snapshot is being sent
+    private static final int FOLLOWER_BUFFER_SIZE = 10000;
+
+    private final VehicleManager manager;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "replication-leader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean stopped;
+
+    /**
+     * @param manager the manager whose changes are shipped
+     * @param port port to listen on, or 0 to pick a free one
+     */
+    public ReplicationLeader(VehicleManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Start accepting followers on a background thread
+     */
+    public void start() {
+        executor.execute(this::acceptFollowers);
+    }
+
+    /**
+     * Stop accepting followers and disconnect the ones connected
+     */
+    public void stop() {
+        stopped = true;
+        closeQuietly(serverSocket);
+        followers.forEach(ReplicationLeader::closeQuietly);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Port the leader is listening on, useful when it was created with port 0
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    private void acceptFollowers() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // Closed by stop, anything else is retried with the next follower
+                if (stopped) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bring one follower up to date and keep it there until it disconnects
+     */
+    private void serve(Socket socket) {
+        ChangeFeed.Subscription[] subscription = new ChangeFeed.Subscription[1];
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            ReplicationMessage hello = VehicleManager.gson.fromJson(reader.readLine(), ReplicationMessage.class);
+            if (hello == null || hello.kind != ReplicationMessage.Kind.RESUME) {
+                return;
+            }
+
+            // Events are held back until the snapshot, if one is needed, has gone out ahead of them
+            ChangeListener listener = new ChangeListener() {
+                @Override
+                public void onSubscribe(ChangeFeed.Subscription s) {
+                }
+
+                @Override
+                public void onEvent(ChangeEvent event) {
+                    try {
+                        send(writer, ReplicationMessage.event(event));
+                    } catch (IOException e) {
+                        closeQuietly(socket);
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void onOverflow(long lastSequence) {
+                    // The follower resumes from what it last applied when it reconnects
+                    closeQuietly(socket);
+                }
+            };
+
+            ChangeFeed feed = manager.getChangeFeed();
+            subscription[0] = resume(feed, listener, hello.sequence, hello.epoch);
+            if (subscription[0] == null) {
+                long from = feed.getLastSequence();
+                subscription[0] = feed.subscribe(listener, FOLLOWER_BUFFER_SIZE, from);
+                sendSnapshot(writer, from, feed.getEpoch());
+            }
+            subscription[0].request(Long.MAX_VALUE);
+
+            // Followers never send anything else, so this returns when the follower goes away
+            while (reader.readLine() != null) {
+                continue;
+            }
+        } catch (IOException | RuntimeException e) {
+            // The follower went away or sent something unreadable, it reconnects and resumes
+        } finally {
+            if (subscription[0] != null) {
+                subscription[0].cancel();
+            }
+            followers.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Subscribe after the follower's last sequence, or return null if the feed can't replay from there. That happens
+     * when the follower has nothing, is further back than the feed's history, or got its sequence from another feed,
+     * such as the one the leader had before restarting. Those would otherwise line up with this feed's numbers and
+     * have the follower skip changes it never saw
+     */
+    private static ChangeFeed.Subscription resume(ChangeFeed feed, ChangeListener listener, long sequence,
+                                                  long epoch) {
+        if (epoch != feed.getEpoch() || sequence <= 0 || sequence > feed.getLastSequence()) {
+            return null;
+        }
+        try {
+            return feed.subscribe(listener, FOLLOWER_BUFFER_SIZE, sequence);
+        } catch (InvalidOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Send everything the manager holds. Taken after subscribing, so it can already contain some of the events that
+     * follow it; the follower applies those again, which leaves its copy the same
+     */
+    private void sendSnapshot(Writer writer, long sequence, long epoch) throws IOException {
+        List<Vehicle> vehicles = manager.getVehicles();
+        List<Transaction> transactions = manager.getTransactions().sequential().asList();
+        synchronized (writer) {
+            write(writer, ReplicationMessage.snapshot(sequence, epoch, vehicles));
+            for (Transaction transaction : transactions) {
+                write(writer, ReplicationMessage.snapshotTransaction(transaction));
+            }
+            write(writer, ReplicationMessage.snapshotEnd());
+            writer.flush();
+        }
+    }
+
+    private static void send(Writer writer, ReplicationMessage message) throws IOException {
+        synchronized (writer) {
+            write(writer, message);
+            writer.flush();
+        }
+    }
+
+    private static void write(Writer writer, ReplicationMessage message) throws IOException {
+        VehicleManager.gson.toJson(message, writer);
+        writer.write('\n');
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already closed or broken, either way it is done with
+        }
+    }
+}
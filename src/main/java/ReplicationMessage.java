@@ -0,0 +1,78 @@
+import com.google.gson.JsonElement;
+
+import java.util.List;
+
+/**
+ * One line of the replication protocol between a ReplicationLeader and a ReplicationFollower. Each message is written
+ * as a single line of JSON with VehicleManager's gson, so transactions keep their rent, lease or buy type.
+ *
+ * A follower opens with RESUME, the last sequence number it applied and the epoch of the leader's feed it came from,
+ * both 0 if it has nothing yet. The leader either carries on from there with EVENT messages, or, if the epoch isn't
+ * its own or it no longer holds the events after that sequence, sends the whole state first: SNAPSHOT with the
+ * sequence it was taken at, its epoch and the vehicles, a SNAPSHOT_TRANSACTION for each transaction, then
+ * SNAPSHOT_END, followed by EVENT messages from that sequence on.
+ */
+class ReplicationMessage {
+
+    enum Kind {
+        RESUME, SNAPSHOT, SNAPSHOT_TRANSACTION, SNAPSHOT_END, EVENT
+    }
+
+    Kind kind;
+    long sequence;
+    long epoch;
+    ChangeEvent.Type type;
+    // Kept as the transaction's own JSON, which already carries its type, since gson's type adapter refuses to add
+    // the type to a transaction written as a field
+    JsonElement transaction;
+    Vehicle vehicle;
+    List<Vehicle> vehicles;
+
+    /**
+     * The transaction carried by the message, or null if there isn't one
+     */
+    Transaction getTransaction() {
+        return transaction == null ? null : VehicleManager.gson.fromJson(transaction, Transaction.class);
+    }
+
+    static ReplicationMessage resume(long sequence, long epoch) {
+        ReplicationMessage message = new ReplicationMessage();
+        message.kind = Kind.RESUME;
+        message.sequence = sequence;
+        message.epoch = epoch;
+        return message;
+    }
+
+    static ReplicationMessage snapshot(long sequence, long epoch, List<Vehicle> vehicles) {
+        ReplicationMessage message = new ReplicationMessage();
+        message.kind = Kind.SNAPSHOT;
+        message.sequence = sequence;
+        message.epoch = epoch;
+        message.vehicles = vehicles;
+        return message;
+    }
+
+    static ReplicationMessage snapshotTransaction(Transaction transaction) {
+        ReplicationMessage message = new ReplicationMessage();
+        message.kind = Kind.SNAPSHOT_TRANSACTION;
+        message.transaction = VehicleManager.gson.toJsonTree(transaction);
+        return message;
+    }
+
+    static ReplicationMessage snapshotEnd() {
+        ReplicationMessage message = new ReplicationMessage();
+        message.kind = Kind.SNAPSHOT_END;
+        return message;
+    }
+
+    static ReplicationMessage event(ChangeEvent event) {
+        ReplicationMessage message = new ReplicationMessage();
+        message.kind = Kind.EVENT;
+        message.sequence = event.getSequence();
+        message.type = event.getType();
+        message.transaction = event.getTransaction() == null ? null
+                : VehicleManager.gson.toJsonTree(event.getTransaction());
+        message.vehicle = event.getVehicle();
+        return message;
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the first k items offered in some order, without holding on to or sorting the rest. The kept items sit in a
+ * heap with the worst of them on top, so each new item is compared against that one and either dropped straight away
+ * or swapped in at log k cost. Memory stays at k items however many are offered.
+ *
+ * Items that compare equal are kept in the order they were offered, the same as a stable sort would, so a null order
+ * just keeps the first k offered.
+ */
+class TopK<T> {
+
+    private final Comparator<? super T> order;
+    private final int k;
+    private final PriorityQueue<Entry<T>> heap;
+    private long offered;
+
+    /**
+     * @param order order to keep the first items of, or null to keep the first ones offered
+     * @param k how many items to keep
+     */
+    TopK(Comparator<? super T> order, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Can't keep a negative number of items, got " + k);
+        }
+        this.order = order;
+        this.k = k;
+
+        // Worst on top: furthest along in the order, and the later offered of two equal ones
+        this.heap = new PriorityQueue<>(Math.max(1, k), (a, b) -> compare(b, a));
+    }
+
+    /**
+     * Offer an item, which is kept if it comes before the worst one kept so far
+     *
+     * @return whether the item was kept
+     */
+    boolean offer(T item) {
+        long sequence = offered++;
+        if (heap.size() < k) {
+            heap.add(new Entry<>(item, sequence));
+            return true;
+        }
+        // Anything tied with the worst kept item was offered after it, so only something strictly better gets in
+        if (k == 0 || order == null || order.compare(item, heap.peek().item) >= 0) {
+            return false;
+        }
+        heap.poll();
+        heap.add(new Entry<>(item, sequence));
+        return true;
+    }
+
+    /**
+     * Whether k items are held. With no order nothing offered after that point can be kept
+     */
+    boolean isFull() {
+        return heap.size() == k;
+    }
+
+    /**
+     * Swap every kept item for another that sorts the same, such as a copy of it
+     */
+    void replaceAll(UnaryOperator<T> replacement) {
+        for (Entry<T> entry : heap) {
+            entry.item = replacement.apply(entry.item);
+        }
+    }
+
+    /**
+     * The kept items, first in the order first
+     */
+    ArrayList<T> toSortedList() {
+        ArrayList<Entry<T>> entries = new ArrayList<>(heap);
+        entries.sort(this::compare);
+        ArrayList<T> items = new ArrayList<>(entries.size());
+        entries.forEach(entry -> items.add(entry.item));
+        return items;
+    }
+
+    private int compare(Entry<T> a, Entry<T> b) {
+        int compared = order == null ? 0 : order.compare(a.item, b.item);
+        return compared != 0 ? compared : Long.compare(a.sequence, b.sequence);
+    }
+
+    private static final class Entry<T> {
+        private T item;
+        private final long sequence;
+
+        Entry(T item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+    }
+}
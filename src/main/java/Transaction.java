@@ -1,37 +1,96 @@
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
 import exceptions.InvalidTransactionException;
 
+import java.time.Clock;
 import java.util.Date;
 
 public abstract class Transaction {
 
+    /**
+     * Time value for a date that isn't set, like the activation date of a draft. Far outside any real date, so every
+     * real time, the epoch included, can still be stored
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     final protected int id;
     protected TransactionState state;
     protected Customer customer;
     protected Vehicle vehicle;
     protected float price;
-    protected Date startDate;
-    protected Date activationDate;
+
+    // Times are kept as epoch milliseconds and written to file as plain numbers, the Date accessors convert
+    @SerializedName("startDate")
+    @JsonAdapter(EpochMillisAdapter.class)
+    protected long startTime = NO_TIME;
+    @SerializedName("activationDate")
+    @JsonAdapter(EpochMillisAdapter.class)
+    protected long activationTime = NO_TIME;
     protected String type;
 
     public Transaction(int id, Customer customer, Vehicle vehicle, Date startDate) {
         this.id = id;
         this.customer = customer;
         this.vehicle = vehicle;
-        this.startDate = startDate;
+        this.startTime = toTime(startDate);
         this.state = TransactionState.DRAFT;
     }
 
+    /**
+     * Used by gson through the subclasses' own no argument constructors, so the times start out unset and only the
+     * ones in the file are filled in
+     */
+    protected Transaction() {
+        this.id = 0;
+    }
+
+    /**
+     * Copy constructor used by subclasses to implement copy(). Customer is copied since it is mutable
+     */
+    protected Transaction(Transaction other) {
+        this.id = other.id;
+        this.state = other.state;
+        this.customer = other.customer == null ? null : new Customer(other.customer);
+        this.vehicle = other.vehicle;
+        this.price = other.price;
+        this.startTime = other.startTime;
+        this.activationTime = other.activationTime;
+        this.type = other.type;
+    }
+
+    /**
+     * Rebuild a stored transaction as it was saved, used by subclasses to restore one without working out its price
+     * again, which also works when the vehicle is missing
+     */
+    protected Transaction(int id, Customer customer, Vehicle vehicle, long startTime, TransactionState state,
+                          long activationTime, float price) {
+        this.id = id;
+        this.customer = customer;
+        this.vehicle = vehicle;
+        this.startTime = startTime;
+        this.state = state;
+        this.activationTime = activationTime;
+        this.price = price;
+    }
+
     /**
      * Switch the transction's state from DRAFT to ACTIVE if it is valid to do so
      */
     public void activate() {
-        Date today = new Date();
+        activate(Clock.systemUTC());
+    }
+
+    /**
+     * Switch the transction's state from DRAFT to ACTIVE if it is valid to do so, as of the clock's current time
+     */
+    public void activate(Clock clock) {
+        long now = clock.millis();
         if (
                 state != TransactionState.ACTIVE // State must not already be active
-                && today.before(startDate) // Start date must be in the future
+                && now < startTime // Start date must be in the future
         ) {
             state = TransactionState.ACTIVE;
-            activationDate = today;
+            activationTime = now;
         } else {
             throw new InvalidTransactionException("Transaction with ID " + id + "cannot be activated; must be before start date and in draft state");
         }
@@ -70,16 +129,44 @@ public abstract class Transaction {
         return price;
     }
 
+    /**
+     * Start date as a new Date, or null if there isn't one. Use getStartTime() where a number will do
+     */
     public Date getStartDate() {
-        return startDate;
+        return toDate(startTime);
     }
 
     public void setStartDate(Date startDate) {
-        this.startDate = startDate;
+        this.startTime = toTime(startDate);
+    }
+
+    /**
+     * Start date in epoch milliseconds, or NO_TIME if there isn't one
+     */
+    public long getStartTime() {
+        return startTime;
     }
 
+    /**
+     * Activation date as a new Date, or null if it hasn't been activated. Use getActivationTime() where a number will
+     * do
+     */
     public Date getActivationDate() {
-        return activationDate;
+        return toDate(activationTime);
+    }
+
+    /**
+     * Activation date in epoch milliseconds, or NO_TIME if it hasn't been activated
+     */
+    public long getActivationTime() {
+        return activationTime;
+    }
+
+    /**
+     * Date the transaction's period runs out, or null if it never does (buys)
+     */
+    public Date getEndDate() {
+        return null;
     }
 
     public String getType() {
@@ -92,6 +179,11 @@ public abstract class Transaction {
 
     protected abstract void calculatePrice();
 
+    /**
+     * Create an independent copy of this transaction, so the manager's in-memory copy can't be changed from outside
+     */
+    public abstract Transaction copy();
+
     // This is a little strange, but gson doesn't deserialize the subclass differentiation field so we need this to load more than once
     protected abstract void labelType();
 
@@ -102,9 +194,17 @@ public abstract class Transaction {
                 .append("Customer: ").append(customer.getFirstName()).append(" ").append(customer.getLastName()).append("\n")
                 .append("Vehicle: ").append(vehicle.getYear()).append(" ").append(vehicle.getMake()).append(" ").append(vehicle.getModel()).append("\n")
                 .append("Price: $").append(String.format(java.util.Locale.US, "%.2f", price)).append("\n")
-                .append("Start Date: ").append(startDate).append("\n")
-                .append("Activation Date: ").append(activationDate);
+                .append("Start Date: ").append(getStartDate()).append("\n")
+                .append("Activation Date: ").append(getActivationDate());
         return builder.toString();
     }
 
+    static long toTime(Date date) {
+        return date == null ? NO_TIME : date.getTime();
+    }
+
+    static Date toDate(long time) {
+        return time == NO_TIME ? null : new Date(time);
+    }
+
 }
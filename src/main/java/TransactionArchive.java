@@ -0,0 +1,155 @@
+import com.google.gson.Gson;
+import exceptions.InvalidOperationException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for transactions that are finished with, kept out of the main transactions file so everyday operations
+ * don't have to load, filter and rewrite them.
+ *
+ * The archive is a directory of gzip compressed segments, each holding one transaction per line as json. Every archive
+ * run writes a new segment and existing segments are never changed, so reading one needs no locking. A segment is
+ * written under a temporary name and renamed into place once complete, which means readers only ever see whole
+ * segments.
+ */
+public class TransactionArchive {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".ndjson.gz";
+    private static final String MAX_ID_FILE = "max-id";
+
+    private final File directory;
+    private final Gson gson;
+
+    TransactionArchive(File directory, Gson gson) {
+        this.directory = directory;
+        this.gson = gson;
+    }
+
+    /**
+     * Directory the segments are kept in
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Segment files in the order they were written
+     */
+    public List<File> getSegments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        // Segment numbers are zero padded, so name order is the order they were written
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Write the transactions out as a new segment, making sure it is on disk before returning so the caller can safely
+     * drop them from the main file. Should be called while holding the transactions file's exclusive lock, which is
+     * what keeps two processes from picking the same segment number
+     */
+    File append(Collection<Transaction> transactions) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create archive directory " + directory);
+        }
+
+        List<File> segments = getSegments();
+        int next = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+        File segment = new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, next, SEGMENT_SUFFIX));
+        File temp = new File(directory, segment.getName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+            for (Transaction transaction : transactions) {
+                transaction.labelType();
+                writer.write(gson.toJson(transaction));
+                writer.write('\n');
+            }
+            writer.flush();
+            gzip.finish();
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        // Remember the highest ID ever archived, so IDs aren't handed out again once they leave the main file
+        int maxId = getMaxId();
+        for (Transaction transaction : transactions) {
+            maxId = Math.max(maxId, transaction.getId());
+        }
+        Files.write(new File(directory, MAX_ID_FILE).toPath(),
+                Integer.toString(maxId).getBytes(StandardCharsets.UTF_8));
+        return segment;
+    }
+
+    /**
+     * Highest transaction ID that has been archived, or 0 if nothing has. Cheap, it doesn't read any segments
+     */
+    public int getMaxId() {
+        File file = new File(directory, MAX_ID_FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new InvalidOperationException("Unable to read archive max ID: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hand every archived transaction to the consumer, oldest segment first. Reads one line at a time, so the archive
+     * never has to fit in memory
+     */
+    public void forEach(Consumer<Transaction> consumer) {
+        for (File segment : getSegments()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(segment)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        consumer.accept(gson.fromJson(line, Transaction.class));
+                    }
+                }
+            } catch (IOException e) {
+                throw new InvalidOperationException("Unable to read archive segment " + segment.getName() + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Every archived transaction, oldest segment first
+     */
+    public List<Transaction> readAll() {
+        List<Transaction> transactions = new ArrayList<>();
+        forEach(transactions::add);
+        return transactions;
+    }
+
+    private static int segmentNumber(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
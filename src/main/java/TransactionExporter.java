@@ -0,0 +1,224 @@
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes transactions out one at a time as flat CSV or NDJSON rows, for bulk exports that shouldn't have to build a
+ * list of them first. Values go straight from the transaction into a buffered writer, so the only garbage per row is
+ * the odd number formatted as text.
+ *
+ * Only flushes, never closes, the stream it was given.
+ */
+class TransactionExporter {
+
+    // Names of the columns in the order they are written, also used as the keys for NDJSON
+    static final String[] COLUMNS = {
+            "id", "type", "state", "price", "startTime", "activationTime", "days", "months", "warrantyPrice",
+            "firstName", "lastName", "email", "phone", "street", "city", "addressState", "zip", "country",
+            "vin", "make", "model", "year", "vehicleType", "vehiclePrice"
+    };
+
+    private final ExportFormat format;
+    private final Writer writer;
+    private final JsonWriter json;
+    private int column;
+    private int count;
+
+    TransactionExporter(OutputStream out, ExportFormat format) {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == ExportFormat.NDJSON) {
+            // Lenient so one writer can put out a value per line, instead of stopping after the first
+            json = new JsonWriter(writer);
+            json.setLenient(true);
+        } else {
+            json = null;
+        }
+    }
+
+    /**
+     * Write the header row, if the format has one
+     */
+    void writeHeader() throws IOException {
+        if (format == ExportFormat.CSV) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(COLUMNS[i]);
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Write one transaction as a row
+     */
+    void write(Transaction transaction) throws IOException {
+        startRow();
+        number(transaction.getId());
+        string(typeOf(transaction));
+        string(transaction.getState() == null ? null : transaction.getState().name());
+        number(transaction.getPrice());
+        time(transaction.getStartTime());
+        time(transaction.getActivationTime());
+        if (transaction instanceof RentTransaction) {
+            number(((RentTransaction) transaction).getDays());
+        } else {
+            skip();
+        }
+        if (transaction instanceof LeaseTransaction) {
+            number(((LeaseTransaction) transaction).getMonths());
+        } else {
+            skip();
+        }
+        if (transaction instanceof BuyTransaction) {
+            number(((BuyTransaction) transaction).getWarrantyPrice());
+        } else {
+            skip();
+        }
+
+        Customer customer = transaction.getCustomer();
+        Address address = customer == null ? null : customer.getMailingAddress();
+        string(customer == null ? null : customer.getFirstName());
+        string(customer == null ? null : customer.getLastName());
+        string(customer == null ? null : customer.getEmail());
+        string(customer == null ? null : customer.getPhoneNumber());
+        string(address == null ? null : address.getStreet());
+        string(address == null ? null : address.getCity());
+        string(address == null ? null : address.getState());
+        string(address == null ? null : address.getZip());
+        string(address == null ? null : address.getCountry());
+
+        Vehicle vehicle = transaction.getVehicle();
+        string(vehicle == null ? null : vehicle.getVin());
+        string(vehicle == null ? null : vehicle.getMake());
+        string(vehicle == null ? null : vehicle.getModel());
+        if (vehicle == null) {
+            skip();
+            skip();
+            skip();
+        } else {
+            number(vehicle.getYear());
+            string(vehicle.getType() == null ? null : vehicle.getType().name());
+            number(vehicle.getPrice());
+        }
+        endRow();
+        count++;
+    }
+
+    /**
+     * Number of transactions written so far
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Push everything buffered so far through to the stream
+     */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Transactions loaded from file don't always have their type label, so go by the class
+     */
+    private static String typeOf(Transaction transaction) {
+        if (transaction instanceof RentTransaction) {
+            return "rent";
+        } else if (transaction instanceof LeaseTransaction) {
+            return "lease";
+        } else if (transaction instanceof BuyTransaction) {
+            return "buy";
+        }
+        return transaction.getType();
+    }
+
+    private void startRow() throws IOException {
+        column = 0;
+        if (json != null) {
+            json.beginObject();
+        }
+    }
+
+    private void endRow() throws IOException {
+        if (json != null) {
+            // JsonWriter has no buffer of its own, so the newline can go straight to the writer after it
+            json.endObject();
+        }
+        writer.write('\n');
+    }
+
+    private void skip() throws IOException {
+        if (json == null && column > 0) {
+            writer.write(',');
+        }
+        column++;
+    }
+
+    private void time(long time) throws IOException {
+        if (time == Transaction.NO_TIME) {
+            skip();
+        } else {
+            number(time);
+        }
+    }
+
+    private void number(long value) throws IOException {
+        if (json != null) {
+            json.name(COLUMNS[column++]).value(value);
+            return;
+        }
+        skip();
+        writer.write(Long.toString(value));
+    }
+
+    private void number(float value) throws IOException {
+        if (json != null) {
+            // Through Float so it comes out as the float's own shortest form, not the double it widens to
+            json.name(COLUMNS[column++]).value(Float.valueOf(value));
+            return;
+        }
+        skip();
+        writer.write(Float.toString(value));
+    }
+
+    private void string(String value) throws IOException {
+        if (value == null) {
+            skip();
+        } else if (json != null) {
+            json.name(COLUMNS[column++]).value(value);
+        } else {
+            skip();
+            writeCsvValue(value);
+        }
+    }
+
+    private void writeCsvValue(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,411 @@
+import exceptions.InvalidTransactionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A condition on transactions that can be combined with others using and, or and not, for queries that need more than
+ * TransactionQuery's exact matches:
+ *
+ *   manager.getTransactions()
+ *       .where(type("lease").or(type("rent"))
+ *           .and(state(ACTIVE))
+ *           .and(priceBetween(100, 500))
+ *           .and(vehicleType(VehicleType.SUV)))
+ *       .orderBy(TransactionOrder.byStartDate())
+ *       .asList();
+ *
+ * Filters are immutable and compare equal when built the same way, so they work as query cache keys. Building one
+ * plans how it will be run: nested ands and ors are flattened, and the conditions in each are ordered so the cheap
+ * ones are checked first and the rest are skipped as soon as the answer is known. The whole filter is then checked in
+ * one pass per transaction. Conditions on fields that have an index also say which transactions they could match, so
+ * the query only has to look at those.
+ */
+public final class TransactionFilter implements Predicate<Transaction> {
+
+    private enum Kind {LEAF, AND, OR, NOT}
+
+    // How expensive a condition is to check, lower ones go first
+    private static final int FIELD_COST = 0;
+    private static final int CUSTOMER_COST = 1;
+    private static final int CUSTOM_COST = 2;
+
+    private static final Map<String, Class<? extends Transaction>> TYPES = Map.of(
+            "rent", RentTransaction.class, "lease", LeaseTransaction.class, "buy", BuyTransaction.class);
+
+    private final Kind kind;
+    private final String name;
+    private final List<Object> args;
+    private final Predicate<Transaction> condition;
+    private final Function<Indexes, Collection<Transaction>> lookup;
+    private final TransactionFilter[] children;
+    private final int cost;
+
+    private TransactionFilter(String name, int cost, Predicate<Transaction> condition,
+                              Function<Indexes, Collection<Transaction>> lookup, Object... args) {
+        this.kind = Kind.LEAF;
+        this.name = name;
+        this.args = Arrays.asList(args);
+        this.condition = condition;
+        this.lookup = lookup;
+        this.children = null;
+        this.cost = cost;
+    }
+
+    private TransactionFilter(Kind kind, TransactionFilter[] children) {
+        this.kind = kind;
+        this.name = null;
+        this.args = Collections.emptyList();
+        this.lookup = null;
+        this.children = children;
+
+        int total = 0;
+        for (TransactionFilter child : children) {
+            total = Math.max(total, child.cost);
+        }
+        this.cost = total;
+
+        // Put together the check once here, so testing a transaction is just running it
+        Predicate<Transaction>[] checks = compile(children);
+        if (kind == Kind.NOT) {
+            this.condition = checks[0].negate();
+        } else if (kind == Kind.AND) {
+            this.condition = t -> {
+                for (Predicate<Transaction> check : checks) {
+                    if (!check.test(t)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        } else {
+            this.condition = t -> {
+                for (Predicate<Transaction> check : checks) {
+                    if (check.test(t)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<Transaction>[] compile(TransactionFilter[] children) {
+        Predicate<Transaction>[] checks = (Predicate<Transaction>[]) new Predicate<?>[children.length];
+        for (int i = 0; i < children.length; i++) {
+            checks[i] = children[i].condition;
+        }
+        return checks;
+    }
+
+    /**
+     * Transaction with this ID
+     */
+    public static TransactionFilter id(int id) {
+        return new TransactionFilter("id", FIELD_COST, t -> t.getId() == id, indexes -> {
+            Transaction match = indexes.byId(id);
+            return match == null ? Collections.emptyList() : Collections.singletonList(match);
+        }, id);
+    }
+
+    public static TransactionFilter state(TransactionState state) {
+        return new TransactionFilter("state", FIELD_COST, t -> t.getState() == state, null, state);
+    }
+
+    /**
+     * Transactions of a type, "rent", "lease" or "buy"
+     */
+    public static TransactionFilter type(String type) {
+        Class<? extends Transaction> typeClass = TYPES.get(type.toLowerCase(Locale.ROOT));
+        if (typeClass == null) {
+            throw new InvalidTransactionException("Unknown transaction type " + type + ", expected rent, lease or buy");
+        }
+        return new TransactionFilter("type", FIELD_COST, typeClass::isInstance, null, typeClass.getName());
+    }
+
+    /**
+     * Transactions for a vehicle of this type
+     */
+    public static TransactionFilter vehicleType(VehicleType type) {
+        return new TransactionFilter("vehicleType", FIELD_COST,
+                t -> t.getVehicle() != null && t.getVehicle().getType() == type, null, type);
+    }
+
+    /**
+     * Price from min to max, both included
+     */
+    public static TransactionFilter priceBetween(float min, float max) {
+        return new TransactionFilter("price", FIELD_COST, t -> t.getPrice() >= min && t.getPrice() <= max, null,
+                min, max);
+    }
+
+    public static TransactionFilter priceAtLeast(float min) {
+        return priceBetween(min, Float.POSITIVE_INFINITY);
+    }
+
+    public static TransactionFilter priceAtMost(float max) {
+        return priceBetween(Float.NEGATIVE_INFINITY, max);
+    }
+
+    /**
+     * Start date from the first date, included, up to the second, not included. Either can be null to leave that end
+     * open
+     */
+    public static TransactionFilter startsBetween(Date from, Date to) {
+        long min = from == null ? Long.MIN_VALUE : from.getTime();
+        long max = to == null ? Long.MAX_VALUE : to.getTime();
+        return new TransactionFilter("start", FIELD_COST, t -> t.getStartTime() != Transaction.NO_TIME
+                && t.getStartTime() >= min && t.getStartTime() < max, null, min, max);
+    }
+
+    /**
+     * Activation date from the first date, included, up to the second, not included. Either can be null to leave that
+     * end open. Drafts never match
+     */
+    public static TransactionFilter activatedBetween(Date from, Date to) {
+        long min = from == null ? Long.MIN_VALUE : from.getTime();
+        long max = to == null ? Long.MAX_VALUE : to.getTime();
+        return new TransactionFilter("activation", FIELD_COST, t -> t.getActivationTime() != Transaction.NO_TIME
+                && t.getActivationTime() >= min && t.getActivationTime() < max, null, min, max);
+    }
+
+    public static TransactionFilter email(String email) {
+        return new TransactionFilter("email", CUSTOMER_COST,
+                t -> t.getCustomer() != null && email.equals(t.getCustomer().getEmail()), null, email);
+    }
+
+    /**
+     * Customers whose last name starts with the prefix, ignoring case
+     */
+    public static TransactionFilter lastNameStartsWith(String prefix) {
+        return new TransactionFilter("lastName", CUSTOMER_COST,
+                t -> t.getCustomer() != null && CustomerIndex.lastNameStartsWith(t.getCustomer(), prefix),
+                indexes -> indexes.byLastNamePrefix(prefix), prefix);
+    }
+
+    /**
+     * Customers with an email address at the domain or any of its subdomains, ignoring case
+     */
+    public static TransactionFilter emailAtDomain(String domain) {
+        return new TransactionFilter("emailDomain", CUSTOMER_COST,
+                t -> t.getCustomer() != null && CustomerIndex.emailAtDomain(t.getCustomer(), domain),
+                indexes -> indexes.byEmailDomain(domain), domain);
+    }
+
+    /**
+     * Customers whose phone number starts with the given digits, ignoring punctuation
+     */
+    public static TransactionFilter phoneStartsWith(String prefix) {
+        return new TransactionFilter("phone", CUSTOMER_COST,
+                t -> t.getCustomer() != null && CustomerIndex.phoneStartsWith(t.getCustomer(), prefix),
+                indexes -> indexes.byPhonePrefix(prefix), prefix);
+    }
+
+    /**
+     * Customers whose mailing address has this value for the field
+     */
+    public static TransactionFilter address(AddressField field, String value) {
+        return new TransactionFilter("address", CUSTOMER_COST,
+                t -> t.getCustomer() != null && value.equals(field.of(t.getCustomer().getMailingAddress())),
+                indexes -> indexes.byRegion(field, value), field, value);
+    }
+
+    /**
+     * Customers whose mailing address is in this city
+     */
+    public static TransactionFilter city(String city) {
+        return new TransactionFilter("city", CUSTOMER_COST, t -> t.getCustomer() != null
+                && t.getCustomer().getMailingAddress() != null
+                && city.equals(t.getCustomer().getMailingAddress().getCity()), null, city);
+    }
+
+    /**
+     * Any other condition. It is checked after the built in ones, can't use an index, and only equals a filter built
+     * from the same predicate object. Two lambdas written the same way are still different objects, so queries using
+     * this are never cached
+     */
+    public static TransactionFilter where(Predicate<Transaction> predicate) {
+        Objects.requireNonNull(predicate);
+        return new TransactionFilter("where", CUSTOM_COST, predicate, null, predicate);
+    }
+
+    /**
+     * Transactions matching every one of the filters
+     */
+    public static TransactionFilter allOf(TransactionFilter... filters) {
+        return combine(Kind.AND, filters);
+    }
+
+    /**
+     * Transactions matching at least one of the filters
+     */
+    public static TransactionFilter anyOf(TransactionFilter... filters) {
+        return combine(Kind.OR, filters);
+    }
+
+    /**
+     * Transactions not matching the filter
+     */
+    public static TransactionFilter not(TransactionFilter filter) {
+        if (filter.kind == Kind.NOT) {
+            return filter.children[0];
+        }
+        return new TransactionFilter(Kind.NOT, new TransactionFilter[]{filter});
+    }
+
+    public TransactionFilter and(TransactionFilter other) {
+        return allOf(this, other);
+    }
+
+    public TransactionFilter or(TransactionFilter other) {
+        return anyOf(this, other);
+    }
+
+    @Override
+    public TransactionFilter negate() {
+        return not(this);
+    }
+
+    @Override
+    public boolean test(Transaction transaction) {
+        return condition.test(transaction);
+    }
+
+    private static TransactionFilter combine(Kind kind, TransactionFilter[] filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("Need at least one filter to combine");
+        }
+
+        // An and inside an and is the same as its conditions being in the outer one, likewise for or
+        List<TransactionFilter> flat = new ArrayList<>();
+        for (TransactionFilter filter : filters) {
+            if (filter.kind == kind) {
+                flat.addAll(Arrays.asList(filter.children));
+            } else {
+                flat.add(Objects.requireNonNull(filter));
+            }
+        }
+        if (flat.size() == 1) {
+            return flat.get(0);
+        }
+
+        // Stable, so conditions of the same cost keep the order they were given in
+        flat.sort(Comparator.comparingInt(filter -> filter.cost));
+        return new TransactionFilter(kind, flat.toArray(new TransactionFilter[0]));
+    }
+
+    /**
+     * Every transaction that could match according to the indexes, or null if they can't narrow it down. May include
+     * transactions that don't match, but never leaves one out
+     */
+    Collection<Transaction> candidates(Indexes indexes) {
+        switch (kind) {
+            case LEAF:
+                return lookup == null ? null : lookup.apply(indexes);
+            case AND: {
+                // Whatever passes them all passes each one, so the smallest set any of them gives will do
+                Collection<Transaction> smallest = null;
+                for (TransactionFilter child : children) {
+                    Collection<Transaction> candidates = child.candidates(indexes);
+                    if (candidates != null && (smallest == null || candidates.size() < smallest.size())) {
+                        smallest = candidates;
+                    }
+                }
+                return smallest;
+            }
+            case OR: {
+                // Only narrows things down if every branch can, one that can't might match anything
+                Set<Transaction> union = null;
+                for (TransactionFilter child : children) {
+                    Collection<Transaction> candidates = child.candidates(indexes);
+                    if (candidates == null) {
+                        return null;
+                    }
+                    if (union == null) {
+                        union = new LinkedHashSet<>();
+                    }
+                    union.addAll(candidates);
+                }
+                return union;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Whether an equal filter can be built again later, so results for it are worth caching. Not so for anything using
+     * where, which only equals itself
+     */
+    boolean isCacheable() {
+        if (kind == Kind.LEAF) {
+            return !name.equals("where");
+        }
+        for (TransactionFilter child : children) {
+            if (!child.isCacheable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TransactionFilter)) {
+            return false;
+        }
+        TransactionFilter other = (TransactionFilter) o;
+        return kind == other.kind && Objects.equals(name, other.name) && args.equals(other.args)
+                && Arrays.equals(children, other.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, name, args, Arrays.hashCode(children));
+    }
+
+    @Override
+    public String toString() {
+        if (kind == Kind.LEAF) {
+            return name + args;
+        } else if (kind == Kind.NOT) {
+            return "not(" + children[0] + ")";
+        }
+        StringBuilder builder = new StringBuilder(kind == Kind.AND ? "and(" : "or(");
+        for (int i = 0; i < children.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(children[i]);
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * The indexes a query can offer to narrow down which transactions a filter has to look at
+     */
+    interface Indexes {
+        Transaction byId(int id);
+
+        Collection<Transaction> byRegion(AddressField field, String value);
+
+        Collection<Transaction> byLastNamePrefix(String prefix);
+
+        Collection<Transaction> byEmailDomain(String domain);
+
+        Collection<Transaction> byPhonePrefix(String prefix);
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Comparator;
+
+/**
+ * Orders for sorting query results with TransactionQuery.orderBy. They are ordinary comparators, so they can be
+ * reversed or chained with thenComparing:
+ *
+ *   query.orderBy(TransactionOrder.byPrice().reversed().thenComparing(TransactionOrder.byId()))
+ */
+public final class TransactionOrder {
+
+    private TransactionOrder() {
+    }
+
+    public static Comparator<Transaction> byId() {
+        return Comparator.comparingInt(Transaction::getId);
+    }
+
+    /**
+     * Earliest start first, transactions without a start date before all the others
+     */
+    public static Comparator<Transaction> byStartDate() {
+        return Comparator.comparingLong(Transaction::getStartTime);
+    }
+
+    /**
+     * Earliest activation first, drafts before all the others
+     */
+    public static Comparator<Transaction> byActivationDate() {
+        return Comparator.comparingLong(Transaction::getActivationTime);
+    }
+
+    /**
+     * Cheapest first
+     */
+    public static Comparator<Transaction> byPrice() {
+        return (a, b) -> Float.compare(a.getPrice(), b.getPrice());
+    }
+
+    /**
+     * Order for a sort parameter as clients give it: "id", "startDate", "activationDate" or "price", with a leading
+     * "-" for descending
+     *
+     * @return the order, or null if the field isn't one of those
+     */
+    static Comparator<Transaction> parse(String sort) {
+        boolean descending = sort.startsWith("-");
+        String field = descending ? sort.substring(1) : sort;
+        Comparator<Transaction> order;
+        switch (field) {
+            case "id":
+                order = byId();
+                break;
+            case "startDate":
+                order = byStartDate();
+                break;
+            case "activationDate":
+                order = byActivationDate();
+                break;
+            case "price":
+                order = byPrice();
+                break;
+            default:
+                return null;
+        }
+        return descending ? order.reversed() : order;
+    }
+}
@@ -0,0 +1,265 @@
+import com.google.gson.Gson;
+import exceptions.InvalidOperationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-memory copy of the transactions file, shared by the manager and its queries.
+ *
+ * The list is only re-parsed when the file has actually been written since the last load (by this process or another
+ * one), so repeated queries no longer pay for a full parse each time. Every read and write goes through the file's OS
+ * lock, which keeps several processes working against the same transactions.json consistent with each other.
+ */
+class TransactionStore {
+
+    private final Gson gson;
+    private final JsonArrayLoader loader;
+    private final LockedFile file;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private ArrayList<Transaction> transactions = new ArrayList<>();
+
+    // The same transactions by ID, so lookups and duplicate checks don't have to scan the list
+    private HashMap<Integer, Transaction> byId = new HashMap<>();
+
+    TransactionStore(File transactionsFile, Gson gson) {
+        this(transactionsFile, gson, new JsonArrayLoader(gson, 1));
+    }
+
+    /**
+     * Create a store that decodes the transactions file with the given loader, which may spread the work over threads
+     */
+    TransactionStore(File transactionsFile, Gson gson, JsonArrayLoader loader) {
+        this.file = new LockedFile(transactionsFile);
+        this.gson = gson;
+        this.loader = loader;
+    }
+
+    /**
+     * Register a listener to be told about every change to the in-memory transactions, whether made through update or
+     * picked up by reloading the file
+     */
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Run a read-only function over the current transactions, reloading them first if the file has changed. The
+     * collection handed to the reader must not be modified or held on to after it returns
+     */
+    <T> T read(Function<Collection<Transaction>, T> reader) {
+        try {
+            file.withSharedLock(() -> {
+                reloadIfChanged();
+                return null;
+            });
+        } catch (IOException e) {
+            throw new InvalidOperationException("Unable to load transactions: " + e.getMessage());
+        }
+
+        lock.readLock().lock();
+        try {
+            return reader.apply(Collections.unmodifiableList(transactions));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a change to the transactions list and persist the result. The whole cycle holds the exclusive file lock,
+     * and the list is brought up to date with the file first so changes from other processes are never overwritten
+     */
+    void update(Consumer<Editor> mutation) {
+        update(mutation, () -> { });
+    }
+
+    /**
+     * Apply and persist a change as above, then run onCommit while still holding the locks, so anything it publishes
+     * about the change is ordered the same way the changes were written.
+     *
+     * The mutation works on a copy of the list, which only replaces the stored one, and is only told to listeners,
+     * once the file has been written. A mutation that changes nothing leaves the file alone, so other processes have
+     * nothing to reload, and one that fails, or whose write fails, leaves everything as it was
+     */
+    void update(Consumer<Editor> mutation, Runnable onCommit) {
+        try {
+            // Always take the file lock before the in-memory lock, the same order read uses
+            file.withExclusiveLock(() -> {
+                lock.writeLock().lock();
+                try {
+                    reloadIfChanged();
+                    Editor editor = new Editor();
+                    mutation.accept(editor);
+                    if (editor.changed()) {
+                        persist(editor.transactions);
+                        transactions = editor.transactions;
+                        byId = editor.byId;
+                        editor.notifications.forEach(Runnable::run);
+                    }
+                    onCommit.run();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            throw new InvalidOperationException("Unable to load transactions: " + e.getMessage());
+        }
+    }
+
+    private void reloadIfChanged() throws IOException {
+        file.reloadIfChanged(reader -> {
+            // An empty file comes back as an empty list
+            ArrayList<Transaction> loaded = loader.load(reader, Transaction.class, file.getFile());
+
+            HashMap<Integer, Transaction> loadedById = new HashMap<>(loaded.size() * 2);
+            loaded.forEach(t -> loadedById.put(t.getId(), t));
+
+            lock.writeLock().lock();
+            try {
+                transactions = loaded;
+                byId = loadedById;
+                Collection<Transaction> view = Collections.unmodifiableList(transactions);
+                listeners.forEach(l -> l.reloaded(view));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * The stored transaction with this ID, or null if there isn't one. Must be called from inside read or update
+     */
+    Transaction get(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Replace the contents of the transactions file with the given list
+     */
+    private void persist(List<Transaction> updated) {
+        try {
+            file.write(writer -> {
+                // We need to re-label each transaction with its type because deserialization drops the differentiator field
+                updated.forEach(Transaction::labelType);
+
+                ChecksummedRecords.write(writer, updated, gson);
+            });
+        } catch (IOException e) {
+            throw new InvalidOperationException("Unable to write transactions out to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handed to update mutations to make their changes. The list and map are copied the first time something actually
+     * changes, and listeners are told about each change once it has been written
+     */
+    final class Editor {
+
+        private ArrayList<Transaction> transactions = TransactionStore.this.transactions;
+        private HashMap<Integer, Transaction> byId = TransactionStore.this.byId;
+        private final List<Runnable> notifications = new ArrayList<>();
+
+        private Editor() {
+        }
+
+        /**
+         * All current transactions, in file order, including changes made through this editor so far
+         */
+        Collection<Transaction> all() {
+            return Collections.unmodifiableList(transactions);
+        }
+
+        /**
+         * The transaction with this ID, or null if there isn't one
+         */
+        Transaction get(int id) {
+            return byId.get(id);
+        }
+
+        void add(Transaction transaction) {
+            copyOnWrite();
+            transactions.add(transaction);
+            byId.put(transaction.getId(), transaction);
+            notifications.add(() -> listeners.forEach(l -> l.added(transaction)));
+        }
+
+        void remove(Transaction transaction) {
+            if (byId.get(transaction.getId()) != transaction) {
+                return;
+            }
+            copyOnWrite();
+            transactions.remove(transaction);
+            byId.remove(transaction.getId());
+            notifications.add(() -> listeners.forEach(l -> l.removed(transaction)));
+        }
+
+        /**
+         * Remove every transaction the filter accepts in a single pass over the list
+         */
+        void removeIf(Predicate<Transaction> filter) {
+            ArrayList<Transaction> removed = new ArrayList<>();
+            transactions.forEach(t -> {
+                if (filter.test(t)) {
+                    removed.add(t);
+                }
+            });
+            if (removed.isEmpty()) {
+                return;
+            }
+
+            copyOnWrite();
+            Set<Transaction> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+            toRemove.addAll(removed);
+            transactions.removeIf(toRemove::contains);
+            removed.forEach(t -> byId.remove(t.getId(), t));
+            notifications.add(() -> removed.forEach(t -> listeners.forEach(l -> l.removed(t))));
+        }
+
+        private boolean changed() {
+            return transactions != TransactionStore.this.transactions;
+        }
+
+        private void copyOnWrite() {
+            if (!changed()) {
+                transactions = new ArrayList<>(transactions);
+                byId = new HashMap<>(byId);
+            }
+        }
+    }
+
+    /**
+     * Told about changes to the in-memory transactions while the store's write lock is held, so implementations
+     * should be quick and must not call back into the store. The transactions passed in are the stored instances and
+     * must not be modified
+     */
+    interface Listener {
+
+        void added(Transaction transaction);
+
+        void removed(Transaction transaction);
+
+        /**
+         * The whole list was replaced after the file was written by someone else
+         */
+        void reloaded(Collection<Transaction> transactions);
+    }
+}
@@ -73,6 +73,25 @@ public class Vehicle {
         return type;
     }
 
+    /**
+     * Vehicles are identified by VIN, so two instances loaded from file separately still compare as the same vehicle
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Vehicle)) {
+            return false;
+        }
+        return vin.equals(((Vehicle) o).vin);
+    }
+
+    @Override
+    public int hashCode() {
+        return vin.hashCode();
+    }
+
     /**
      * Override of toString to give human readable description of the vehicle
      * @return String representation of attributes
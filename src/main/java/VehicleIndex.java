@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Indexes over one snapshot of the vehicle catalog for VehicleQuery. Vehicles are numbered by their position in the
+ * list, and type, make, model and year each get a bitmap per value with a bit set for every vehicle that has it. Those
+ * fields have few distinct values, so the bitmaps are small, and matching several values or several fields is a
+ * bitwise OR or AND over them rather than a pass over the vehicles. Price has too many values for that, so the
+ * positions are kept sorted by price instead and a range is found by binary search.
+ *
+ * The manager replaces its vehicle list whenever it changes rather than changing it in place, and only ever hands out
+ * copies of it, so an index never goes stale: it is built for one list and thrown away when the manager moves on to
+ * another.
+ */
+class VehicleIndex {
+
+    private final List<Vehicle> vehicles;
+    private final Map<VehicleType, BitSet> byType = new EnumMap<>(VehicleType.class);
+    private final Map<String, BitSet> byMake = new HashMap<>();
+    private final Map<String, BitSet> byModel = new HashMap<>();
+    private final NavigableMap<Integer, BitSet> byYear = new TreeMap<>();
+    private final int[] byPrice;
+    private final float[] sortedPrices;
+
+    VehicleIndex(List<Vehicle> vehicles) {
+        this.vehicles = vehicles;
+        int size = vehicles.size();
+        Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            Vehicle vehicle = vehicles.get(i);
+            positions[i] = i;
+            if (vehicle.getType() != null) {
+                byType.computeIfAbsent(vehicle.getType(), type -> new BitSet(size)).set(i);
+            }
+            byMake.computeIfAbsent(key(vehicle.getMake()), make -> new BitSet(size)).set(i);
+            byModel.computeIfAbsent(key(vehicle.getModel()), model -> new BitSet(size)).set(i);
+            byYear.computeIfAbsent(vehicle.getYear(), year -> new BitSet(size)).set(i);
+        }
+
+        // Stable, so vehicles with the same price stay in catalog order
+        Arrays.sort(positions, (a, b) -> Float.compare(vehicles.get(a).getPrice(), vehicles.get(b).getPrice()));
+        byPrice = new int[size];
+        sortedPrices = new float[size];
+        for (int i = 0; i < size; i++) {
+            byPrice[i] = positions[i];
+            sortedPrices[i] = vehicles.get(positions[i]).getPrice();
+        }
+    }
+
+    /**
+     * Whether this index was built for that exact list
+     */
+    boolean isFor(List<Vehicle> vehicles) {
+        return this.vehicles == vehicles;
+    }
+
+    int size() {
+        return vehicles.size();
+    }
+
+    Vehicle get(int position) {
+        return vehicles.get(position);
+    }
+
+    /**
+     * Vehicles of any of the given types
+     */
+    BitSet types(Collection<VehicleType> types) {
+        BitSet matches = new BitSet(size());
+        for (VehicleType type : types) {
+            or(matches, byType.get(type));
+        }
+        return matches;
+    }
+
+    /**
+     * Vehicles from any of the given makes, ignoring case
+     */
+    BitSet makes(Collection<String> makes) {
+        BitSet matches = new BitSet(size());
+        for (String make : makes) {
+            or(matches, byMake.get(key(make)));
+        }
+        return matches;
+    }
+
+    /**
+     * Vehicles of any of the given models, ignoring case
+     */
+    BitSet models(Collection<String> models) {
+        BitSet matches = new BitSet(size());
+        for (String model : models) {
+            or(matches, byModel.get(key(model)));
+        }
+        return matches;
+    }
+
+    /**
+     * Vehicles from one year to another, both included
+     */
+    BitSet years(int from, int to) {
+        BitSet matches = new BitSet(size());
+        if (from <= to) {
+            byYear.subMap(from, true, to, true).values().forEach(matches::or);
+        }
+        return matches;
+    }
+
+    /**
+     * Vehicles priced from one price to another, both included
+     */
+    BitSet prices(float min, float max) {
+        BitSet matches = new BitSet(size());
+        for (int i = firstAtLeast(min); i < sortedPrices.length && sortedPrices[i] <= max; i++) {
+            matches.set(byPrice[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * Positions in order of price, cheapest first, with ties in catalog order
+     */
+    int[] positionsByPrice() {
+        return byPrice;
+    }
+
+    private int firstAtLeast(float price) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedPrices[middle] < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void or(BitSet matches, BitSet values) {
+        if (values != null) {
+            matches.or(values);
+        }
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,17 +1,32 @@
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import exceptions.InvalidOperationException;
 import exceptions.InvalidTransactionException;
 import exceptions.InvalidVehicleException;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class VehicleManager {
 
@@ -20,37 +35,120 @@ public class VehicleManager {
             .registerSubtype(RentTransaction.class, "rent")
             .registerSubtype(BuyTransaction.class, "buy")
             .registerSubtype(LeaseTransaction.class, "lease");
-    private static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(typeFactory).create();
+    static final Gson gson = new GsonBuilder().registerTypeAdapterFactory(typeFactory).create();
 
     // I would normally make these private and final, but for the purposes of the test scenarios of this assignment
     // I'm making them accessible so that it's easy to change them to a nonexistent file and demo the exception
     static File transactionsFile = new File("transactions.json");
     static File vehiclesFile = new File("vehicles.json");
 
-    private ArrayList<Vehicle> vehicles;
+    // Number of recent change events kept so feed subscribers can resume after falling behind
+    private static final int CHANGE_HISTORY_SIZE = 10000;
+
+    private final JsonArrayLoader loader;
+
+    // Pool large queries split their filtering over, the loader's when it has one so a manager uses one set of threads
+    private final ForkJoinPool queryPool;
+    private final LockedFile vehiclesData;
+    private final TransactionStore store;
+    private final TransactionArchive archive;
+    private final ChangeFeed changeFeed;
+    private final Clock clock;
+    private final DeadlineScheduler scheduler;
+    private final CustomerIndex customerIndex = new CustomerIndex();
+    private final RegionIndex regionIndex = new RegionIndex();
+    private final BookingIndex bookingIndex = new BookingIndex();
+    private final IdAllocator idAllocator = new IdAllocator();
+
+    // Whether drafts are cancelled automatically once their start date passes
+    private volatile boolean expireStaleDrafts;
+
+    // Whether the ID allocator has seen the transactions file yet
+    private volatile boolean idsSeeded;
+
+    // Optional cache of query results, null when caching is off
+    private volatile QueryCache queryCache;
+
+    private volatile ArrayList<Vehicle> vehicles = new ArrayList<Vehicle>();
+    private volatile VehicleIndex vehicleIndex;
 
     /**
      * Creates a new instance of the VehicleManger class, which serves as the interface into the system.
      */
     public VehicleManager() {
+        this(vehiclesFile, transactionsFile);
+    }
 
-        // Preemptively load vehicles into an in-memory ArrayList
-        try {
+    /**
+     * Creates a new instance of the VehicleManager class backed by the given data files instead of the defaults.
+     * Any number of managers, in this process or others, can share the same files.
+     */
+    public VehicleManager(File vehiclesFile, File transactionsFile) {
+        this(vehiclesFile, transactionsFile, Clock.systemDefaultZone());
+    }
 
-            // Parse vehicle list from json file into an arraylist
-            vehicles = gson.fromJson(new FileReader(vehiclesFile), new TypeToken<ArrayList<Vehicle>>(){}.getType());
+    /**
+     * Creates a new instance of the VehicleManager class backed by the given data files, using the given clock to
+     * decide when transaction deadlines fall due
+     */
+    public VehicleManager(File vehiclesFile, File transactionsFile, Clock clock) {
+        this(vehiclesFile, transactionsFile, clock, 1);
+    }
 
-            // If file was empty, list comes back null so we need to initialize an empty list of vehicles
-            if (vehicles == null) {
-                vehicles = new ArrayList<Vehicle>();
-            }
+    /**
+     * Creates a new instance of the VehicleManager class that loads its data files with up to loadThreads threads.
+     * With more than one thread, the vehicles and transactions files are read at the same time during construction
+     * and large files are split into chunks that are decoded in parallel, which is worth doing for big data sets on a
+     * machine with cores to spare. The same threads are used whenever a file has to be reloaded later on.
+     */
+    public VehicleManager(File vehiclesFile, File transactionsFile, Clock clock, int loadThreads) {
+        this(vehiclesFile, transactionsFile, clock, loadThreads, false);
+    }
 
-        } catch (FileNotFoundException e) {
-            // Unable to load file, throw an exception
-            throw new InvalidOperationException("Unable to load vehicles: " + e.getMessage());
-        }
+    /**
+     * Creates a new instance of the VehicleManager class as above, optionally in recovery mode. Normally a record in
+     * either data file that fails its checksum or can't be read stops the file loading at all. In recovery mode such
+     * records are skipped and moved to a ".quarantine" file next to the data file instead, and the next write leaves
+     * them out, so a manager can still come up on a damaged file
+     */
+    public VehicleManager(File vehiclesFile, File transactionsFile, Clock clock, int loadThreads,
+                          boolean recoverCorruptRecords) {
+        this.clock = clock;
+        changeFeed = new ChangeFeed(CHANGE_HISTORY_SIZE, clock);
+        loader = new JsonArrayLoader(gson, loadThreads, recoverCorruptRecords);
+        queryPool = loader.getPool() != null ? loader.getPool() : ForkJoinPool.commonPool();
+        vehiclesData = new LockedFile(vehiclesFile);
+        store = new TransactionStore(transactionsFile, gson, loader);
+        archive = new TransactionArchive(new File(transactionsFile.getPath() + ".archive"), gson);
 
+        // Issue IDs above every transaction seen, including ones that have since been archived
+        store.addListener(idAllocator);
+        idAllocator.advancePast(archive.getMaxId());
 
+        // Keep the scheduler's deadlines in step with every change to the transactions
+        scheduler = new DeadlineScheduler(clock, () -> store.read(all -> null));
+        store.addListener(scheduler);
+        scheduler.addListener(this::handleDeadline);
+
+        // Keep the customer search and region indexes in step the same way
+        store.addListener(customerIndex);
+        store.addListener(regionIndex);
+        store.addListener(bookingIndex);
+
+        if (loader.getPool() == null) {
+            // Preemptively load vehicles into an in-memory ArrayList
+            refreshVehicles();
+        } else {
+            // Load vehicles in the background while this thread loads the transactions, rather than leaving the
+            // transactions for the first query to pay for
+            CompletableFuture<Void> vehiclesLoaded = CompletableFuture.runAsync(this::refreshVehicles, loader.getPool());
+            store.read(all -> null);
+            try {
+                vehiclesLoaded.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
     }
 
     /**
@@ -61,24 +159,57 @@ public class VehicleManager {
      */
     public void addTransaction(final Transaction transaction) {
 
-        // Load transactions from file
-        ArrayList<Transaction> transactions = getTransactions().asList();
+        // Lock and load transactions from file, the store persists the list once we're done with it
+        store.update(transactions -> {
 
-        // Check that transaction's vehicle is in the available vehicles list by VIN
-        if (!vehicles.contains(transaction.getVehicle())) {
-            throw new InvalidTransactionException("Vehicle for this transaction is not in the list of available vehicles");
-        }
+            // Check that transaction's vehicle is in the available vehicles list by VIN
+            if (!currentVehicles().contains(transaction.getVehicle())) {
+                throw new InvalidTransactionException("Vehicle for this transaction is not in the list of available vehicles");
+            }
 
-        // Check that no duplicate transaction IDs exist
-        if (getTransactions().withID(transaction.getId()).asList().size() > 0) {
-            throw new InvalidTransactionException("Transaction with this ID already exists");
-        }
+            // Check that no duplicate transaction IDs exist
+            if (transactions.get(transaction.getId()) != null) {
+                throw new InvalidTransactionException("Transaction with this ID already exists");
+            }
+
+            // Append a copy of the transaction to the list so later changes by the caller don't leak in
+            transactions.add(transaction.copy());
+        }, () -> publish(ChangeEvent.Type.TRANSACTION_ADDED, transaction));
+    }
+
+    /**
+     * A transaction ID that hasn't been used, for creating a new transaction to add. IDs are handed out without
+     * locking and never reused, even after their transaction is cancelled
+     */
+    public int nextTransactionId() {
+        ensureTransactionsLoaded();
+        return idAllocator.next();
+    }
 
-        // Append transaction to the list
-        transactions.add(transaction);
+    /**
+     * Reserve count consecutive unused transaction IDs for a bulk load, returning the first of them
+     */
+    public int reserveTransactionIds(int count) {
+        ensureTransactionsLoaded();
+        return idAllocator.reserveBlock(count);
+    }
+
+    /**
+     * The allocator behind nextTransactionId, for checking where it is up to
+     */
+    public IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
 
-        // Persist transactions to file
-        persistTransactions(transactions);
+    /**
+     * Make sure the transactions file has been loaded once, so the allocator knows every ID already in it. After that
+     * the allocator keeps itself up to date, and taking an ID doesn't touch the file at all
+     */
+    private void ensureTransactionsLoaded() {
+        if (!idsSeeded) {
+            store.read(all -> null);
+            idsSeeded = true;
+        }
     }
 
     /**
@@ -86,39 +217,62 @@ public class VehicleManager {
      * transaction (DRAFT mode for the version in the system) and
      */
     public void updateTransaction(final Transaction transaction) {
+        replaceTransaction(transaction, ChangeEvent.Type.TRANSACTION_UPDATED, false);
+    }
 
-        // Load all transactions from file
-        ArrayList<Transaction> transactions = getTransactions().asList();
+    /**
+     * Update a transaction as above, but keep the stored state and activation date, which only activateTransaction
+     * should change. For passing on changes from outside, like the HTTP server does. A transaction that leaves them
+     * out gets the stored ones, and one that asks for different ones is refused
+     */
+    public void updateTransactionDetails(final Transaction transaction) {
+        replaceTransaction(transaction, ChangeEvent.Type.TRANSACTION_UPDATED, true);
+    }
 
-        // Get existing version of this transaction, or throw exception if it doesn't exist
-        Transaction oldTransaction;
-        try {
-            oldTransaction = getTransactions().withID(transaction.getId()).asList().get(0);
-        } catch (IndexOutOfBoundsException e) {
-            throw new InvalidTransactionException("No existing transaction with ID: " + transaction.getId());
-        }
+    /**
+     * Swap the stored version of a transaction for the one passed in, publishing the given type of change event
+     */
+    private void replaceTransaction(final Transaction transaction, ChangeEvent.Type eventType, boolean keepState) {
 
-        // If transaction state retrieved is ACTIVE and either the start date or vehicle have been changed, throw an
-        // exception. These can only be changed in draft mode
-        if (oldTransaction.getState() == TransactionState.ACTIVE &&
-                (!oldTransaction.getStartDate().equals(transaction.getStartDate())
-                 || !oldTransaction.getVehicle().getVin().equals(transaction.getVehicle().getVin()))) {
-            throw new InvalidTransactionException("Cannot update vehicle or start date for active transaction");
-        }
+        // Lock and load all transactions from file
+        store.update(transactions -> {
 
-        // If vehicle is not in the list of available vehicles, throw exception
-        if (!vehicles.contains(transaction.vehicle)) {
-            throw new InvalidVehicleException("Vehicle on transaction with ID " + transaction.getId() + " is not in the list of available vehicles");
-        }
+            // Get existing version of this transaction, or throw exception if it doesn't exist
+            Transaction oldTransaction = transactions.get(transaction.getId());
+            if (oldTransaction == null) {
+                throw new InvalidTransactionException("No existing transaction with ID: " + transaction.getId());
+            }
 
-        // Filter old transaction out of loaded list if this is an update
-        transactions.removeIf(t -> t.getId() == transaction.id);
+            if (keepState) {
+                if ((transaction.state != null && transaction.state != oldTransaction.getState())
+                        || (transaction.activationTime != Transaction.NO_TIME
+                            && transaction.activationTime != oldTransaction.getActivationTime())) {
+                    throw new InvalidTransactionException("State and activation date of transaction with ID "
+                            + transaction.getId() + " can only be changed by activating it");
+                }
+                transaction.state = oldTransaction.getState();
+                transaction.activationTime = oldTransaction.getActivationTime();
+            }
 
-        // Append transaction to the list
-        transactions.add(transaction);
+            // If transaction state retrieved is ACTIVE and either the start date or vehicle have been changed, throw an
+            // exception. These can only be changed in draft mode
+            if (oldTransaction.getState() == TransactionState.ACTIVE &&
+                    (oldTransaction.getStartTime() != transaction.getStartTime()
+                     || !oldTransaction.getVehicle().getVin().equals(transaction.getVehicle().getVin()))) {
+                throw new InvalidTransactionException("Cannot update vehicle or start date for active transaction");
+            }
+
+            // If vehicle is not in the list of available vehicles, throw exception
+            if (!currentVehicles().contains(transaction.vehicle)) {
+                throw new InvalidVehicleException("Vehicle on transaction with ID " + transaction.getId() + " is not in the list of available vehicles");
+            }
 
-        // Persist transactions to file
-        persistTransactions(transactions);
+            // Filter old transaction out of loaded list if this is an update
+            transactions.removeIf(t -> t.getId() == transaction.id);
+
+            // Append a copy of the transaction to the list
+            transactions.add(transaction.copy());
+        }, () -> publish(eventType, transaction));
     }
 
     /**
@@ -127,10 +281,10 @@ public class VehicleManager {
     public void activateTransaction(Transaction transaction) {
 
         // Activate the transaction. It will perform validation
-        transaction.activate();
+        transaction.activate(clock);
 
         // Update the record in the transactions file
-        updateTransaction(transaction);
+        replaceTransaction(transaction, ChangeEvent.Type.TRANSACTION_ACTIVATED, false);
     }
 
     /**
@@ -161,42 +315,233 @@ public class VehicleManager {
     public void cancelTransaction(int id) {
 
         // Get all transactions. We can't just query for the one because we need to alter the full list to remove it
-        ArrayList<Transaction> transactions = getTransactions().asList();
+        Transaction[] cancelled = new Transaction[1];
+        store.update(transactions -> {
 
-        // Find the transaction to cancel
-        Transaction transaction = transactions.stream().filter(t -> t.getId() == id).findFirst().orElse(null);
+            // Find the transaction to cancel
+            Transaction transaction = transactions.get(id);
 
-        // If null, no transaction existed with that ID
-        if (transaction == null) {
-            throw new InvalidTransactionException("No active transaction found in system with ID: " + id);
-        }
+            // If null, no transaction existed with that ID
+            if (transaction == null) {
+                throw new InvalidTransactionException("No active transaction found in system with ID: " + id);
+            }
 
-        // Transaction must be in draft, or before the start date if it is active in order to cancel
-        if (transaction.state == TransactionState.DRAFT || new Date().before(transaction.getStartDate())) {
-            transactions.remove(transaction);
-        }
+            // Transaction must be in draft, or before the start date if it is active in order to cancel
+            if (isCancellable(transaction)) {
+                transactions.remove(transaction);
+                cancelled[0] = transaction;
+            }
+        }, () -> {
+            if (cancelled[0] != null) {
+                publish(ChangeEvent.Type.TRANSACTION_CANCELLED, cancelled[0]);
+            }
+        });
+
+    }
+
+    /**
+     * Cancel every transaction matching the query that can be cancelled (DRAFT or before start date), in one pass
+     * over the transactions and one write of the file. Matches that are active and past their start date are left
+     * alone and reported as refused
+     */
+    public CancelSummary cancelWhere(TransactionQuery query) {
+        return cancelMatching(query::matching);
+    }
+
+    /**
+     * Cancel every transaction the filter accepts that can be cancelled (DRAFT or before start date), in one pass over
+     * the transactions and one write of the file. The filter is handed the stored transactions and must not modify
+     * them. Matches that are active and past their start date are left alone and reported as refused
+     */
+    public CancelSummary purgeWhere(Predicate<Transaction> filter) {
+        return cancelMatching(all -> {
+            ArrayList<Transaction> matches = new ArrayList<Transaction>();
+            all.forEach(t -> {
+                if (filter.test(t)) {
+                    matches.add(t);
+                }
+            });
+            return matches;
+        });
+    }
+
+    private CancelSummary cancelMatching(Function<Collection<Transaction>, List<Transaction>> finder) {
+        List<Transaction> cancelled = new ArrayList<Transaction>();
+        List<Transaction> refused = new ArrayList<Transaction>();
+        store.update(transactions -> {
+            Set<Transaction> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Transaction transaction : finder.apply(transactions.all())) {
+                if (isCancellable(transaction)) {
+                    toRemove.add(transaction);
+                    cancelled.add(transaction.copy());
+                } else {
+                    refused.add(transaction.copy());
+                }
+            }
+
+            if (!toRemove.isEmpty()) {
+                transactions.removeIf(toRemove::contains);
+            }
+        }, () -> cancelled.forEach(t -> publish(ChangeEvent.Type.TRANSACTION_CANCELLED, t)));
+        return new CancelSummary(cancelled, refused);
+    }
+
+    /**
+     * Move finished transactions out of the transactions file and into a new archive segment: active rentals and
+     * leases whose period has ended, and active buys that started more than buyRetention ago. Archived transactions
+     * no longer show up in queries unless they ask for them with includeArchived.
+     *
+     * The segment is safely on disk before the transactions are dropped from the main file, so an interrupted run can
+     * at worst leave a transaction in both places, and includeArchived queries skip the archived copy when that happens
+     *
+     * @return the number of transactions archived
+     */
+    public int archiveCompleted(Duration buyRetention) {
+        long now = clock.millis();
+        long buyCutoff = now - buyRetention.toMillis();
+        List<Transaction> archived = new ArrayList<Transaction>();
 
-        // Update the transactions file
-        persistTransactions(transactions);
+        store.update(transactions -> {
+            Set<Transaction> finished = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Transaction transaction : transactions.all()) {
+                if (transaction.getState() != TransactionState.ACTIVE) {
+                    continue;
+                }
+                Date end = transaction.getEndDate();
+                if (end != null ? end.getTime() <= now : transaction.getStartTime() <= buyCutoff) {
+                    finished.add(transaction);
+                    archived.add(transaction.copy());
+                }
+            }
+            if (finished.isEmpty()) {
+                return;
+            }
 
+            try {
+                archive.append(archived);
+            } catch (IOException e) {
+                // Nothing has been removed yet, so the main file is left as it was
+                throw new InvalidOperationException("Unable to write archive segment: " + e.getMessage());
+            }
+            transactions.removeIf(finished::contains);
+        }, () -> archived.forEach(t -> publish(ChangeEvent.Type.TRANSACTION_ARCHIVED, t)));
+        return archived.size();
+    }
+
+    /**
+     * Number of corrupt records skipped and quarantined while loading the data files in recovery mode
+     */
+    public long getQuarantinedCount() {
+        return loader.getQuarantinedCount();
+    }
+
+    /**
+     * Cold storage holding the transactions moved out by archiveCompleted
+     */
+    public TransactionArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * A transaction can be cancelled while it is a draft, or before its start date once it is active
+     */
+    private boolean isCancellable(Transaction transaction) {
+        return transaction.state == TransactionState.DRAFT || clock.millis() < transaction.getStartTime();
     }
 
     /**
      * Entry point to querying for transactions by creating a query object
      */
     public TransactionQuery getTransactions() {
-        return new TransactionQuery();
+        return new TransactionQuery(store, queryCache, customerIndex, regionIndex, archive, queryPool);
+    }
+
+    /**
+     * Number of transactions for each value of a customer address field, such as each state, sorted by value. Worked
+     * out from running totals in the region index without looking at any transactions
+     */
+    public Map<String, Integer> countByRegion(AddressField field) {
+        return countByRegion(field, null);
+    }
+
+    /**
+     * Number of transactions in the given state for each value of a customer address field, sorted by value
+     */
+    public Map<String, Integer> countByRegion(AddressField field, TransactionState state) {
+        return store.read(all -> regionIndex.counts(field, state));
+    }
+
+    /**
+     * Total price of all transactions for each value of a customer address field, sorted by value
+     */
+    public Map<String, Double> revenueByRegion(AddressField field) {
+        return revenueByRegion(field, null);
+    }
+
+    /**
+     * Total price of the transactions in the given state for each value of a customer address field, sorted by value
+     */
+    public Map<String, Double> revenueByRegion(AddressField field, TransactionState state) {
+        return store.read(all -> regionIndex.revenue(field, state));
+    }
+
+    /**
+     * How much of the window from one date up to another each vehicle, each vehicle type and the whole fleet spent
+     * rented or leased out, along with idle gaps and peak concurrent bookings. Counts every rent and lease in the
+     * main transactions file, drafts included
+     */
+    public FleetAnalytics utilization(Date from, Date to) {
+        return utilization(from, to, null, false);
+    }
+
+    /**
+     * Utilization as above, counting only transactions in the given state if it isn't null, and optionally also the
+     * archive, which windows in the past need since finished rents and leases are moved there. Reading the archive
+     * is much slower
+     */
+    public FleetAnalytics utilization(Date from, Date to, TransactionState state, boolean includeArchived) {
+        long start = from.getTime();
+        long end = to.getTime();
+        if (end <= start) {
+            throw new IllegalArgumentException("Utilization window must end after it starts");
+        }
+        List<Vehicle> fleet = currentVehicles();
+        Set<Integer> booked = new HashSet<Integer>();
+
+        // Only the times are taken under the lock, the sweep runs after it is released
+        List<FleetAnalytics.Booking> bookings = store.read(all -> {
+            List<FleetAnalytics.Booking> found = new ArrayList<FleetAnalytics.Booking>();
+            for (Transaction transaction : all) {
+                FleetAnalytics.Booking booking = state == null || transaction.getState() == state
+                        ? FleetAnalytics.Booking.of(transaction, start, end) : null;
+                if (booking != null) {
+                    found.add(booking);
+                    booked.add(transaction.getId());
+                }
+            }
+            return found;
+        });
+        if (includeArchived) {
+            // Skip archived copies of anything still in the main file, left behind by an interrupted archive run
+            archive.forEach(transaction -> {
+                FleetAnalytics.Booking booking = state == null || transaction.getState() == state
+                        ? FleetAnalytics.Booking.of(transaction, start, end) : null;
+                if (booking != null && booked.add(transaction.getId())) {
+                    bookings.add(booking);
+                }
+            });
+        }
+        return FleetAnalytics.compute(fleet, bookings, start, end, queryPool);
     }
 
     /**
      * Add a vehicle object to the available vehicles list
      */
     public void addVehicle(Vehicle vehicle) {
-        // Add vehicle
-        vehicles.add(vehicle);
-
-        // Persist to file
-        persistVehicles();
+        updateVehicles(vehicles -> {
+            // Add vehicle
+            vehicles.add(vehicle);
+        }, ChangeEvent.Type.VEHICLE_ADDED, vehicle);
     }
 
     /**
@@ -211,60 +556,303 @@ public class VehicleManager {
     }
 
     /**
-     * Return list of all available vehicles
+     * Return list of all available vehicles. The list is a copy, changing it doesn't change the available vehicles
      */
     public ArrayList<Vehicle> getVehicles() {
+        return new ArrayList<Vehicle>(currentVehicles());
+    }
+
+    /**
+     * The manager's own vehicle list, brought up to date with the file. It is replaced rather than changed whenever
+     * the vehicles change, which is what lets the search index tell when it is out of date, so it must never be
+     * modified or handed out
+     */
+    private ArrayList<Vehicle> currentVehicles() {
+        // Pick up vehicles written by another manager since we last looked
+        refreshVehicles();
         return vehicles;
     }
 
+    /**
+     * Return the available vehicles of one type, in the same order as getVehicles
+     */
+    public ArrayList<Vehicle> getVehicles(VehicleType type) {
+        return findVehicles().withType(type).asList();
+    }
+
+    /**
+     * Entry point to searching the vehicles by type, make, model, year and price. The indexes behind it are built the
+     * first time the catalog is searched after it changes
+     */
+    public VehicleQuery findVehicles() {
+        ArrayList<Vehicle> current = currentVehicles();
+        VehicleIndex index = vehicleIndex;
+        if (index == null || !index.isFor(current)) {
+            // Two threads may both build one after a change, which is harmless as either is right for the list
+            index = new VehicleIndex(current);
+            vehicleIndex = index;
+        }
+        return new VehicleQuery(index);
+    }
+
+    /**
+     * Vehicles of a type, or of any type if it is null, with no rent, lease or buy overlapping the time from one date
+     * up to but not including another. Drafts count as bookings until their start time, after which they can no
+     * longer be activated and are treated as abandoned; a bought vehicle stays booked from the sale on. Each vehicle
+     * is checked against its own bookings by start time, so the time taken depends on the size of the catalog rather
+     * than how many transactions there have been
+     */
+    public ArrayList<Vehicle> findAvailable(VehicleType type, Date from, Date to) {
+        long start = from.getTime();
+        long end = to.getTime();
+        if (end <= start) {
+            throw new IllegalArgumentException("Availability range must end after it starts");
+        }
+        ArrayList<Vehicle> candidates = type == null ? currentVehicles() : getVehicles(type);
+        long now = clock.millis();
+        return store.read(all -> {
+            ArrayList<Vehicle> available = new ArrayList<Vehicle>();
+            for (Vehicle vehicle : candidates) {
+                if (bookingIndex.isFree(vehicle.getVin(), start, end, now)) {
+                    available.add(vehicle);
+                }
+            }
+            return available;
+        });
+    }
+
+    /**
+     * Vehicles free to rent from a date for this many days, the same stretch a rental starting then would book
+     */
+    public ArrayList<Vehicle> findAvailable(VehicleType type, Date from, int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(from);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return findAvailable(type, from, calendar.getTime());
+    }
+
+    /**
+     * Bookings of a vehicle that overlap the time from one date up to but not including another, such as the ones
+     * keeping it from showing in findAvailable. Rents and leases come earliest first, then any buy
+     */
+    public ArrayList<Transaction> getBookings(String vin, Date from, Date to) {
+        if (!to.after(from)) {
+            throw new IllegalArgumentException("Booking range must end after it starts");
+        }
+        long now = clock.millis();
+        return store.read(all -> {
+            ArrayList<Transaction> bookings = new ArrayList<Transaction>();
+            bookingIndex.overlapping(vin, from.getTime(), to.getTime(), now).forEach(t -> bookings.add(t.copy()));
+            return bookings;
+        });
+    }
+
     /**
      * Remove a vehicle object from the available vehicles list
      */
     public void removeVehicle(Vehicle vehicle) {
-        if (!vehicles.remove(vehicle)) {
-            throw new InvalidVehicleException("Vehicle was not in the list of available vehicles, no action taken");
-        }
+        updateVehicles(vehicles -> {
+            if (!vehicles.remove(vehicle)) {
+                throw new InvalidVehicleException("Vehicle was not in the list of available vehicles, no action taken");
+            }
+        }, ChangeEvent.Type.VEHICLE_REMOVED, vehicle);
     }
 
     /**
      * Remove a vehicle from the available vehicles list by VIN
      */
     public void removeVehicle(String vin) {
-        Vehicle vehicle = vehicles.stream().filter(v -> v.getVin().equals(vin)).findFirst().orElse(null);
+        Vehicle vehicle = currentVehicles().stream().filter(v -> v.getVin().equals(vin)).findFirst().orElse(null);
         if (vehicle == null) {
             throw new InvalidVehicleException("No vehicle with VIN " + vin + " in list of available vehicles");
         }
+        removeVehicle(vehicle);
     }
 
     /**
-     * Save the list of vehicles back out to file
+     * Feed of changes made through this manager, for subscribers that want to hear about them as they happen rather
+     * than polling. Changes written by other processes are not published here
      */
-    private void persistVehicles() {
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Turn on caching of query results, keeping up to maxEntries distinct sets of filters. Cached results are dropped
+     * as soon as a change could affect them. Replaces any cache that was already enabled
+     */
+    public void enableQueryCache(int maxEntries) {
+        disableQueryCache();
+        QueryCache cache = new QueryCache(maxEntries);
+        store.addListener(cache);
+        queryCache = cache;
+    }
+
+    /**
+     * Turn off caching of query results
+     */
+    public void disableQueryCache() {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            queryCache = null;
+            store.removeListener(cache);
+        }
+    }
+
+    /**
+     * The query result cache, for checking its hit and miss statistics, or null if caching is off
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Scheduler for rental and lease end dates and stale drafts. Call start() on it to have deadlines fire on their
+     * own as they fall due, and add listeners to be told when they do
+     */
+    public DeadlineScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Set whether drafts should be cancelled automatically by the scheduler once their start date has passed without
+     * them being activated. Off by default
+     */
+    public void setExpireStaleDrafts(boolean expireStaleDrafts) {
+        this.expireStaleDrafts = expireStaleDrafts;
+    }
+
+    /**
+     * React to a deadline from the scheduler: publish ended rentals and leases, and cancel stale drafts if enabled
+     */
+    private void handleDeadline(Deadline deadline, Transaction transaction) {
+        if (deadline.getKind() == Deadline.Kind.TRANSACTION_ENDED) {
+            changeFeed.publish(ChangeEvent.Type.TRANSACTION_ENDED, transaction, transaction.getVehicle());
+        } else if (deadline.getKind() == Deadline.Kind.DRAFT_EXPIRED && expireStaleDrafts) {
+            try {
+                cancelTransaction(transaction.getId());
+            } catch (InvalidTransactionException e) {
+                // Already gone, most likely cancelled by another process that got there first
+            }
+        }
+    }
+
+    /**
+     * Publish a transaction change with its own copy of the transaction, so the caller can keep changing theirs
+     */
+    private void publish(ChangeEvent.Type type, Transaction transaction) {
+        Transaction copy = transaction.copy();
+        changeFeed.publish(type, copy, copy.getVehicle());
+    }
+
+    /**
+     * Reload the vehicles list if the vehicles file has been written since we last loaded it
+     */
+    private void refreshVehicles() {
         try {
-            FileWriter writer = new FileWriter(vehiclesFile);
-            gson.toJson(vehicles, writer);
-            writer.flush();
-            writer.close();
+            vehiclesData.withSharedLock(this::reloadVehiclesIfChanged);
         } catch (IOException e) {
-            throw new InvalidOperationException("Unable to write vehicles out to file: " + e.getMessage());
+            // Unable to load file, throw an exception
+            throw new InvalidOperationException("Unable to load vehicles: " + e.getMessage());
+        }
+    }
+
+    private Void reloadVehiclesIfChanged() throws IOException {
+        vehiclesData.reloadIfChanged(reader -> {
+            // Parse vehicle list from json file into an arraylist, which is empty if the file was
+            vehicles = loader.load(reader, Vehicle.class, vehiclesData.getFile());
+        });
+        return null;
+    }
+
+    /**
+     * Apply a change shipped from a replication leader. The leader has already checked it, so it is applied as it
+     * stands, and applying one again leaves things as they were, which is what lets a follower replay events it may
+     * already have from a snapshot. The change is published on this manager's own feed under its own sequence number
+     */
+    void applyReplicated(ChangeEvent.Type type, Transaction transaction, Vehicle vehicle) {
+        switch (type) {
+            case TRANSACTION_ADDED:
+            case TRANSACTION_UPDATED:
+            case TRANSACTION_ACTIVATED:
+                store.update(transactions -> {
+                    Transaction existing = transactions.get(transaction.getId());
+                    if (existing != null) {
+                        transactions.remove(existing);
+                    }
+                    transactions.add(transaction.copy());
+                }, () -> publish(type, transaction));
+                break;
+            case TRANSACTION_CANCELLED:
+            case TRANSACTION_ARCHIVED:
+                // The leader's archive segments aren't shipped, an archived transaction just leaves the main list
+                Transaction[] removed = new Transaction[1];
+                store.update(transactions -> {
+                    removed[0] = transactions.get(transaction.getId());
+                    if (removed[0] != null) {
+                        transactions.remove(removed[0]);
+                    }
+                }, () -> {
+                    if (removed[0] != null) {
+                        publish(type, removed[0]);
+                    }
+                });
+                break;
+            case VEHICLE_ADDED:
+                updateVehicles(vehicles -> {
+                    if (!vehicles.contains(vehicle)) {
+                        vehicles.add(vehicle);
+                    }
+                }, type, vehicle);
+                break;
+            case VEHICLE_REMOVED:
+                updateVehicles(vehicles -> vehicles.remove(vehicle), type, vehicle);
+                break;
+            default:
+                // Ended transactions are only a notice, nothing about them changes
+                break;
         }
     }
 
     /**
-     * Replace the contents of the transactions file with the list provided here
+     * Replace every vehicle and transaction with a snapshot shipped from a replication leader. Nothing is published,
+     * since the snapshot isn't a change anyone made
      */
-    private void persistTransactions(ArrayList<Transaction> transactions) {
+    void loadReplicated(List<Vehicle> snapshotVehicles, List<Transaction> snapshotTransactions) {
+        updateVehicles(vehicles -> {
+            vehicles.clear();
+            vehicles.addAll(snapshotVehicles);
+        }, null, null);
+        store.update(transactions -> {
+            transactions.removeIf(t -> true);
+            snapshotTransactions.forEach(t -> transactions.add(t.copy()));
+        });
+    }
+
+    /**
+     * Apply a change to the vehicles list and save it back out to file, holding the file lock throughout so that
+     * vehicles added by other processes in the meantime are not lost. The change event, if there is one, is published
+     * before the lock is released
+     */
+    private void updateVehicles(Consumer<ArrayList<Vehicle>> mutation, ChangeEvent.Type eventType, Vehicle vehicle) {
         try {
-            FileWriter writer = new FileWriter(transactionsFile);
+            vehiclesData.withExclusiveLock(() -> {
+                reloadVehiclesIfChanged();
+
+                // Work on a copy so readers never see a half applied change
+                ArrayList<Vehicle> updated = new ArrayList<Vehicle>(vehicles);
+                mutation.accept(updated);
 
-            // We need to re-label each transaction with its type because deserialization drops the differentiator field
-            transactions.forEach(Transaction::labelType);
+                vehiclesData.write(writer -> ChecksummedRecords.write(writer, updated, gson));
+                vehicles = updated;
 
-            gson.toJson(transactions, writer);
-            writer.flush();
-            writer.close();
+                if (eventType != null) {
+                    changeFeed.publish(eventType, null, vehicle);
+                }
+                return null;
+            });
         } catch (IOException e) {
-            throw new InvalidOperationException("Unable to write transactions out to file: " + e.getMessage());
+            throw new InvalidOperationException("Unable to write vehicles out to file: " + e.getMessage());
         }
     }
 
@@ -279,10 +867,37 @@ public class VehicleManager {
      * where it needs access to the transactions file, and this keeps it to one place instead of divided logic)
      */
     public static class TransactionQuery {
+        private final TransactionStore store;
+        private final QueryCache cache;
+        private final CustomerIndex customers;
+        private final RegionIndex regions;
+        private final TransactionArchive archive;
+        private ForkJoinPool pool;
+        private boolean includeArchived;
         private Integer id;
         private String email;
-        private Date startDate;
+        private Long startTime;
         private TransactionState state;
+        private String lastNamePrefix;
+        private String emailDomain;
+        private String phonePrefix;
+        private String addressState;
+        private String zip;
+        private String city;
+        private String country;
+        private TransactionFilter filter;
+        private Comparator<? super Transaction> order;
+        private Integer limit;
+
+        TransactionQuery(TransactionStore store, QueryCache cache, CustomerIndex customers, RegionIndex regions,
+                         TransactionArchive archive, ForkJoinPool pool) {
+            this.store = store;
+            this.cache = cache;
+            this.customers = customers;
+            this.regions = regions;
+            this.archive = archive;
+            this.pool = pool;
+        }
 
         /**
          * Add a filter by email address
@@ -312,41 +927,394 @@ public class VehicleManager {
          * Add a filter for start date
          */
         public TransactionQuery withStartDate(Date startDate) {
-            this.startDate = startDate;
+            this.startTime = startDate == null ? null : startDate.getTime();
+            return this;
+        }
+
+        /**
+         * Add a filter for customers whose last name starts with the prefix, ignoring case
+         */
+        public TransactionQuery withLastNamePrefix(String prefix) {
+            this.lastNamePrefix = prefix;
             return this;
         }
 
         /**
-         * Return the results of a query using the currently set filters in the form of an ArrayList of Transactions
+         * Add a filter for customers with an email address at the domain or any of its subdomains, ignoring case
+         */
+        public TransactionQuery withEmailDomain(String domain) {
+            this.emailDomain = domain;
+            return this;
+        }
+
+        /**
+         * Add a filter for customers whose phone number starts with the given digits, ignoring punctuation
+         */
+        public TransactionQuery withPhonePrefix(String prefix) {
+            this.phonePrefix = prefix;
+            return this;
+        }
+
+        /**
+         * Add a filter for customers whose mailing address is in the given state. Not to be confused with withState,
+         * which filters on the transaction's own state
+         */
+        public TransactionQuery withAddressState(String state) {
+            this.addressState = state;
+            return this;
+        }
+
+        /**
+         * Add a filter for customers whose mailing address has the given zip code
+         */
+        public TransactionQuery withZip(String zip) {
+            this.zip = zip;
+            return this;
+        }
+
+        /**
+         * Add a filter for customers whose mailing address is in the given city
+         */
+        public TransactionQuery withCity(String city) {
+            this.city = city;
+            return this;
+        }
+
+        /**
+         * Add a filter for customers whose mailing address is in the given country
+         */
+        public TransactionQuery withCountry(String country) {
+            this.country = country;
+            return this;
+        }
+
+        /**
+         * Always filter on the calling thread, even when there are enough transactions to split the work across the
+         * manager's pool
+         */
+        public TransactionQuery sequential() {
+            this.pool = null;
+            return this;
+        }
+
+        /**
+         * Split filtering across this pool instead of the manager's, or never split it if null
+         */
+        TransactionQuery withPool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Add a filter built from TransactionFilter's conditions and combinators, for anything the exact matches above
+         * can't express. Calling it again adds another filter that must also pass
+         */
+        public TransactionQuery where(TransactionFilter filter) {
+            this.filter = this.filter == null ? filter : this.filter.and(filter);
+            return this;
+        }
+
+        /**
+         * Sort the results, see TransactionOrder for the usual orders. Archived matches are sorted in with the rest
+         */
+        public TransactionQuery orderBy(Comparator<? super Transaction> order) {
+            this.order = order;
+            return this;
+        }
+
+        /**
+         * Return no more than this many results: the first ones in the order given to orderBy, or in the usual result
+         * order without one. Only that many are ever held, so asking for the top few of a large set costs a pass over
+         * it rather than a sort of everything that matches
+         */
+        public TransactionQuery limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit can't be negative, got " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * The first k results in this order, such as the 10 most expensive buys or the next 20 rentals to start. Ties
+         * keep the order they would have had without the sort
+         */
+        public ArrayList<Transaction> topK(Comparator<? super Transaction> order, int k) {
+            return orderBy(order).limit(k).asList();
+        }
+
+        /**
+         * Also search the archive of finished transactions. This reads every archive segment from disk, so it is much
+         * slower than a normal query. Archived matches come after the ones from the main file unless there is an order
+         */
+        public TransactionQuery includeArchived() {
+            this.includeArchived = true;
+            return this;
+        }
+
+        /**
+         * Return the results of a query using the currently set filters in the form of an ArrayList of Transactions.
+         * Queries with indexed filters are answered from an index, and when the customer index is the one used the
+         * results come back in order of that field. Otherwise they come back in file order, unless orderBy was used
          */
         public ArrayList<Transaction> asList() {
-            // Load the transaction file
-            try {
-                ArrayList<Transaction> transactions =  gson.fromJson(new FileReader(transactionsFile), new TypeToken<ArrayList<Transaction>>(){}.getType());
+            if (limit != null) {
+                return top();
+            }
 
-                // If the file is empty it will come back null, so create a new list
-                if (transactions == null) {
-                    return new ArrayList<Transaction>();
+            // Read from the in-memory transactions, which the store reloads only if the file has changed
+            ArrayList<Transaction> results = store.read(all -> {
+                // Answer from the cache if these filters have been run since the last relevant change
+                QueryCache.Key key = new QueryCache.Key(copy()::matches, id, email,
+                        startTime, state, lastNamePrefix, emailDomain, phonePrefix,
+                        addressState, zip, city, country, filter);
+                QueryCache cache = filter == null || filter.isCacheable() ? this.cache : null;
+                List<Transaction> cached = cache == null ? null : cache.get(key);
+                if (cached != null) {
+                    ArrayList<Transaction> transactions = new ArrayList<Transaction>(cached.size());
+                    cached.forEach(t -> transactions.add(t.copy()));
+                    return transactions;
                 }
 
-                // Apply each filter that was set
-                if (id != null) {
-                    transactions.removeIf(t -> t.getId() != id);
+                ArrayList<Transaction> transactions = matching(all);
+
+                if (cache != null) {
+                    cache.put(key, new ArrayList<Transaction>(transactions));
                 }
-                if (email != null) {
-                    transactions.removeIf(t -> !t.getCustomer().getEmail().equals(email));
+
+                // Hand back copies so callers can change them without touching the stored versions
+                transactions.replaceAll(Transaction::copy);
+                return transactions;
+            });
+
+            if (includeArchived) {
+                // Skip archived copies of anything still in the main file, left behind by an interrupted archive run
+                Set<Integer> found = new HashSet<Integer>();
+                results.forEach(t -> found.add(t.getId()));
+                archive.forEach(t -> {
+                    if (matches(t) && found.add(t.getId())) {
+                        results.add(t);
+                    }
+                });
+            }
+            if (order != null) {
+                results.sort(order);
+            }
+            return results;
+        }
+
+        /**
+         * Stream every transaction passing the filters to the output as CSV or NDJSON, one flat row each, without
+         * building a list of them or copying them. Memory use stays the same however many rows there are, but the
+         * store's read lock is held for the whole export, so changes wait until it is done. The stream is flushed but
+         * left open.
+         *
+         * With an order set the rows all have to be gathered and sorted before any are written, so memory use grows
+         * with the number of rows again
+         *
+         * @return the number of transactions written
+         */
+        public int export(OutputStream out, ExportFormat format) throws IOException {
+            TransactionExporter exporter = new TransactionExporter(out, format);
+            exporter.writeHeader();
+            if (order != null || limit != null) {
+                for (Transaction transaction : asList()) {
+                    exporter.write(transaction);
                 }
-                if (startDate != null) {
-                    transactions.removeIf(t -> !t.getStartDate().equals(startDate));
+                exporter.flush();
+                return exporter.getCount();
+            }
+
+            Set<Integer> exported = includeArchived ? new HashSet<Integer>() : null;
+            try {
+                store.read(all -> {
+                    for (Transaction transaction : candidates(all)) {
+                        if (matches(transaction)) {
+                            writeRow(exporter, transaction);
+                            if (exported != null) {
+                                exported.add(transaction.getId());
+                            }
+                        }
+                    }
+                    return null;
+                });
+                if (includeArchived) {
+                    archive.forEach(t -> {
+                        if (matches(t) && exported.add(t.getId())) {
+                            writeRow(exporter, t);
+                        }
+                    });
                 }
-                if (state != null) {
-                    transactions.removeIf(t -> !t.getState().equals(state));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            exporter.flush();
+            return exporter.getCount();
+        }
+
+        /**
+         * The results of a limited query, kept in a bounded heap as the candidates are checked instead of collected and
+         * sorted. Skips the cache, which holds whole result sets
+         */
+        private ArrayList<Transaction> top() {
+            TopK<Transaction> top = new TopK<>(order, limit);
+            store.read(all -> {
+                for (Transaction transaction : candidates(all)) {
+                    // In result order nothing after the first few can get in, so stop looking
+                    if (order == null && top.isFull()) {
+                        break;
+                    }
+                    if (matches(transaction)) {
+                        top.offer(transaction);
+                    }
                 }
+                // Copy the few that were kept while the lock still keeps them from changing
+                top.replaceAll(Transaction::copy);
+                return null;
+            });
 
-                return transactions;
-            } catch (FileNotFoundException e) {
-                throw new InvalidOperationException("Unable to load transactions: " + e.getMessage());
+            if (includeArchived && !(order == null && top.isFull())) {
+                // An archived copy of something from the main file ties with it and loses as the later one, unless
+                // the main file's copy is held, so only those need skipping
+                Set<Integer> found = new HashSet<Integer>();
+                top.toSortedList().forEach(t -> found.add(t.getId()));
+                archive.forEach(t -> {
+                    if (!found.contains(t.getId()) && matches(t)) {
+                        top.offer(t);
+                    }
+                });
+            }
+            return top.toSortedList();
+        }
+
+        private void writeRow(TransactionExporter exporter, Transaction transaction) {
+            try {
+                exporter.write(transaction);
+            } catch (IOException e) {
+                // Carried out of the store's callback and rethrown as it was by export
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * The stored transactions that pass every filter that is set, worked out without the cache. Must be called
+         * under the store's lock, and the transactions returned must not be modified
+         */
+        ArrayList<Transaction> matching(Collection<Transaction> all) {
+            // Every filter is checked in one pass, spread over the pool once there are enough candidates
+            return ParallelFilter.filter(candidates(all), this::matches, pool);
+        }
+
+        /**
+         * The transactions worth filtering: the smallest set of matches an index can give for the filters that are
+         * set, since that is usually far fewer than all of them, otherwise everything
+         */
+        private Collection<Transaction> candidates(Collection<Transaction> all) {
+            // An ID matches one transaction at most, nothing beats that
+            if (id != null) {
+                Transaction match = store.get(id);
+                return match == null ? Collections.emptyList() : Collections.singletonList(match);
+            }
+
+            // Region buckets know their size up front, so pick the smallest of those first
+            Collection<Transaction> candidates = all;
+            candidates = smaller(candidates, addressState == null ? null : regions.get(AddressField.STATE, addressState));
+            candidates = smaller(candidates, zip == null ? null : regions.get(AddressField.ZIP, zip));
+            candidates = smaller(candidates, country == null ? null : regions.get(AddressField.COUNTRY, country));
+
+            // Only one customer lookup is worth doing, it will be filtered by the others anyway
+            if (lastNamePrefix != null) {
+                candidates = smaller(candidates, customers.withLastNamePrefix(lastNamePrefix));
+            } else if (emailDomain != null) {
+                candidates = smaller(candidates, customers.withEmailDomain(emailDomain));
+            } else if (phonePrefix != null) {
+                candidates = smaller(candidates, customers.withPhonePrefix(phonePrefix));
+            }
+
+            // A combined filter works out what its indexed conditions allow between them
+            if (filter != null) {
+                candidates = smaller(candidates, filter.candidates(indexes()));
             }
+            return candidates;
+        }
+
+        private TransactionFilter.Indexes indexes() {
+            return new TransactionFilter.Indexes() {
+                @Override
+                public Transaction byId(int id) {
+                    return store.get(id);
+                }
+
+                @Override
+                public Collection<Transaction> byRegion(AddressField field, String value) {
+                    return regions.get(field, value);
+                }
+
+                @Override
+                public Collection<Transaction> byLastNamePrefix(String prefix) {
+                    return customers.withLastNamePrefix(prefix);
+                }
+
+                @Override
+                public Collection<Transaction> byEmailDomain(String domain) {
+                    return customers.withEmailDomain(domain);
+                }
+
+                @Override
+                public Collection<Transaction> byPhonePrefix(String prefix) {
+                    return customers.withPhonePrefix(prefix);
+                }
+            };
+        }
+
+        private static Collection<Transaction> smaller(Collection<Transaction> current, Collection<Transaction> other) {
+            return other != null && other.size() <= current.size() ? other : current;
+        }
+
+        /**
+         * Whether a transaction passes every filter that is set
+         */
+        private boolean matches(Transaction t) {
+            Customer customer = t.getCustomer();
+            Address address = customer == null ? null : customer.getMailingAddress();
+            return (id == null || t.getId() == id)
+                    && (email == null || (customer != null && email.equals(customer.getEmail())))
+                    && (startTime == null || t.getStartTime() == startTime)
+                    && (state == null || state == t.getState())
+                    && (lastNamePrefix == null
+                            || (customer != null && CustomerIndex.lastNameStartsWith(customer, lastNamePrefix)))
+                    && (emailDomain == null || (customer != null && CustomerIndex.emailAtDomain(customer, emailDomain)))
+                    && (phonePrefix == null
+                            || (customer != null && CustomerIndex.phoneStartsWith(customer, phonePrefix)))
+                    && (addressState == null || addressState.equals(AddressField.STATE.of(address)))
+                    && (zip == null || zip.equals(AddressField.ZIP.of(address)))
+                    && (city == null || (address != null && city.equals(address.getCity())))
+                    && (country == null || country.equals(AddressField.COUNTRY.of(address)))
+                    && (filter == null || filter.test(t));
+        }
+
+        /**
+         * A copy of this query's filters, so a cache entry's idea of what it holds can't change if the caller goes on
+         * to reuse this query
+         */
+        private TransactionQuery copy() {
+            TransactionQuery copy = new TransactionQuery(store, cache, customers, regions, archive, pool);
+            copy.id = id;
+            copy.email = email;
+            copy.startTime = startTime;
+            copy.state = state;
+            copy.lastNamePrefix = lastNamePrefix;
+            copy.emailDomain = emailDomain;
+            copy.phonePrefix = phonePrefix;
+            copy.addressState = addressState;
+            copy.zip = zip;
+            copy.city = city;
+            copy.country = country;
+            copy.includeArchived = includeArchived;
+            copy.filter = filter;
+            copy.order = order;
+            copy.limit = limit;
+            return copy;
         }
     }
 
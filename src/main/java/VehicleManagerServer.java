@@ -0,0 +1,492 @@
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.InvalidOperationException;
+import exceptions.InvalidTransactionException;
+import exceptions.InvalidVehicleException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP/JSON service in front of a single VehicleManager, so that many clients can share one in-memory copy
+ * of the data instead of each process loading the files for itself.
+ *
+ * Routes:
+ *   GET    /vehicles                        list vehicles
+ *   GET    /vehicles?type=suv,sedan&make=&model=&minYear=&maxYear=&minPrice=&maxPrice=&sort=price   search vehicles
+ *   POST   /vehicles                        add a vehicle (json body)
+ *   GET    /vehicles/available?type=suv&from=&days=   vehicles free for that many days, from in epoch milliseconds
+ *   DELETE /vehicles/{vin}                  remove a vehicle
+ *   GET    /transactions?id=&email=&state=&startDate=   query transactions, startDate in epoch milliseconds
+ *   GET    /transactions?lastName=&emailDomain=&phone=   type-ahead search, by last name and phone prefix
+ *   GET    /transactions?addressState=&zip=&city=&country=   search by the customer's mailing address
+ *   GET    /transactions?type=lease,rent&vehicleType=SUV&minPrice=&maxPrice=   filter on type, vehicle and price
+ *   GET    /transactions?sort=-price        sort by id, startDate, activationDate or price, "-" for descending
+ *   GET    /transactions?sort=-price&limit=10   only the first few results, without sorting all of them
+ *   GET    /transactions?archived=true      include archived transactions with any of the above, much slower
+ *   GET    /transactions/export?format=csv  stream matching transactions as csv or ndjson, takes the same filters
+ *   GET    /transactions/{id}               get one transaction
+ *   POST   /transactions                    add a draft transaction (json body with a "type" of rent, lease or buy)
+ *   PUT    /transactions/{id}               update a transaction, keeping its state and activation date
+ *   POST   /transactions/{id}/activate      activate a transaction
+ *   DELETE /transactions/{id}               cancel a transaction, 409 if it is active and has already started
+ *
+ * Requests are handled on a fixed thread pool. Every response has a content length, so HTTP/1.1 clients keep their
+ * connections open between requests. Paths other than these get 404, and a known path with the wrong method 405.
+ */
+public class VehicleManagerServer {
+
+    private static final int DEFAULT_PORT = 8080;
+
+    private final VehicleManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param manager the shared manager every request is served from
+     * @param port port to listen on, or 0 to pick a free one
+     * @param threads number of request handling threads
+     */
+    public VehicleManagerServer(VehicleManager manager, int port, int threads) throws IOException {
+        this.manager = manager;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/vehicles", exchange -> handle(exchange, "vehicles", this::handleVehicles));
+        server.createContext("/transactions", exchange -> handle(exchange, "transactions", this::handleTransactions));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting connections, giving requests in progress up to a second to finish
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Port the server is listening on, useful when it was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleVehicles(HttpExchange exchange, String[] path) throws IOException {
+        String method = exchange.getRequestMethod();
+
+        if (path.length == 1 && method.equals("GET")) {
+            sendJson(exchange, 200, findVehicles(exchange).asList());
+        } else if (path.length == 1 && method.equals("POST")) {
+            Vehicle parsed = VehicleManager.gson.fromJson(readBody(exchange), Vehicle.class);
+            // Run it through the constructor so the VIN gets validated
+            Vehicle vehicle = new Vehicle(parsed.getMake(), parsed.getModel(), parsed.getVin(), parsed.getYear(),
+                    parsed.getPrice(), parsed.getType());
+            manager.addVehicle(vehicle);
+            sendJson(exchange, 201, vehicle);
+        } else if (path.length == 2 && path[1].equals("available") && method.equals("GET")) {
+            sendJson(exchange, 200, findAvailable(exchange));
+        } else if (path.length == 2 && method.equals("DELETE")) {
+            manager.removeVehicle(path[1]);
+            sendEmpty(exchange, 204);
+        } else if (path.length <= 2) {
+            sendError(exchange, 405, "Unsupported request " + method + " " + exchange.getRequestURI().getPath());
+        } else {
+            sendNotFound(exchange);
+        }
+    }
+
+    private void handleTransactions(HttpExchange exchange, String[] path) throws IOException {
+        String method = exchange.getRequestMethod();
+
+        if (path.length == 1 && method.equals("GET")) {
+            sendJson(exchange, 200, query(exchange).asList());
+        } else if (path.length == 1 && method.equals("POST")) {
+            // New transactions always start out as drafts, activating one has to go through /activate
+            Transaction transaction = readTransaction(exchange);
+            transaction.state = TransactionState.DRAFT;
+            transaction.activationTime = Transaction.NO_TIME;
+            manager.addTransaction(transaction);
+            sendJson(exchange, 201, transaction);
+        } else if (path.length == 2 && path[1].equals("export") && method.equals("GET")) {
+            export(exchange);
+        } else if (path.length == 2 && method.equals("GET")) {
+            ArrayList<Transaction> found = manager.getTransactions().withID(parseId(path[1])).asList();
+            if (found.isEmpty()) {
+                sendError(exchange, 404, "No transaction with ID " + path[1]);
+            } else {
+                sendJson(exchange, 200, found.get(0));
+            }
+        } else if (path.length == 2 && method.equals("PUT")) {
+            Transaction transaction = readTransaction(exchange);
+            if (transaction.getId() != parseId(path[1])) {
+                throw new InvalidTransactionException("Transaction ID in body does not match ID in path");
+            }
+            manager.updateTransactionDetails(transaction);
+            sendJson(exchange, 200, transaction);
+        } else if (path.length == 2 && method.equals("DELETE")) {
+            // Finding and cancelling happen in one update, so the answer can't go stale in between
+            CancelSummary summary = manager.cancelWhere(manager.getTransactions().withID(parseId(path[1])));
+            if (summary.getRefusedCount() > 0) {
+                sendError(exchange, 409, "Transaction with ID " + path[1] + " is active and has started");
+            } else if (summary.getCancelledCount() == 0) {
+                sendError(exchange, 404, "No transaction with ID " + path[1]);
+            } else {
+                sendEmpty(exchange, 204);
+            }
+        } else if (path.length == 3 && path[2].equals("activate") && method.equals("POST")) {
+            manager.activateTransaction(parseId(path[1]));
+            sendEmpty(exchange, 204);
+        } else if (path.length <= 2 || path.length == 3 && path[2].equals("activate")) {
+            sendError(exchange, 405, "Unsupported request " + method + " " + exchange.getRequestURI().getPath());
+        } else {
+            sendNotFound(exchange);
+        }
+    }
+
+    /**
+     * Stream the matching transactions back as they are written, without a content length, so an export of any size
+     * never sits in memory as one response
+     */
+    private void export(HttpExchange exchange) throws IOException {
+        String format = parseQueryString(exchange.getRequestURI().getRawQuery()).getOrDefault("format", "csv");
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTransactionException("Unknown export format " + format + ", expected csv or ndjson");
+        }
+        VehicleManager.TransactionQuery query = query(exchange);
+
+        exchange.getResponseHeaders().set("Content-Type", exportFormat.getContentType() + "; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            query.export(out, exportFormat);
+        }
+    }
+
+    /**
+     * Build a transaction query from the request's query string parameters
+     */
+    private VehicleManager.TransactionQuery query(HttpExchange exchange) {
+        Map<String, String> params = parseQueryString(exchange.getRequestURI().getRawQuery());
+        VehicleManager.TransactionQuery query = manager.getTransactions();
+        if (params.containsKey("id")) {
+            query.withID(parseId(params.get("id")));
+        }
+        if (params.containsKey("email")) {
+            query.withEmail(params.get("email"));
+        }
+        if (params.containsKey("state")) {
+            try {
+                query.withState(TransactionState.valueOf(params.get("state").toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidTransactionException("Unknown transaction state " + params.get("state"));
+            }
+        }
+        if (params.containsKey("lastName")) {
+            query.withLastNamePrefix(params.get("lastName"));
+        }
+        if (params.containsKey("emailDomain")) {
+            query.withEmailDomain(params.get("emailDomain"));
+        }
+        if (params.containsKey("phone")) {
+            query.withPhonePrefix(params.get("phone"));
+        }
+        if (params.containsKey("addressState")) {
+            query.withAddressState(params.get("addressState"));
+        }
+        if (params.containsKey("zip")) {
+            query.withZip(params.get("zip"));
+        }
+        if (params.containsKey("city")) {
+            query.withCity(params.get("city"));
+        }
+        if (params.containsKey("country")) {
+            query.withCountry(params.get("country"));
+        }
+        if (params.containsKey("type")) {
+            TransactionFilter types = null;
+            for (String type : params.get("type").split(",")) {
+                types = types == null ? TransactionFilter.type(type) : types.or(TransactionFilter.type(type));
+            }
+            query.where(types);
+        }
+        if (params.containsKey("vehicleType")) {
+            try {
+                VehicleType type = VehicleType.valueOf(params.get("vehicleType").toUpperCase(Locale.ROOT));
+                query.where(TransactionFilter.vehicleType(type));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidTransactionException("Unknown vehicle type " + params.get("vehicleType"));
+            }
+        }
+        if (params.containsKey("minPrice") || params.containsKey("maxPrice")) {
+            query.where(TransactionFilter.priceBetween(parsePrice(params.get("minPrice"), Float.NEGATIVE_INFINITY),
+                    parsePrice(params.get("maxPrice"), Float.POSITIVE_INFINITY)));
+        }
+        if (params.containsKey("sort")) {
+            Comparator<Transaction> order = TransactionOrder.parse(params.get("sort"));
+            if (order == null) {
+                throw new InvalidTransactionException("Can't sort by " + params.get("sort")
+                        + ", expected id, startDate, activationDate or price");
+            }
+            query.orderBy(order);
+        }
+        if (params.containsKey("limit")) {
+            try {
+                int limit = Integer.parseInt(params.get("limit"));
+                if (limit < 0) {
+                    throw new NumberFormatException();
+                }
+                query.limit(limit);
+            } catch (NumberFormatException e) {
+                throw new InvalidTransactionException("limit must be a number of at least 0, got " + params.get("limit"));
+            }
+        }
+        if (Boolean.parseBoolean(params.get("archived"))) {
+            query.includeArchived();
+        }
+        if (params.containsKey("startDate")) {
+            try {
+                query.withStartDate(new Date(Long.parseLong(params.get("startDate"))));
+            } catch (NumberFormatException e) {
+                throw new InvalidTransactionException("startDate must be in epoch milliseconds");
+            }
+        }
+        return query;
+    }
+
+    private VehicleQuery findVehicles(HttpExchange exchange) {
+        Map<String, String> params = parseQueryString(exchange.getRequestURI().getRawQuery());
+        VehicleQuery query = manager.findVehicles();
+        if (params.containsKey("type")) {
+            String[] names = params.get("type").split(",");
+            VehicleType[] types = new VehicleType[names.length];
+            for (int i = 0; i < names.length; i++) {
+                try {
+                    types[i] = VehicleType.valueOf(names[i].trim().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new InvalidVehicleException("Unknown vehicle type " + names[i]);
+                }
+            }
+            query.withType(types);
+        }
+        if (params.containsKey("make")) {
+            query.withMake(params.get("make").split(","));
+        }
+        if (params.containsKey("model")) {
+            query.withModel(params.get("model").split(","));
+        }
+        if (params.containsKey("minYear") || params.containsKey("maxYear")) {
+            query.withYearBetween(parseYear(params.get("minYear"), Integer.MIN_VALUE),
+                    parseYear(params.get("maxYear"), Integer.MAX_VALUE));
+        }
+        if (params.containsKey("minPrice") || params.containsKey("maxPrice")) {
+            query.withPriceBetween(parsePrice(params.get("minPrice"), Float.NEGATIVE_INFINITY),
+                    parsePrice(params.get("maxPrice"), Float.POSITIVE_INFINITY));
+        }
+        if ("price".equals(params.get("sort"))) {
+            query.orderByPrice();
+        }
+        return query;
+    }
+
+    private ArrayList<Vehicle> findAvailable(HttpExchange exchange) {
+        Map<String, String> params = parseQueryString(exchange.getRequestURI().getRawQuery());
+        VehicleType type = null;
+        if (params.containsKey("type")) {
+            try {
+                type = VehicleType.valueOf(params.get("type").toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidVehicleException("Unknown vehicle type " + params.get("type"));
+            }
+        }
+        try {
+            Date from = new Date(Long.parseLong(params.get("from")));
+            int days = Integer.parseInt(params.get("days"));
+            if (days < 1) {
+                throw new NumberFormatException();
+            }
+            return manager.findAvailable(type, from, days);
+        } catch (NumberFormatException e) {
+            throw new InvalidVehicleException("from must be in epoch milliseconds and days a number of at least 1");
+        }
+    }
+
+    private int parseYear(String year, int otherwise) {
+        if (year == null) {
+            return otherwise;
+        }
+        try {
+            return Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            throw new InvalidVehicleException("Year must be a number, got " + year);
+        }
+    }
+
+    private Transaction readTransaction(HttpExchange exchange) throws IOException {
+        Transaction transaction = VehicleManager.gson.fromJson(readBody(exchange), Transaction.class);
+        if (transaction == null || transaction.getVehicle() == null) {
+            throw new InvalidTransactionException("Request body must contain a transaction with a vehicle");
+        }
+
+        // Use the manager's copy of the vehicle, which also works out the price instead of trusting the client's
+        String vin = transaction.getVehicle().getVin();
+        Vehicle vehicle = manager.getVehicles().stream().filter(v -> v.getVin().equals(vin)).findFirst()
+                .orElseThrow(() -> new InvalidVehicleException("No vehicle with VIN " + vin + " in list of available vehicles"));
+        transaction.setVehicle(vehicle);
+        return transaction;
+    }
+
+    private float parsePrice(String price, float otherwise) {
+        if (price == null) {
+            return otherwise;
+        }
+        try {
+            return Float.parseFloat(price);
+        } catch (NumberFormatException e) {
+            throw new InvalidTransactionException("Price must be a number, got " + price);
+        }
+    }
+
+    private int parseId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new InvalidTransactionException("Transaction ID must be a number, got " + id);
+        }
+    }
+
+    private static Map<String, String> parseQueryString(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Run a route handler, turning the manager's exceptions into the matching HTTP status codes. Contexts match any
+     * path starting with their name, so paths whose first segment isn't exactly the resource are turned away here
+     */
+    private void handle(HttpExchange exchange, String resource, Route route) {
+        try {
+            // Split "/transactions/5/activate" into ["transactions", "5", "activate"]
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+            if (!path[0].equals(resource)) {
+                sendNotFound(exchange);
+                return;
+            }
+            route.handle(exchange, path);
+        } catch (InvalidTransactionException | InvalidVehicleException | JsonParseException e) {
+            trySendError(exchange, 400, e.getMessage());
+        } catch (InvalidOperationException e) {
+            trySendError(exchange, 500, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            trySendError(exchange, 500, "Unexpected error: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        // Queried transactions lose their type label on load, put it back so clients can tell them apart
+        if (body instanceof Transaction) {
+            ((Transaction) body).labelType();
+        } else if (body instanceof Iterable) {
+            for (Object item : (Iterable<?>) body) {
+                if (item instanceof Transaction) {
+                    ((Transaction) item).labelType();
+                }
+            }
+        }
+
+        byte[] bytes = VehicleManager.gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Map<String, String> body = new HashMap<>();
+        body.put("error", message);
+        sendJson(exchange, status, body);
+    }
+
+    private void sendNotFound(HttpExchange exchange) throws IOException {
+        sendError(exchange, 404, "No such resource " + exchange.getRequestURI().getPath());
+    }
+
+    private void trySendError(HttpExchange exchange, int status, String message) {
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException | IllegalStateException e) {
+            // Headers already went out or the client has gone away, nothing more we can tell it
+        }
+    }
+
+    private interface Route {
+        void handle(HttpExchange exchange, String[] path) throws IOException;
+    }
+
+    /**
+     * Start a server on the default data files. Arguments are the port and the number of request threads
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        // Without TCP_NODELAY small keep-alive responses sit behind the client's delayed ACK for ~40ms each. The JDK
+        // reads this once for the whole process, so it is only set here, where this is the process's only server
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        VehicleManager manager = new VehicleManager();
+        manager.getScheduler().start();
+        VehicleManagerServer server = new VehicleManagerServer(manager, port, threads);
+        server.start();
+        System.out.println("Vehicle manager listening on port " + server.getPort() + " with " + threads + " threads");
+    }
+}
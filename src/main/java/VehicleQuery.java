@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Search over the vehicle catalog by type, make, model, year and price, got from VehicleManager.findVehicles:
+ *
+ *   manager.findVehicles().withType(VehicleType.SUV, VehicleType.SEDAN).withYearBetween(2015, 2020)
+ *           .withPriceBetween(5000, 20000).orderByPrice().asList()
+ *
+ * Each call adds a condition that must also hold, and the values given to one call are alternatives. Conditions are
+ * answered from the catalog's VehicleIndex and combined with bitwise AND and OR, so no vehicle is looked at until the
+ * matches are collected. Make and model ignore case.
+ */
+public class VehicleQuery {
+
+    private final VehicleIndex index;
+    private final List<BitSet> conditions = new ArrayList<>();
+    private boolean byPrice;
+
+    VehicleQuery(VehicleIndex index) {
+        this.index = index;
+    }
+
+    public VehicleQuery withType(VehicleType... types) {
+        conditions.add(index.types(Arrays.asList(types)));
+        return this;
+    }
+
+    public VehicleQuery withMake(String... makes) {
+        conditions.add(index.makes(Arrays.asList(makes)));
+        return this;
+    }
+
+    public VehicleQuery withModel(String... models) {
+        conditions.add(index.models(Arrays.asList(models)));
+        return this;
+    }
+
+    /**
+     * Vehicles from one year to another, both included
+     */
+    public VehicleQuery withYearBetween(int from, int to) {
+        conditions.add(index.years(from, to));
+        return this;
+    }
+
+    /**
+     * Vehicles priced from one price to another, both included
+     */
+    public VehicleQuery withPriceBetween(float min, float max) {
+        conditions.add(index.prices(min, max));
+        return this;
+    }
+
+    /**
+     * Return the matches cheapest first instead of in catalog order, read off the price index rather than sorted
+     */
+    public VehicleQuery orderByPrice() {
+        this.byPrice = true;
+        return this;
+    }
+
+    /**
+     * Number of vehicles matching every condition
+     */
+    public int count() {
+        return matches().cardinality();
+    }
+
+    /**
+     * Return the vehicles matching every condition, in catalog order unless orderByPrice was used
+     */
+    public ArrayList<Vehicle> asList() {
+        BitSet matches = matches();
+        ArrayList<Vehicle> vehicles = new ArrayList<Vehicle>(matches.cardinality());
+        if (byPrice) {
+            for (int position : index.positionsByPrice()) {
+                if (matches.get(position)) {
+                    vehicles.add(index.get(position));
+                }
+            }
+        } else {
+            for (int position = matches.nextSetBit(0); position >= 0; position = matches.nextSetBit(position + 1)) {
+                vehicles.add(index.get(position));
+            }
+        }
+        return vehicles;
+    }
+
+    private BitSet matches() {
+        BitSet matches = new BitSet(index.size());
+        matches.set(0, index.size());
+        for (BitSet condition : conditions) {
+            matches.and(condition);
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local load test for VehicleManagerServer. Starts from N client threads hammering a running server with a mix of
+ * vehicle and transaction queries over keep-alive connections, then reports throughput and latency percentiles.
+ *
+ * Usage: HttpLoadTestClient [baseUrl] [threads] [seconds] [writePercent]
+ * With no base URL given, an in-process server is started on the default data files.
+ */
+public class HttpLoadTestClient {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 && !args[0].isEmpty() ? args[0] : null;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        VehicleManagerServer server = null;
+        if (baseUrl == null) {
+            server = new VehicleManagerServer(new VehicleManager(), 0, Runtime.getRuntime().availableProcessors());
+            server.start();
+            baseUrl = "http://localhost:" + server.getPort();
+        }
+
+        String base = baseUrl;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<LatencyRecorder> recorders = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        int[] errors = new int[threads];
+
+        for (int t = 0; t < threads; t++) {
+            LatencyRecorder recorder = new LatencyRecorder();
+            recorders.add(recorder);
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        int roll = random.nextInt(100);
+                        int status;
+                        if (roll < writePercent) {
+                            // Cancelling an unknown ID exercises the write path without changing the data
+                            status = request(base + "/transactions/" + (-1 - random.nextInt(1000)), "DELETE");
+                        } else if (roll % 2 == 0) {
+                            status = request(base + "/transactions?state=ACTIVE", "GET");
+                        } else {
+                            status = request(base + "/vehicles", "GET");
+                        }
+                        if (status >= 500) {
+                            errors[worker]++;
+                        }
+                    } catch (IOException e) {
+                        errors[worker]++;
+                    }
+                    recorder.record(System.nanoTime() - start);
+                }
+            });
+            workers.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        if (server != null) {
+            server.stop();
+        }
+
+        LatencyRecorder total = new LatencyRecorder();
+        recorders.forEach(total::merge);
+        int errorCount = 0;
+        for (int e : errors) {
+            errorCount += e;
+        }
+        System.out.printf("threads=%d duration=%ds throughput=%.0f req/s errors=%d%n", threads, seconds,
+                total.getCount() / (double) seconds, errorCount);
+        System.out.println(total.summary());
+    }
+
+    /**
+     * Make one request and read the response fully, which lets HttpURLConnection reuse the connection
+     */
+    private static int request(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                in.readAllBytes();
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Arrays;
+
+/**
+ * Collects request latencies for the load testing tools and reports percentiles. Each worker thread should record into
+ * its own instance and merge them at the end, recording isn't synchronized.
+ */
+public class LatencyRecorder {
+
+    private long[] nanos = new long[1024];
+    private int count;
+
+    public void record(long latencyNanos) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, nanos.length * 2);
+        }
+        nanos[count++] = latencyNanos;
+    }
+
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.nanos[i]);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Latency at the given percentile (0-100) in microseconds
+     */
+    public double percentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1000.0;
+    }
+
+    /**
+     * One line summary of the usual percentiles
+     */
+    public String summary() {
+        return String.format("count=%d p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count, percentileMicros(50),
+                percentileMicros(99), percentileMicros(99.9), percentileMicros(100));
+    }
+}
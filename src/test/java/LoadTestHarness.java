@@ -0,0 +1,180 @@
+import exceptions.InvalidTransactionException;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Macro load test for VehicleManager. Generates a data set with WorkloadGenerator, then drives a mix of add, update,
+ * activate, cancel and query operations against one manager from several threads for a fixed time, and reports
+ * throughput, latency percentiles per operation and the allocation rate of the worker threads.
+ *
+ * Usage: LoadTestHarness [vehicles] [customers] [transactions] [threads] [seconds] [mix]
+ * where mix is a comma separated list like add=5,update=5,activate=5,cancel=5,query=80
+ */
+public class LoadTestHarness {
+
+    enum Operation {
+        ADD, UPDATE, ACTIVATE, CANCEL, QUERY
+    }
+
+    public static void main(String[] args) throws Exception {
+        int vehicleCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int customerCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int transactionCount = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        Map<Operation, Integer> mix = parseMix(args.length > 5 ? args[5] : "add=5,update=5,activate=5,cancel=5,query=80");
+
+        // Build the data set in a scratch directory so the real data files are left alone
+        File directory = Files.createTempDirectory("vehicle-load").toFile();
+        File vehiclesFile = new File(directory, "vehicles.json");
+        File transactionsFile = new File(directory, "transactions.json");
+        WorkloadGenerator generator = new WorkloadGenerator(42);
+        List<Vehicle> vehicles = generator.generateVehicles(vehicleCount);
+        List<Customer> customers = generator.generateCustomers(customerCount);
+        WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles,
+                generator.generateTransactions(transactionCount, 1, vehicles, customers));
+
+        long loadStart = System.nanoTime();
+        VehicleManager manager = new VehicleManager(vehiclesFile, transactionsFile);
+        manager.getTransactions().withID(0).asList();
+        System.out.printf("Loaded %d vehicles and %d transactions in %.1fms%n", vehicleCount, transactionCount,
+                (System.nanoTime() - loadStart) / 1e6);
+
+        AtomicLong refused = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Map<Operation, LatencyRecorder>> results = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        long[] allocated = new long[threads];
+
+        for (int t = 0; t < threads; t++) {
+            Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values()) {
+                recorders.put(operation, new LatencyRecorder());
+            }
+            results.add(recorders);
+
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                WorkloadGenerator local = new WorkloadGenerator(1000 + worker);
+                Random random = local.getRandom();
+                long allocatedBefore = allocatedBytes();
+
+                while (System.nanoTime() < deadline) {
+                    Operation operation = pick(mix, random);
+                    long start = System.nanoTime();
+                    try {
+                        run(operation, manager, local, vehicles, customers);
+                    } catch (InvalidTransactionException e) {
+                        // Activating or updating something that isn't in the right state is part of the workload
+                        refused.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                    recorders.get(operation).record(System.nanoTime() - start);
+                }
+                allocated[worker] = allocatedBytes() - allocatedBefore;
+            }, "load-" + t);
+            workers.add(thread);
+        }
+
+        workers.forEach(Thread::start);
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        LatencyRecorder total = new LatencyRecorder();
+        System.out.printf("threads=%d duration=%ds mix=%s%n", threads, seconds, mix);
+        for (Operation operation : Operation.values()) {
+            LatencyRecorder merged = new LatencyRecorder();
+            results.forEach(r -> merged.merge(r.get(operation)));
+            total.merge(merged);
+            if (merged.getCount() > 0) {
+                System.out.printf("  %-8s %s%n", operation, merged.summary());
+            }
+        }
+        long allocatedTotal = 0;
+        for (long bytes : allocated) {
+            allocatedTotal += bytes;
+        }
+        System.out.printf("throughput=%.0f ops/s refused=%d errors=%d%n", total.getCount() / (double) seconds,
+                refused.get(), errors.get());
+        System.out.printf("allocation=%.1f MB/s (%.1f KB/op)%n", allocatedTotal / 1e6 / seconds,
+                total.getCount() == 0 ? 0 : allocatedTotal / 1e3 / total.getCount());
+    }
+
+    private static void run(Operation operation, VehicleManager manager, WorkloadGenerator generator,
+                            List<Vehicle> vehicles, List<Customer> customers) {
+        Random random = generator.getRandom();
+        int knownId = 1 + random.nextInt(manager.getIdAllocator().peek() - 1);
+
+        switch (operation) {
+            case ADD:
+                // New drafts start in the future so later activations have something to work with
+                manager.addTransaction(generator.generateDraft(manager.nextTransactionId(),
+                        customers.get(random.nextInt(customers.size())), vehicles.get(random.nextInt(vehicles.size()))));
+                break;
+            case UPDATE:
+                List<Transaction> found = manager.getTransactions().withID(knownId).asList();
+                if (!found.isEmpty()) {
+                    found.get(0).setCustomer(customers.get(random.nextInt(customers.size())));
+                    manager.updateTransaction(found.get(0));
+                }
+                break;
+            case ACTIVATE:
+                manager.activateTransaction(knownId);
+                break;
+            case CANCEL:
+                manager.cancelTransaction(knownId);
+                break;
+            case QUERY:
+                if (random.nextBoolean()) {
+                    manager.getTransactions().withState(TransactionState.ACTIVE).asList();
+                } else {
+                    manager.getTransactions().withEmail(customers.get(random.nextInt(customers.size())).getEmail())
+                            .asList();
+                }
+                break;
+        }
+    }
+
+    private static Operation pick(Map<Operation, Integer> mix, Random random) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        return Operation.QUERY;
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.split("=");
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or 0 if the JVM can't tell us
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how long an unindexed query takes over a large in-memory set of transactions, with its filtering split
+ * over pools of different sizes. Each setting is run several times after a warm up and the median is reported.
+ *
+ * The query filters on transaction state and city, neither of which has an index, so every transaction is checked
+ * and only drafts in one city come back. That keeps most of the time in the filtering rather than copying out results.
+ *
+ * Usage: QueryBenchmark [transactions] [runs] [threads...]
+ * with the thread counts defaulting to 1, 2, 4 and so on up to the number of cores
+ */
+public class QueryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactionCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            threadCounts.add(Integer.parseInt(args[i]));
+        }
+        if (threadCounts.isEmpty()) {
+            for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                threadCounts.add(threads);
+            }
+        }
+
+        File directory = Files.createTempDirectory("vehicle-query").toFile();
+        File vehiclesFile = new File(directory, "vehicles.json");
+        File transactionsFile = new File(directory, "transactions.json");
+        WorkloadGenerator generator = new WorkloadGenerator(42);
+        List<Vehicle> vehicles = generator.generateVehicles(Math.max(100, transactionCount / 20));
+        List<Customer> customers = generator.generateCustomers(Math.max(100, transactionCount / 5));
+        WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles,
+                generator.generateTransactions(transactionCount, 1, vehicles, customers));
+        String city = customers.get(0).getMailingAddress().getCity();
+
+        VehicleManager manager = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 1);
+        int matches = manager.getTransactions().withState(TransactionState.DRAFT).withCity(city).sequential()
+                .asList().size();
+        System.out.printf("%d transactions, %d matching, %d cores%n", transactionCount, matches,
+                Runtime.getRuntime().availableProcessors());
+
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            ForkJoinPool pool = threads == 1 ? null : new ForkJoinPool(threads);
+            try {
+                // Warm up the JIT on this setting's path before timing it
+                for (int i = 0; i < 3; i++) {
+                    query(manager, city, pool);
+                }
+
+                double[] millis = new double[runs];
+                for (int run = 0; run < runs; run++) {
+                    millis[run] = query(manager, city, pool);
+                }
+                Arrays.sort(millis);
+                double median = millis[runs / 2];
+                if (baseline == 0) {
+                    baseline = median;
+                }
+                System.out.printf("threads=%-3d median=%8.2fms min=%8.2fms speedup=%.2fx%n", threads, median,
+                        millis[0], baseline / median);
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Time to run the query once, in milliseconds. The manager has no query cache, so every run does the full scan
+     */
+    private static double query(VehicleManager manager, String city, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        manager.getTransactions().withState(TransactionState.DRAFT).withCity(city).withPool(pool).asList();
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long a VehicleManager takes to come up with both data files loaded, for a range of loader thread
+ * counts. Each setting is run several times after a warm up and the median is reported.
+ *
+ * Usage: StartupBenchmark [transactions] [runs] [threads...]
+ * with the thread counts defaulting to 1, 2, 4 and so on up to the number of cores
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int transactionCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            threadCounts.add(Integer.parseInt(args[i]));
+        }
+        if (threadCounts.isEmpty()) {
+            for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                threadCounts.add(threads);
+            }
+        }
+
+        File directory = Files.createTempDirectory("vehicle-startup").toFile();
+        File vehiclesFile = new File(directory, "vehicles.json");
+        File transactionsFile = new File(directory, "transactions.json");
+        WorkloadGenerator generator = new WorkloadGenerator(42);
+        List<Vehicle> vehicles = generator.generateVehicles(Math.max(100, transactionCount / 20));
+        WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles,
+                generator.generateTransactions(transactionCount, 1, vehicles,
+                        generator.generateCustomers(Math.max(100, transactionCount / 5))));
+        System.out.printf("%d transactions, %.1f MB on disk, %d cores%n", transactionCount,
+                (vehiclesFile.length() + transactionsFile.length()) / 1e6, Runtime.getRuntime().availableProcessors());
+
+        // Warm up the JIT on the single threaded path so the first setting measured isn't penalised
+        for (int i = 0; i < 2; i++) {
+            start(vehiclesFile, transactionsFile, 1);
+        }
+
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            double[] millis = new double[runs];
+            for (int run = 0; run < runs; run++) {
+                millis[run] = start(vehiclesFile, transactionsFile, threads);
+            }
+            Arrays.sort(millis);
+            double median = millis[runs / 2];
+            if (baseline == 0) {
+                baseline = median;
+            }
+            System.out.printf("threads=%-3d median=%8.1fms min=%8.1fms speedup=%.2fx%n", threads, median, millis[0],
+                    baseline / median);
+        }
+    }
+
+    /**
+     * Time to construct a manager and have the transactions in memory, in milliseconds
+     */
+    private static double start(File vehiclesFile, File transactionsFile, int threads) {
+        long start = System.nanoTime();
+        VehicleManager manager = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), threads);
+
+        // A no-op query, which loads the transactions if the constructor didn't already
+        manager.getTransactions().withID(0).asList();
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,148 @@
+import exceptions.InvalidTransactionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestAsyncVehicleManager {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+    }
+
+    /**
+     * Check that operations run through the facade and complete their futures with the results
+     */
+    @Test
+    void testOperationsComplete() throws Exception {
+        try (AsyncVehicleManager async = new AsyncVehicleManager(manager, 2, 10,
+                AsyncVehicleManager.SaturationPolicy.REJECT)) {
+            async.addVehicle(vehicle).get(5, TimeUnit.SECONDS);
+            async.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                    new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 3)).get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, async.getVehicles().get(5, TimeUnit.SECONDS).size());
+            assertEquals(1, async.query(q -> q.withID(1)).get(5, TimeUnit.SECONDS).size());
+
+            // Failures from the manager come back through the future
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> async.activateTransaction(999).get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof InvalidTransactionException);
+        }
+    }
+
+    /**
+     * Check that operations past the pool and queue capacity are rejected rather than piling up
+     */
+    @Test
+    void testRejectWhenSaturated() throws Exception {
+        try (AsyncVehicleManager async = new AsyncVehicleManager(manager, 1, 1,
+                AsyncVehicleManager.SaturationPolicy.REJECT)) {
+            CountDownLatch release = new CountDownLatch(1);
+
+            // One operation holds the only thread and a second waits in the queue
+            CompletableFuture<Boolean> running = async.supply(m -> await(release));
+            CompletableFuture<Boolean> queued = async.supply(m -> await(release));
+
+            CompletableFuture<String> rejected = async.supply(m -> "should not run");
+            ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertEquals(1, async.getRejectedCount());
+
+            // Once the work drains there is room again
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+            async.getVehicles().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Check that operations past capacity under the WAIT policy are held back without blocking the caller, and run in
+     * order once there is room
+     */
+    @Test
+    void testWaitWhenSaturated() throws Exception {
+        try (AsyncVehicleManager async = new AsyncVehicleManager(manager, 1, 1,
+                AsyncVehicleManager.SaturationPolicy.WAIT)) {
+            CountDownLatch release = new CountDownLatch(1);
+            List<Integer> order = new CopyOnWriteArrayList<>();
+
+            CompletableFuture<Boolean> running = async.supply(m -> await(release));
+            CompletableFuture<Boolean> queued = async.supply(m -> await(release));
+
+            // Returned straight away even though there is no room yet
+            CompletableFuture<Boolean> first = async.supply(m -> order.add(1));
+            CompletableFuture<Boolean> second = async.supply(m -> order.add(2));
+            assertEquals(2, async.getWaitingCount());
+            assertFalse(first.isDone());
+
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList(1, 2), order);
+            assertEquals(0, async.getWaitingCount());
+            assertEquals(0, async.getRejectedCount());
+        }
+    }
+
+    /**
+     * Check that the WAIT policy only holds back as many operations as it was given room for, and rejects the rest
+     */
+    @Test
+    void testWaitingIsBounded() throws Exception {
+        try (AsyncVehicleManager async = new AsyncVehicleManager(manager, 1, 0,
+                AsyncVehicleManager.SaturationPolicy.WAIT, 2)) {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> running = async.supply(m -> await(release));
+            CompletableFuture<Boolean> first = async.supply(m -> true);
+            CompletableFuture<Boolean> second = async.supply(m -> true);
+
+            CompletableFuture<Boolean> overflow = async.supply(m -> true);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> overflow.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertEquals(2, async.getWaitingCount());
+            assertEquals(1, async.getRejectedCount());
+
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(0, async.getWaitingCount());
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
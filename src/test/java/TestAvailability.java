@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestAvailability {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle suvA = new Vehicle("Jeep", "Cherokee", "AAAAAAAAAAAAAAAAA", 2019, 30000, VehicleType.SUV);
+    private Vehicle suvB = new Vehicle("Jeep", "Wrangler", "BBBBBBBBBBBBBBBBB", 2020, 35000, VehicleType.SUV);
+    private Vehicle suvC = new Vehicle("Ford", "Explorer", "CCCCCCCCCCCCCCCCC", 2018, 28000, VehicleType.SUV);
+    private Vehicle sedan = new Vehicle("Ford", "Focus", "DDDDDDDDDDDDDDDDD", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(suvA);
+        manager.addVehicle(suvB);
+        manager.addVehicle(suvC);
+        manager.addVehicle(sedan);
+
+        // A is rented on the 10th to the 15th, B is leased for a month from the 1st, C is bought on the 20th
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), suvA, TestUtils.day(10), 5));
+        manager.addTransaction(new LeaseTransaction(2, TestUtils.getTestCustomer(), suvB, TestUtils.day(1), 1));
+        manager.addTransaction(new BuyTransaction(3, TestUtils.getTestCustomer(), suvC, TestUtils.day(20), 0));
+    }
+
+    private static List<String> vins(List<Vehicle> vehicles) {
+        List<String> vins = new ArrayList<>();
+        vehicles.forEach(v -> vins.add(v.getVin()));
+        return vins;
+    }
+
+    /**
+     * Check which vehicles are free around rentals, leases and buys, with bookings ending as the range starts
+     */
+    @Test
+    void testFindAvailable() throws IOException {
+        assertEquals(vins(Arrays.asList(suvC)), vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(12), 2)));
+        assertEquals(vins(Arrays.asList(suvA, suvC)),
+                vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(15), 3)));
+        assertEquals(vins(Arrays.asList(suvA)), vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(18), 5)));
+        assertEquals(vins(Arrays.asList(sedan)), vins(manager.findAvailable(VehicleType.SEDAN, TestUtils.day(12), 2)));
+        assertEquals(vins(Arrays.asList(suvC, sedan)),
+                vins(manager.findAvailable(null, TestUtils.day(12), TestUtils.day(14))));
+
+        // The lease runs to January 1st, so B is free again from then
+        assertEquals(vins(Arrays.asList(suvA, suvB)), vins(manager.findAvailable(VehicleType.SUV,
+                new GregorianCalendar(2031, Calendar.JANUARY, 1).getTime(), 7)));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.findAvailable(VehicleType.SUV, TestUtils.day(5), TestUtils.day(5)));
+    }
+
+    /**
+     * Check that changing, cancelling and adding transactions moves bookings straight away
+     */
+    @Test
+    void testFollowsChanges() throws IOException {
+        RentTransaction moved = new RentTransaction(1, TestUtils.getTestCustomer(), suvA, TestUtils.day(3), 2);
+        manager.updateTransaction(moved);
+        assertEquals(vins(Arrays.asList(suvA, suvC)),
+                vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(12), 2)));
+        assertEquals(1, manager.getBookings(suvA.getVin(), TestUtils.day(1), TestUtils.day(31)).size());
+        assertEquals(TestUtils.day(3),
+                manager.getBookings(suvA.getVin(), TestUtils.day(1), TestUtils.day(31)).get(0).getStartDate());
+
+        manager.cancelTransaction(2);
+        assertEquals(vins(Arrays.asList(suvB)), vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(3), 20)));
+
+        // A short rental after a long one still sees the long one overlapping
+        manager.addTransaction(new LeaseTransaction(4, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 6));
+        manager.addTransaction(new RentTransaction(5, TestUtils.getTestCustomer(), sedan, TestUtils.day(20), 1));
+        assertEquals(2, manager.getBookings(sedan.getVin(), TestUtils.day(20), TestUtils.day(21)).size());
+        assertEquals(0, manager.findAvailable(VehicleType.SEDAN, TestUtils.day(25), 1).size());
+    }
+
+    /**
+     * Check that drafts stop holding a vehicle once their start has passed without them being activated, while active
+     * buys keep it for good and drafts still in the future keep holding it
+     */
+    @Test
+    void testAbandonedDraftsFreeVehicles() throws IOException {
+        manager = TestUtils.emptyManager(tempDir, Clock.fixed(TestUtils.day(12).toInstant(), ZoneOffset.UTC));
+        manager.addVehicle(suvA);
+        manager.addVehicle(suvB);
+        manager.addVehicle(suvC);
+        manager.addVehicle(sedan);
+
+        // A's draft started on the 10th and can no longer be activated; B's draft starts on the 20th and still can
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), suvA, TestUtils.day(10), 5));
+        manager.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), suvB, TestUtils.day(20), 3));
+        // C is sold from the 20th; the sedan's sale on the 5th was never confirmed
+        manager.addTransaction(new BuyTransaction(3, TestUtils.getTestCustomer(), suvC, TestUtils.day(20), 0));
+        manager.activateTransaction(3);
+        manager.addTransaction(new BuyTransaction(4, TestUtils.getTestCustomer(), sedan, TestUtils.day(5), 0));
+
+        assertEquals(vins(Arrays.asList(suvA, suvB, suvC)),
+                vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(12), 2)));
+        assertTrue(manager.getBookings(suvA.getVin(), TestUtils.day(1), TestUtils.day(31)).isEmpty());
+        assertEquals(vins(Arrays.asList(suvA)), vins(manager.findAvailable(VehicleType.SUV, TestUtils.day(21), 1)));
+        assertEquals(0, manager.findAvailable(VehicleType.SUV,
+                new GregorianCalendar(2031, Calendar.JUNE, 1).getTime(), 7).stream()
+                .filter(v -> v.getVin().equals(suvC.getVin())).count());
+        assertEquals(vins(Arrays.asList(sedan)), vins(manager.findAvailable(VehicleType.SEDAN, TestUtils.day(25), 1)));
+    }
+}
@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TestBulkCancel {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(vehicle);
+
+        // Two drafts and an active rental for a, one draft for b
+        Date past = new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime();
+        Date future = new GregorianCalendar(2030, Calendar.DECEMBER, 1).getTime();
+        manager.addTransaction(rentFor(1, "a@test.null", future));
+        manager.addTransaction(rentFor(2, "a@test.null", past));
+        manager.addTransaction(rentFor(4, "b@test.null", future));
+        Transaction active = rentFor(3, "a@test.null", past);
+        active.state = TransactionState.ACTIVE;
+        manager.addTransaction(active);
+    }
+
+    private Transaction rentFor(int id, String email, Date start) {
+        return TestUtils.rentFor(id, TestUtils.getTestCustomer(email), vehicle, start);
+    }
+
+    private List<Integer> ids(List<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        transactions.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+
+    /**
+     * Check that every cancellable match goes in one write, and that the active one past its start date is refused
+     */
+    @Test
+    void testCancelWhere() throws IOException {
+        long sequence = manager.getChangeFeed().getLastSequence();
+
+        CancelSummary summary = manager.cancelWhere(manager.getTransactions().withEmail("a@test.null"));
+
+        assertEquals(List.of(1, 2), ids(summary.getCancelled()));
+        assertEquals(List.of(3), ids(summary.getRefused()));
+        assertEquals(List.of(4, 3), ids(manager.getTransactions().asList()));
+
+        // One cancelled event for each transaction removed
+        assertEquals(sequence + 2, manager.getChangeFeed().getLastSequence());
+    }
+
+    /**
+     * Check purging by an arbitrary predicate, and that nothing matching leaves everything in place
+     */
+    @Test
+    void testPurgeWhere() throws IOException {
+        CancelSummary summary = manager.purgeWhere(t -> t.getId() % 2 == 0);
+        assertEquals(List.of(2, 4), ids(summary.getCancelled()));
+        assertEquals(0, summary.getRefusedCount());
+
+        CancelSummary none = manager.purgeWhere(t -> t.getId() > 100);
+        assertEquals(0, none.getCancelledCount());
+        assertEquals(List.of(1, 3), ids(manager.getTransactions().asList()));
+    }
+}
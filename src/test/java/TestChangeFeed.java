@@ -0,0 +1,121 @@
+import exceptions.InvalidOperationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestChangeFeed {
+
+    @TempDir
+    Path tempDir;
+
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    /**
+     * Listener that collects events into a queue for the test thread to check
+     */
+    private static class CollectingListener implements ChangeListener {
+        final BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onEvent(ChangeEvent event) {
+            events.add(event);
+        }
+
+        ChangeEvent next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Check that changes made through the manager arrive in order with the right types
+     */
+    @Test
+    void testManagerPublishesChanges() throws Exception {
+        VehicleManager manager = TestUtils.emptyManager(tempDir);
+        CollectingListener listener = new CollectingListener();
+        manager.getChangeFeed().subscribe(listener, 16);
+
+        manager.addVehicle(vehicle);
+        Transaction transaction = new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10);
+        manager.addTransaction(transaction);
+        manager.updateTransaction(transaction);
+        manager.cancelTransaction(1);
+
+        assertEquals(ChangeEvent.Type.VEHICLE_ADDED, listener.next().getType());
+        ChangeEvent added = listener.next();
+        assertEquals(ChangeEvent.Type.TRANSACTION_ADDED, added.getType());
+        assertEquals(1, added.getTransaction().getId());
+        assertEquals(ChangeEvent.Type.TRANSACTION_UPDATED, listener.next().getType());
+        ChangeEvent cancelled = listener.next();
+        assertEquals(ChangeEvent.Type.TRANSACTION_CANCELLED, cancelled.getType());
+        assertEquals(4, cancelled.getSequence());
+    }
+
+    /**
+     * Check that a listener that stops requesting gets dropped once its buffer fills, and can resume where it left off
+     */
+    @Test
+    void testOverflowAndResume() throws Exception {
+        ChangeFeed feed = new ChangeFeed(100);
+        CompletableFuture<Long> overflow = new CompletableFuture<>();
+
+        // Only ever asks for two events
+        CollectingListener slow = new CollectingListener() {
+            @Override
+            public void onSubscribe(ChangeFeed.Subscription subscription) {
+                subscription.request(2);
+            }
+
+            @Override
+            public void onOverflow(long lastSequence) {
+                overflow.complete(lastSequence);
+            }
+        };
+        feed.subscribe(slow, 3);
+
+        // Let the two requested events through, then publish more than the buffer holds
+        feed.publish(ChangeEvent.Type.VEHICLE_ADDED, null, vehicle);
+        feed.publish(ChangeEvent.Type.VEHICLE_ADDED, null, vehicle);
+        slow.next();
+        slow.next();
+        for (int i = 0; i < 8; i++) {
+            feed.publish(ChangeEvent.Type.VEHICLE_ADDED, null, vehicle);
+        }
+        long lastSequence = overflow.get(5, TimeUnit.SECONDS);
+        assertEquals(2, lastSequence);
+
+        // Resuming replays everything after the last delivered event
+        CollectingListener resumed = new CollectingListener();
+        feed.subscribe(resumed, 100, lastSequence);
+        for (long expected = 3; expected <= 10; expected++) {
+            assertEquals(expected, resumed.next().getSequence());
+        }
+        assertNull(resumed.events.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Check that resuming from a sequence that has dropped out of the history is refused
+     */
+    @Test
+    void testResumeTooOld() {
+        ChangeFeed feed = new ChangeFeed(5);
+        for (int i = 0; i < 10; i++) {
+            feed.publish(ChangeEvent.Type.VEHICLE_ADDED, null, vehicle);
+        }
+        assertThrows(InvalidOperationException.class,
+                () -> feed.subscribe(new CollectingListener(), 10, 2));
+    }
+}
@@ -0,0 +1,116 @@
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestChecksummedRecords {
+
+    @TempDir
+    Path tempDir;
+
+    private File vehicles;
+    private File transactions;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        vehicles = TestUtils.emptyFile(tempDir, "vehicles.json");
+        transactions = TestUtils.emptyFile(tempDir, "transactions.json");
+
+        VehicleManager manager = new VehicleManager(vehicles, transactions);
+        manager.addVehicle(vehicle);
+        for (int id = 1; id <= 3; id++) {
+            Customer customer = TestUtils.getTestCustomer("customer" + id + "@test.null");
+            manager.addTransaction(TestUtils.rentFor(id, customer, vehicle, TestUtils.day(1)));
+        }
+    }
+
+    /**
+     * Flip a character inside the second transaction's customer email, leaving the json itself valid
+     */
+    private void corruptSecondRecord() throws IOException {
+        List<String> lines = Files.readAllLines(transactions.toPath());
+        lines.set(2, lines.get(2).replace("customer2@", "customerX@"));
+        Files.write(transactions.toPath(), lines);
+    }
+
+    /**
+     * Check that the verifier passes a freshly written file and points at the exact line of a damaged record
+     */
+    @Test
+    void testVerify() throws IOException {
+        DataFileVerifier.Report report = DataFileVerifier.verify(transactions, 2);
+        assertTrue(report.isChecksummed());
+        assertTrue(report.isIntact());
+        assertEquals(3, report.getRecords());
+
+        corruptSecondRecord();
+        report = DataFileVerifier.verify(transactions, 2);
+        assertEquals(3, report.getRecords());
+        assertEquals(List.of(3), report.getCorruptLines());
+    }
+
+    /**
+     * Check that names outside ASCII pass their own checksum when read back, whatever the platform's default charset
+     */
+    @Test
+    void testNonAsciiRoundTrip() throws IOException {
+        String lastName = "\u00c5ngstr\u00f6m \u5c71\u7530";
+        Customer customer = new Customer("Zo\u00eb", lastName, TestUtils.getTestAddress(), "5550000000",
+                "zoe@test.null");
+        new VehicleManager(vehicles, transactions).addTransaction(new RentTransaction(4, customer, vehicle,
+                new GregorianCalendar(2030, Calendar.DECEMBER, 1).getTime(), 3));
+
+        assertTrue(DataFileVerifier.verify(transactions, 1).isIntact());
+        VehicleManager reloaded = new VehicleManager(vehicles, transactions);
+        assertEquals(lastName, reloaded.getTransactions().withID(4).asList().get(0).getCustomer().getLastName());
+    }
+
+    /**
+     * Check that a damaged record fails a normal load, but recovery mode skips it, quarantines it and writes a clean
+     * file the next time anything changes
+     */
+    @Test
+    void testRecovery() throws IOException {
+        corruptSecondRecord();
+
+        VehicleManager strict = new VehicleManager(vehicles, transactions);
+        assertThrows(JsonSyntaxException.class, () -> strict.getTransactions().asList());
+
+        VehicleManager recovering = new VehicleManager(vehicles, transactions, Clock.systemDefaultZone(), 1, true);
+        assertEquals(2, recovering.getTransactions().asList().size());
+        assertEquals(1, recovering.getQuarantinedCount());
+
+        String quarantined = Files.readString(tempDir.resolve("transactions.json.quarantine"));
+        assertTrue(quarantined.contains("customerX@test.null"));
+
+        recovering.cancelTransaction(1);
+        assertTrue(DataFileVerifier.verify(transactions, 1).isIntact());
+        assertEquals(1, new VehicleManager(vehicles, transactions).getTransactions().asList().size());
+    }
+
+    /**
+     * Check that a file from before checksums were added still loads and reports as unchecked
+     */
+    @Test
+    void testLegacyFile() throws IOException {
+        Files.writeString(transactions.toPath(), "[]");
+        DataFileVerifier.Report report = DataFileVerifier.verify(transactions, 1);
+        assertFalse(report.isChecksummed());
+        assertEquals(0, new VehicleManager(vehicles, transactions).getTransactions().asList().size());
+    }
+}
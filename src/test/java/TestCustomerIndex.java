@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestCustomerIndex {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(vehicle);
+        manager.addTransaction(rentFor(1, "Strang", "jake@umgc.edu", "(555) 123-4567"));
+        manager.addTransaction(rentFor(2, "Stranger", "things@mail.umgc.edu", "555-999-0000"));
+        manager.addTransaction(rentFor(3, "Smith", "smith@notumgc.edu", "5551230000"));
+    }
+
+    private Transaction rentFor(int id, String lastName, String email, String phone) {
+        Customer customer = TestUtils.getTestCustomer(lastName, TestUtils.getTestAddress(), phone, email);
+        return TestUtils.rentFor(id, customer, vehicle, TestUtils.day(1));
+    }
+
+    private List<Integer> ids(ArrayList<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        transactions.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+
+    /**
+     * Check each type-ahead filter, including case, subdomains, punctuation and combining with other filters
+     */
+    @Test
+    void testPrefixAndDomainSearch() throws IOException {
+        assertEquals(List.of(1, 2), ids(manager.getTransactions().withLastNamePrefix("stra").asList()));
+        assertEquals(List.of(3), ids(manager.getTransactions().withLastNamePrefix("SM").asList()));
+        assertEquals(List.of(1, 2), ids(manager.getTransactions().withEmailDomain("UMGC.edu").asList()));
+        assertEquals(List.of(2), ids(manager.getTransactions().withEmailDomain("mail.umgc.edu").asList()));
+        assertEquals(List.of(3, 1), ids(manager.getTransactions().withPhonePrefix("555-123").asList()));
+        assertEquals(List.of(3), ids(manager.getTransactions().withPhonePrefix("555123")
+                .withLastNamePrefix("s").withEmail("smith@notumgc.edu").asList()));
+        assertTrue(manager.getTransactions().withLastNamePrefix("x").asList().isEmpty());
+    }
+
+    /**
+     * Check that the index follows cancellations and updates
+     */
+    @Test
+    void testIndexFollowsChanges() throws IOException {
+        manager.cancelTransaction(1);
+        assertEquals(List.of(2), ids(manager.getTransactions().withLastNamePrefix("strang").asList()));
+
+        Transaction smith = manager.getTransactions().withID(3).asList().get(0);
+        smith.getCustomer().setLastName("Strand");
+        manager.updateTransaction(smith);
+        assertEquals(List.of(3, 2), ids(manager.getTransactions().withLastNamePrefix("stran").asList()));
+        assertTrue(manager.getTransactions().withLastNamePrefix("smi").asList().isEmpty());
+    }
+
+    /**
+     * Check that a transaction with no customer simply doesn't match customer searches
+     */
+    @Test
+    void testTransactionWithoutCustomer() throws IOException {
+        manager.addTransaction(rentFor(4, "Strong", "strong@umgc.edu", "5559990000"));
+        Transaction orphan = manager.getTransactions().withID(4).asList().get(0);
+        orphan.setCustomer(null);
+        manager.updateTransaction(orphan);
+
+        assertEquals(List.of(), ids(manager.getTransactions().withEmail("strong@umgc.edu").asList()));
+        assertEquals(List.of(1, 2), ids(manager.getTransactions().withLastNamePrefix("str").asList()));
+        assertEquals(List.of(1, 2), ids(manager.getTransactions().withEmailDomain("umgc.edu").withPhonePrefix("555")
+                .asList()));
+        assertEquals(4, manager.getTransactions().asList().size());
+    }
+
+    /**
+     * Check that removing values prunes the trie without disturbing keys that share a prefix
+     */
+    @Test
+    void testTrieRemoval() {
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.add("abc", "one");
+        trie.add("ab", "two");
+        trie.add("abd", "three");
+        trie.remove("abc", "one");
+        trie.remove("abc", "missing");
+
+        assertEquals(2, trie.size());
+        assertEquals(List.of("two", "three"), trie.withPrefix("a"));
+        assertEquals(List.of("two"), trie.get("ab"));
+        assertTrue(trie.withPrefix("abc").isEmpty());
+    }
+}
@@ -0,0 +1,220 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestDeadlineScheduler {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private MutableClock clock;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private List<Deadline> fired = new ArrayList<>();
+
+    /**
+     * Clock the test can move forward by hand
+     */
+    static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Date start) {
+            now = start.toInstant();
+        }
+
+        void set(Date date) {
+            now = date.toInstant();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        clock = new MutableClock(new GregorianCalendar(2020, Calendar.NOVEMBER, 1).getTime());
+        manager = TestUtils.emptyManager(tempDir, clock);
+        manager.addVehicle(vehicle);
+        manager.getScheduler().addListener((deadline, transaction) -> fired.add(deadline));
+    }
+
+    /**
+     * Check that a draft fires its expiry deadline once the start date passes, and is cancelled if expiry is enabled
+     */
+    @Test
+    void testDraftExpiry() throws IOException {
+        manager.setExpireStaleDrafts(true);
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10));
+
+        // Nothing is due before the start date
+        assertEquals(0, manager.getScheduler().runDue());
+
+        clock.set(new GregorianCalendar(2020, Calendar.DECEMBER, 2).getTime());
+        assertEquals(1, manager.getScheduler().runDue());
+        assertEquals(Deadline.Kind.DRAFT_EXPIRED, fired.get(0).getKind());
+        assertEquals(0, manager.getTransactions().asList().size());
+    }
+
+    /**
+     * Check that the end of an active rental fires only once its days are up, and that cancelling first removes it
+     */
+    @Test
+    void testRentalEnd() throws IOException {
+        // Stored as active directly, activation itself still checks the real date
+        Transaction rental = new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10);
+        rental.state = TransactionState.ACTIVE;
+        manager.addTransaction(rental);
+        Transaction draft = new RentTransaction(2, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 5).getTime(), 10);
+        manager.addTransaction(draft);
+        manager.cancelTransaction(draft);
+
+        Deadline next = manager.getScheduler().peekNext();
+        assertEquals(Deadline.Kind.TRANSACTION_ENDED, next.getKind());
+        assertEquals(new GregorianCalendar(2020, Calendar.DECEMBER, 11).getTime().getTime(), next.getDue());
+
+        clock.set(new GregorianCalendar(2020, Calendar.DECEMBER, 10).getTime());
+        assertEquals(0, manager.getScheduler().runDue());
+        clock.set(new GregorianCalendar(2020, Calendar.DECEMBER, 11).getTime());
+        assertEquals(1, manager.getScheduler().runDue());
+        assertEquals(1, fired.get(0).getTransactionId());
+
+        // Rental stays in the system after it ends, and doesn't fire a second time
+        assertEquals(1, manager.getTransactions().asList().size());
+        assertEquals(0, manager.getScheduler().runDue());
+        assertTrue(fired.size() == 1);
+    }
+
+    /**
+     * Check that editing a rental after its end has fired doesn't fire the end again
+     */
+    @Test
+    void testEditAfterFiredDoesNotRefire() throws IOException {
+        Transaction rental = new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10);
+        rental.state = TransactionState.ACTIVE;
+        manager.addTransaction(rental);
+
+        clock.set(new GregorianCalendar(2020, Calendar.DECEMBER, 12).getTime());
+        assertEquals(1, manager.getScheduler().runDue());
+
+        Transaction edited = manager.getTransactions().withID(1).asList().get(0);
+        edited.setCustomer(TestUtils.getTestCustomer("edited@test.null"));
+        manager.updateTransactionDetails(edited);
+        assertEquals(0, manager.getScheduler().runDue());
+        assertEquals(1, fired.size());
+    }
+
+    /**
+     * Check that cancelled deadlines are cleared out of the queue once they build up, rather than waiting to come due
+     */
+    @Test
+    void testCancelledDeadlinesPurged() throws IOException {
+        for (int id = 1; id <= 10; id++) {
+            manager.addTransaction(new RentTransaction(id, TestUtils.getTestCustomer(), vehicle,
+                    new GregorianCalendar(2030, Calendar.DECEMBER, id).getTime(), 10));
+        }
+        assertEquals(10, manager.getScheduler().queuedCount());
+
+        for (int id = 1; id <= 8; id++) {
+            manager.cancelTransaction(id);
+        }
+        // At most as many cancelled deadlines are left as live ones
+        assertTrue(manager.getScheduler().queuedCount() <= 4);
+        assertEquals(9, manager.getScheduler().peekNext().getTransactionId());
+    }
+
+    /**
+     * Check that the background thread hands a failing listener's error to the listeners and keeps running
+     */
+    @Test
+    void testErrorsReachListeners() throws IOException, InterruptedException {
+        List<RuntimeException> errors = new CopyOnWriteArrayList<>();
+        manager.getScheduler().addListener(new DeadlineListener() {
+            @Override
+            public void onDeadline(Deadline deadline, Transaction transaction) {
+                throw new IllegalStateException("Listener failed");
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                errors.add(error);
+            }
+        });
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10));
+        clock.set(new GregorianCalendar(2020, Calendar.DECEMBER, 2).getTime());
+
+        manager.getScheduler().start();
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (errors.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            manager.getScheduler().stop();
+        }
+        assertEquals("Listener failed", errors.get(0).getMessage());
+        assertEquals(1, fired.size());
+    }
+
+    /**
+     * Check that the background thread waits between attempts while refreshing keeps failing, rather than retrying
+     * straight away
+     */
+    @Test
+    void testBacksOffWhileRefreshFails() throws InterruptedException {
+        DeadlineScheduler scheduler = new DeadlineScheduler(clock, () -> {
+            throw new IllegalStateException("Transactions file unreadable");
+        });
+        List<RuntimeException> errors = new CopyOnWriteArrayList<>();
+        scheduler.addListener(new DeadlineListener() {
+            @Override
+            public void onDeadline(Deadline deadline, Transaction transaction) {
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                errors.add(error);
+            }
+        });
+
+        scheduler.start();
+        try {
+            Thread.sleep(500);
+        } finally {
+            scheduler.stop();
+        }
+        assertEquals(1, errors.size());
+        assertEquals("Transactions file unreadable", errors.get(0).getMessage());
+    }
+}
@@ -0,0 +1,162 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestFleetAnalytics {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle sedanA = new Vehicle("Ford", "Focus", "AAAAAAAAAAAAAAAAA", 2004, 1800, VehicleType.SEDAN);
+    private Vehicle sedanB = new Vehicle("Honda", "Civic", "BBBBBBBBBBBBBBBBB", 2010, 5000, VehicleType.SEDAN);
+    private Vehicle suv = new Vehicle("Jeep", "Cherokee", "CCCCCCCCCCCCCCCCC", 2019, 30000, VehicleType.SUV);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(sedanA);
+        manager.addVehicle(sedanB);
+        manager.addVehicle(suv);
+
+        // Sedan A is double booked on the 3rd, sedan B is booked back to back with A's second rental ending
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), sedanA, TestUtils.day(1), 3));
+        manager.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), sedanA, TestUtils.day(3), 2));
+        manager.addTransaction(new RentTransaction(3, TestUtils.getTestCustomer(), sedanB, TestUtils.day(5), 5));
+
+        // The lease runs past both ends of the window, and buys aren't bookings
+        manager.addTransaction(new LeaseTransaction(4, TestUtils.getTestCustomer(), suv,
+                new GregorianCalendar(2030, Calendar.NOVEMBER, 20).getTime(), 1));
+        manager.addTransaction(new BuyTransaction(5, TestUtils.getTestCustomer(), suv, TestUtils.day(2), 0));
+    }
+
+    /**
+     * Check booked time, gaps and peaks for single vehicles over a ten day window
+     */
+    @Test
+    void testVehicles() throws IOException {
+        FleetAnalytics analytics = manager.utilization(TestUtils.day(1), TestUtils.day(11));
+
+        FleetAnalytics.Usage a = analytics.getVehicle(sedanA.getVin());
+        assertEquals(2, a.getBookings());
+        assertEquals(4 * DAY, a.getBookedMillis());
+        assertEquals(40.0, a.getUtilization(), 0.001);
+        assertEquals(2, a.getPeakConcurrent());
+        assertEquals(TestUtils.day(3), a.getPeakTime());
+        assertEquals(1, a.getIdleGaps().size());
+        assertEquals(TestUtils.day(5), a.getIdleGaps().get(0).getStart());
+        assertEquals(TestUtils.day(11), a.getIdleGaps().get(0).getEnd());
+
+        FleetAnalytics.Usage b = analytics.getVehicle(sedanB.getVin());
+        assertEquals(50.0, b.getUtilization(), 0.001);
+        assertEquals(2, b.getIdleGaps().size());
+        assertEquals(4 * DAY, b.getIdleGaps().get(0).getMillis());
+
+        FleetAnalytics.Usage leased = analytics.getVehicle(suv.getVin());
+        assertEquals(100.0, leased.getUtilization(), 0.001);
+        assertEquals(TestUtils.day(1), leased.getPeakTime());
+        assertEquals(0, leased.getIdleGaps().size());
+
+        assertNull(analytics.getVehicle("unknown"));
+    }
+
+    /**
+     * Check that types and the fleet add up their vehicles' time without counting double bookings twice
+     */
+    @Test
+    void testGroups() throws IOException {
+        FleetAnalytics analytics = manager.utilization(TestUtils.day(1), TestUtils.day(11));
+
+        FleetAnalytics.Usage sedans = analytics.getType(VehicleType.SEDAN);
+        assertEquals(3, sedans.getBookings());
+        assertEquals(9 * DAY, sedans.getBookedMillis());
+        assertEquals(20 * DAY, sedans.getCapacityMillis());
+        assertEquals(45.0, sedans.getUtilization(), 0.001);
+        assertEquals(2, sedans.getPeakConcurrent());
+        assertEquals(1, sedans.getIdleGaps().size());
+        assertEquals(TestUtils.day(10), sedans.getIdleGaps().get(0).getStart());
+
+        FleetAnalytics.Usage trucks = analytics.getType(VehicleType.TRUCK_OR_VAN);
+        assertEquals(0, trucks.getUtilization(), 0.001);
+        assertNull(trucks.getPeakTime());
+
+        assertEquals(19 * DAY, analytics.getFleet().getBookedMillis());
+        assertEquals(30 * DAY, analytics.getFleet().getCapacityMillis());
+        assertEquals(3, analytics.getFleet().getPeakConcurrent());
+
+        // Only the active lease counts when filtering on state
+        manager.activateTransaction(4);
+        FleetAnalytics active = manager.utilization(TestUtils.day(1), TestUtils.day(11), TransactionState.ACTIVE,
+                false);
+        assertEquals(10 * DAY, active.getFleet().getBookedMillis());
+        assertEquals(0, active.getVehicle(sedanA.getVin()).getBookings());
+
+        assertThrows(IllegalArgumentException.class, () -> manager.utilization(TestUtils.day(5), TestUtils.day(5)));
+    }
+
+    /**
+     * Check that sweeping vehicles in parallel gives the same figures as one thread
+     */
+    @Test
+    void testParallelMatchesSequential() throws IOException {
+        File vehiclesFile = tempDir.resolve("generated-vehicles.json").toFile();
+        File transactionsFile = tempDir.resolve("generated-transactions.json").toFile();
+        WorkloadGenerator generator = new WorkloadGenerator(5);
+        List<Vehicle> vehicles = generator.generateVehicles(200);
+        WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles,
+                generator.generateTransactions(ParallelFilter.PARALLEL_THRESHOLD * 2, 1, vehicles,
+                        generator.generateCustomers(500)));
+
+        Date from = new Date(0);
+        Date to = new Date(System.currentTimeMillis() + 5000 * DAY);
+        FleetAnalytics sequential = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 1)
+                .utilization(from, to);
+        FleetAnalytics parallel = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 4)
+                .utilization(from, to);
+
+        assertEquals(sequential.getVehicles().keySet(), parallel.getVehicles().keySet());
+        for (Map.Entry<String, FleetAnalytics.Usage> entry : sequential.getVehicles().entrySet()) {
+            FleetAnalytics.Usage other = parallel.getVehicle(entry.getKey());
+            assertEquals(entry.getValue().getBookedMillis(), other.getBookedMillis());
+            assertEquals(entry.getValue().getPeakConcurrent(), other.getPeakConcurrent());
+            assertEquals(entry.getValue().getIdleGaps().size(), other.getIdleGaps().size());
+        }
+        assertEquals(sequential.getFleet().getBookedMillis(), parallel.getFleet().getBookedMillis());
+    }
+
+    /**
+     * Check that a vehicle loaded without a type still counts for itself and the fleet, just not for any type
+     */
+    @Test
+    void testVehicleWithoutType() throws IOException {
+        Vehicle untyped = new Vehicle("Unknown", "Unknown", "DDDDDDDDDDDDDDDDD", 2000, 1000, null);
+        manager.addVehicle(untyped);
+        manager.addTransaction(new LeaseTransaction(6, TestUtils.getTestCustomer(), untyped, TestUtils.day(1), 1));
+
+        FleetAnalytics analytics = manager.utilization(TestUtils.day(1), TestUtils.day(11));
+        assertEquals(10 * DAY, analytics.getVehicle(untyped.getVin()).getBookedMillis());
+        assertEquals(4 * 10 * DAY, analytics.getFleet().getCapacityMillis());
+
+        int typed = 0;
+        for (FleetAnalytics.Usage usage : analytics.getTypes().values()) {
+            typed += usage.getBookings();
+        }
+        assertEquals(analytics.getFleet().getBookings() - 1, typed);
+    }
+}
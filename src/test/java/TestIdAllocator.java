@@ -0,0 +1,99 @@
+import exceptions.InvalidTransactionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestIdAllocator {
+
+    @TempDir
+    Path tempDir;
+
+    private File vehicles;
+    private File transactions;
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        vehicles = TestUtils.emptyFile(tempDir, "vehicles.json");
+        transactions = TestUtils.emptyFile(tempDir, "transactions.json");
+
+        manager = new VehicleManager(vehicles, transactions);
+        manager.addVehicle(vehicle);
+    }
+
+    private Transaction rentFor(int id, int year) {
+        return new RentTransaction(id, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(year, Calendar.DECEMBER, 1).getTime(), 3);
+    }
+
+    /**
+     * Check that IDs start above everything in the file, archive included, and that a fresh manager picks up from
+     * there too
+     */
+    @Test
+    void testSeededFromPersistedIds() throws IOException {
+        assertEquals(1, manager.nextTransactionId());
+
+        manager.addTransaction(rentFor(41, 2030));
+        Transaction finished = rentFor(57, 2020);
+        finished.state = TransactionState.ACTIVE;
+        manager.addTransaction(finished);
+        manager.archiveCompleted(Duration.ofDays(365));
+        assertEquals(58, manager.nextTransactionId());
+
+        VehicleManager fresh = new VehicleManager(vehicles, transactions);
+        assertEquals(58, fresh.nextTransactionId());
+        assertEquals(59, fresh.reserveTransactionIds(10));
+        assertEquals(69, fresh.nextTransactionId());
+    }
+
+    /**
+     * Check that IDs taken from many threads at once never collide
+     */
+    @Test
+    void testConcurrentAllocation() throws Exception {
+        Set<Integer> ids = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    ids.add(manager.nextTransactionId());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, ids.size());
+    }
+
+    /**
+     * Check that a duplicate ID is still refused, now from the in-memory ID map
+     */
+    @Test
+    void testDuplicateRejected() throws IOException {
+        int id = manager.nextTransactionId();
+        manager.addTransaction(rentFor(id, 2030));
+        assertThrows(InvalidTransactionException.class, () -> manager.addTransaction(rentFor(id, 2031)));
+
+        Set<Integer> found = new HashSet<>();
+        manager.getTransactions().withID(id).asList().forEach(t -> found.add(t.getId()));
+        assertEquals(Set.of(id), found);
+    }
+}
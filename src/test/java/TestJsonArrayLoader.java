@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TestJsonArrayLoader {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Check that element boundaries ignore brackets and commas inside strings, including escaped quotes
+     */
+    @Test
+    void testFindElements() {
+        char[] text = " [ {\"a\": \"x,]}\\\"[\"}, [1, 2] ,3 ]".toCharArray();
+        List<int[]> elements = JsonArrayLoader.findElements(text);
+
+        assertEquals(3, elements.size());
+        assertEquals("{\"a\": \"x,]}\\\"[\"}", new String(text, elements.get(0)[0], elements.get(0)[1] - elements.get(0)[0]));
+        assertEquals("[1, 2]", new String(text, elements.get(1)[0], elements.get(1)[1] - elements.get(1)[0]));
+        assertEquals("3", new String(text, elements.get(2)[0], elements.get(2)[1] - elements.get(2)[0]));
+        assertNull(JsonArrayLoader.findElements("{\"a\": 1}".toCharArray()));
+        assertNull(JsonArrayLoader.findElements("[1, 2".toCharArray()));
+    }
+
+    /**
+     * Check that a parallel load gives the same transactions, in the same order and with the same subclasses, as a
+     * single threaded one, and that both managers come up with everything loaded
+     */
+    @Test
+    void testParallelLoadMatchesSequential() throws IOException {
+        WorkloadGenerator generator = new WorkloadGenerator(7);
+        List<Vehicle> vehicles = generator.generateVehicles(50);
+        List<Transaction> transactions = generator.generateTransactions(3000, 1, vehicles,
+                generator.generateCustomers(200));
+        File vehiclesFile = tempDir.resolve("vehicles.json").toFile();
+        File transactionsFile = tempDir.resolve("transactions.json").toFile();
+        WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles, transactions);
+
+        VehicleManager sequential = new VehicleManager(vehiclesFile, transactionsFile);
+        VehicleManager parallel = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 4);
+        ArrayList<Transaction> expected = sequential.getTransactions().asList();
+        ArrayList<Transaction> actual = parallel.getTransactions().asList();
+
+        assertEquals(3000, actual.size());
+        assertEquals(sequential.getVehicles(), parallel.getVehicles());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getClass(), actual.get(i).getClass());
+            assertEquals(expected.get(i).getCustomer().getEmail(), actual.get(i).getCustomer().getEmail());
+        }
+
+        // Once rewritten in the checksummed layout the parallel load still gets everything
+        sequential.cancelTransaction(expected.get(0).getId());
+        VehicleManager reloaded = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 4);
+        assertEquals(2999, reloaded.getTransactions().asList().size());
+
+        // Small or empty input falls back to a plain parse
+        JsonArrayLoader loader = new JsonArrayLoader(VehicleManager.gson, 4);
+        assertEquals(0, loader.load(new StringReader(""), Vehicle.class, new File("empty.json")).size());
+        assertEquals(0, loader.load(new StringReader("[]"), Vehicle.class, new File("empty.json")).size());
+    }
+}
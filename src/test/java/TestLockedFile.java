@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestLockedFile {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Check that a file is only handed to the loader again once something has actually been written to it
+     */
+    @Test
+    void testReloadOnlyWhenChanged() throws IOException {
+        File data = TestUtils.emptyFile(tempDir, "data.json");
+        LockedFile reader = new LockedFile(data);
+        LockedFile writer = new LockedFile(data);
+
+        // First read always loads, second one has nothing new
+        assertTrue(reader.withSharedLock(() -> reader.reloadIfChanged(r -> { })));
+        assertFalse(reader.withSharedLock(() -> reader.reloadIfChanged(r -> { })));
+
+        // A write through another instance (standing in for another process) is picked up
+        writer.withExclusiveLock(() -> {
+            writer.write(w -> w.write("[]"));
+            return null;
+        });
+        assertTrue(reader.withSharedLock(() -> reader.reloadIfChanged(r -> { })));
+        assertFalse(reader.withSharedLock(() -> reader.reloadIfChanged(r -> { })));
+
+        // The writer already knows about its own write
+        assertFalse(writer.withSharedLock(() -> writer.reloadIfChanged(r -> { })));
+    }
+
+    /**
+     * Check that two managers sharing the same files see each other's vehicles and transactions
+     */
+    @Test
+    void testManagersShareFiles() throws IOException {
+        File vehicles = TestUtils.emptyFile(tempDir, "vehicles.json");
+        File transactions = TestUtils.emptyFile(tempDir, "transactions.json");
+
+        VehicleManager first = new VehicleManager(vehicles, transactions);
+        VehicleManager second = new VehicleManager(vehicles, transactions);
+
+        Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+        first.addVehicle(vehicle);
+        assertEquals(1, second.getVehicles().size());
+
+        // Second manager adds a transaction against the vehicle the first one created
+        second.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10));
+        first.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 5));
+
+        // Neither write should have clobbered the other
+        assertEquals(2, first.getTransactions().asList().size());
+        assertEquals(2, second.getTransactions().asList().size());
+    }
+
+    /**
+     * Check that changing a queried transaction doesn't change the manager's copy until it is saved
+     */
+    @Test
+    void testQueriesReturnCopies() throws IOException {
+        VehicleManager manager = TestUtils.emptyManager(tempDir);
+        Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+        manager.addVehicle(vehicle);
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10));
+
+        ArrayList<Transaction> transactions = manager.getTransactions().asList();
+        ((RentTransaction) transactions.get(0)).setDays(20);
+
+        assertEquals(10, ((RentTransaction) manager.getTransactions().withID(1).asList().get(0)).getDays());
+    }
+
+    /**
+     * Check that an update which changes nothing leaves the file alone, so other processes have nothing to reload
+     */
+    @Test
+    void testUnchangedUpdateSkipsWrite() throws IOException {
+        File data = TestUtils.emptyFile(tempDir, "transactions.json");
+        TransactionStore store = new TransactionStore(data, VehicleManager.gson);
+        Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+        store.update(e -> e.add(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime(), 10)));
+
+        LockedFile other = new LockedFile(data);
+        assertTrue(other.withSharedLock(() -> other.reloadIfChanged(r -> { })));
+
+        store.update(e -> { });
+        store.update(e -> e.removeIf(t -> t.getId() == 2));
+        assertFalse(other.withSharedLock(() -> other.reloadIfChanged(r -> { })));
+
+        store.update(e -> e.removeIf(t -> t.getId() == 1));
+        assertTrue(other.withSharedLock(() -> other.reloadIfChanged(r -> { })));
+    }
+
+    /**
+     * Check that an update whose write fails leaves both the in-memory transactions and the file as they were
+     */
+    @Test
+    void testFailedWriteKeepsState() throws IOException {
+        File data = TestUtils.emptyFile(tempDir, "transactions.json");
+        TransactionStore store = new TransactionStore(data, VehicleManager.gson);
+        Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+        Date start = new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime();
+        store.update(e -> e.add(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 10)));
+
+        boolean[] fail = new boolean[1];
+        RentTransaction unwritable = new RentTransaction(2, TestUtils.getTestCustomer(), vehicle, start, 5) {
+            @Override
+            protected void labelType() {
+                if (fail[0]) {
+                    throw new IllegalStateException("Write failed");
+                }
+                super.labelType();
+            }
+        };
+        fail[0] = true;
+        assertThrows(IllegalStateException.class, () -> store.update(e -> e.add(unwritable)));
+
+        assertEquals(1, (int) store.read(Collection::size));
+        assertNull(store.read(all -> store.get(2)));
+        assertEquals(1, (int) new TransactionStore(data, VehicleManager.gson).read(Collection::size));
+    }
+}
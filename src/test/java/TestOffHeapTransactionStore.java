@@ -0,0 +1,199 @@
+import com.google.gson.JsonSyntaxException;
+import exceptions.InvalidTransactionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestOffHeapTransactionStore {
+
+    @TempDir
+    Path tempDir;
+
+    private File vehicles;
+    private File transactions;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private Date start = new GregorianCalendar(2030, Calendar.DECEMBER, 1).getTime();
+    private Date activated = new GregorianCalendar(2030, Calendar.JUNE, 1).getTime();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        vehicles = TestUtils.emptyFile(tempDir, "vehicles.json");
+        transactions = TestUtils.emptyFile(tempDir, "transactions.json");
+    }
+
+    private List<Transaction> oneOfEach() {
+        List<Transaction> list = new ArrayList<>();
+        list.add(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 3));
+        list.add(new LeaseTransaction(2, TestUtils.getTestCustomer(), vehicle, start, 24));
+        BuyTransaction buy = new BuyTransaction(3, TestUtils.getTestCustomer(), vehicle, start, 250.5f);
+        buy.state = TransactionState.ACTIVE;
+        buy.activationTime = activated.getTime();
+        list.add(buy);
+        return list;
+    }
+
+    /**
+     * Check that every column survives a trip through a file written by the manager, and that customers with the same
+     * details are only held once
+     */
+    @Test
+    void testLoadChecksummedFile() throws IOException {
+        VehicleManager manager = new VehicleManager(vehicles, transactions);
+        manager.addVehicle(vehicle);
+        for (Transaction transaction : oneOfEach()) {
+            manager.addTransaction(transaction);
+        }
+
+        OffHeapTransactionStore store = OffHeapTransactionStore.load(transactions);
+        assertEquals(3, store.size());
+
+        List<OffHeapTransactionStore.Row> seen = new ArrayList<>();
+        List<Customer> customers = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        store.forEach(row -> {
+            seen.add(row);
+            customers.add(row.getCustomer());
+            types.add(row.getType());
+        });
+        assertEquals(List.of("rent", "lease", "buy"), types);
+        assertSame(customers.get(0), customers.get(2));
+        // The same view is moved along the rows
+        assertSame(seen.get(0), seen.get(2));
+
+        for (Transaction original : manager.getTransactions().asList()) {
+            Transaction copy = store.get(original.getId());
+            assertEquals(original.getClass(), copy.getClass());
+            assertEquals(original.getPrice(), copy.getPrice());
+            assertEquals(original.getState(), copy.getState());
+            assertEquals(original.getStartDate(), copy.getStartDate());
+            assertEquals(original.getActivationDate(), copy.getActivationDate());
+            assertEquals(original.getVehicle(), copy.getVehicle());
+            assertEquals(original.getCustomer().getEmail(), copy.getCustomer().getEmail());
+        }
+        assertEquals(250.5f, ((BuyTransaction) store.get(3)).getWarrantyPrice());
+        assertEquals(24, ((LeaseTransaction) store.get(2)).getMonths());
+        assertEquals(1, store.count(row -> row.getActivationTime() == activated.getTime()));
+    }
+
+    /**
+     * Check that plain json arrays from before checksums, and empty files, load too
+     */
+    @Test
+    void testLoadPlainFile() throws IOException {
+        OffHeapTransactionStore empty = OffHeapTransactionStore.load(transactions);
+        assertEquals(0, empty.size());
+
+        try (Writer writer = new FileWriter(transactions)) {
+            VehicleManager.gson.toJson(oneOfEach(), writer);
+        }
+        OffHeapTransactionStore store = OffHeapTransactionStore.load(transactions);
+        assertEquals(3, store.size());
+        assertEquals(List.of(3), idsOf(store.select(row -> row.getState() == TransactionState.ACTIVE)));
+    }
+
+    /**
+     * Check that a record failing its checksum stops the load
+     */
+    @Test
+    void testChecksumMismatch() throws IOException {
+        VehicleManager manager = new VehicleManager(vehicles, transactions);
+        manager.addVehicle(vehicle);
+        for (Transaction transaction : oneOfEach()) {
+            manager.addTransaction(transaction);
+        }
+        List<String> lines = Files.readAllLines(transactions.toPath());
+        lines.set(2, lines.get(2).replace("\"months\":24", "\"months\":25"));
+        Files.write(transactions.toPath(), lines);
+
+        JsonSyntaxException e = assertThrows(JsonSyntaxException.class, () -> OffHeapTransactionStore.load(transactions));
+        assertTrue(e.getMessage().contains("line 3"));
+    }
+
+    /**
+     * Check removal across several chunks, that compaction keeps the order and frees the chunks it empties, and that
+     * IDs can't be added twice
+     */
+    @Test
+    void testRemoveAndCompact() throws IOException {
+        OffHeapTransactionStore store = new OffHeapTransactionStore();
+        int count = 40000;
+        for (int id = 1; id <= count; id++) {
+            store.add(new RentTransaction(id, TestUtils.getTestCustomer(), vehicle, start, id % 30 + 1));
+        }
+        long allocated = store.getOffHeapBytes();
+        assertThrows(InvalidTransactionException.class,
+                () -> store.add(new RentTransaction(5, TestUtils.getTestCustomer(), vehicle, start, 1)));
+
+        for (int id = 2; id <= count; id += 2) {
+            assertTrue(store.remove(id));
+        }
+        assertEquals(count / 2, store.size());
+        assertNull(store.get(2));
+        assertEquals(false, store.remove(2));
+
+        store.compact();
+        assertTrue(store.getOffHeapBytes() < allocated);
+        assertEquals(count / 2, store.size());
+        assertEquals(39999, store.get(39999).getId());
+        assertEquals(39999 % 30 + 1, ((RentTransaction) store.get(39999)).getDays());
+        assertNull(store.get(40000));
+
+        int[] previous = {0};
+        store.forEach(row -> {
+            assertEquals(previous[0] + (previous[0] == 0 ? 1 : 2), row.getId());
+            previous[0] = row.getId();
+        });
+        assertEquals(39999, previous[0]);
+    }
+
+    /**
+     * Check that the lowest possible ID is stored like any other, and that a row without a vehicle comes back with
+     * its stored price rather than failing to work one out
+     */
+    @Test
+    void testEdgeRows() throws IOException {
+        OffHeapTransactionStore store = new OffHeapTransactionStore();
+        RentTransaction lowest = new RentTransaction(Integer.MIN_VALUE, TestUtils.getTestCustomer(), vehicle, start, 3);
+        store.add(lowest);
+        store.add(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 2));
+        assertEquals(lowest.getPrice(), store.get(Integer.MIN_VALUE).getPrice());
+        assertThrows(InvalidTransactionException.class, () -> store.add(lowest));
+        assertTrue(store.remove(Integer.MIN_VALUE));
+        assertNull(store.get(Integer.MIN_VALUE));
+        assertEquals(1, store.size());
+
+        RentTransaction noVehicle = new RentTransaction(2, TestUtils.getTestCustomer(), vehicle, start, 4);
+        noVehicle.vehicle = null;
+        store.add(noVehicle);
+        Transaction restored = store.get(2);
+        assertNull(restored.getVehicle());
+        assertEquals(noVehicle.getPrice(), restored.getPrice());
+        assertEquals(4, ((RentTransaction) restored).getDays());
+    }
+
+    private static List<Integer> idsOf(List<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            ids.add(transaction.getId());
+        }
+        return ids;
+    }
+}
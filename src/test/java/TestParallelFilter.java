@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TestParallelFilter {
+
+    @TempDir
+    Path tempDir;
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    private static List<Integer> sequentialMatches(List<Integer> items) {
+        List<Integer> matches = new ArrayList<>();
+        for (int item : items) {
+            if (item % 7 == 3) {
+                matches.add(item);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Check that splitting gives the same matches in the same order as a plain pass, for indexed lists and for
+     * collections that have to be copied first
+     */
+    @Test
+    void testKeepsOrder() {
+        try {
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 100000; i++) {
+                items.add((i * 7919) % 100003);
+            }
+            List<Integer> expected = sequentialMatches(items);
+
+            assertEquals(expected, ParallelFilter.filter(items, i -> i % 7 == 3, pool));
+            Set<Integer> linked = new LinkedHashSet<>(items);
+            assertEquals(expected, ParallelFilter.filter(linked, i -> i % 7 == 3, pool));
+            assertEquals(expected, ParallelFilter.filter(items, i -> i % 7 == 3, null));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Check that small inputs stay on the calling thread
+     */
+    @Test
+    void testSmallInputRunsInline() {
+        try {
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                items.add(i);
+            }
+            Thread caller = Thread.currentThread();
+            List<Thread> seen = new ArrayList<>();
+            ParallelFilter.filter(items, i -> seen.add(Thread.currentThread()), pool);
+            assertEquals(100, seen.size());
+            seen.forEach(thread -> assertEquals(caller, thread));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Check that a query split across a pool finds exactly what the sequential one does
+     */
+    @Test
+    void testQueryMatchesSequential() throws IOException {
+        try {
+            File vehiclesFile = tempDir.resolve("vehicles.json").toFile();
+            File transactionsFile = tempDir.resolve("transactions.json").toFile();
+            WorkloadGenerator generator = new WorkloadGenerator(7);
+            List<Vehicle> vehicles = generator.generateVehicles(50);
+            WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles,
+                    generator.generateTransactions(ParallelFilter.PARALLEL_THRESHOLD * 2, 1, vehicles,
+                            generator.generateCustomers(500)));
+            VehicleManager manager = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 1);
+
+            List<Integer> sequential = ids(manager.getTransactions().withState(TransactionState.ACTIVE).sequential()
+                    .asList());
+            List<Integer> parallel = ids(manager.getTransactions().withState(TransactionState.ACTIVE).withPool(pool)
+                    .asList());
+            assertEquals(sequential, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<Integer> ids(List<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        transactions.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+}
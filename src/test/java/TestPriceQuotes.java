@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestPriceQuotes {
+
+    private final List<Vehicle> vehicles = new WorkloadGenerator(9).generateVehicles(500);
+
+    /**
+     * Check that every quote is exactly the price the matching transaction works out
+     */
+    @Test
+    void testMatchesTransactions() {
+        for (int term : new int[]{0, 1, 3, 12, 36}) {
+            float[] rents = PriceQuotes.rent(vehicles, term);
+            float[] leases = PriceQuotes.lease(vehicles, term);
+            float[] buys = PriceQuotes.buy(vehicles, term * 99.5f);
+            for (int i = 0; i < vehicles.size(); i++) {
+                Vehicle vehicle = vehicles.get(i);
+                Customer customer = TestUtils.getTestCustomer();
+                assertEquals(new RentTransaction(1, customer, vehicle, null, term).getPrice(), rents[i]);
+                assertEquals(new LeaseTransaction(1, customer, vehicle, null, term).getPrice(), leases[i]);
+                assertEquals(new BuyTransaction(1, customer, vehicle, null, term * 99.5f).getPrice(), buys[i]);
+            }
+        }
+        assertEquals(3 * 39.99f, PriceQuotes.rentByType(3)[VehicleType.SEDAN.ordinal()], 0.001);
+    }
+
+    /**
+     * Check that a caller's array is filled in and reused, and must have room for every vehicle
+     */
+    @Test
+    void testFillsGivenArray() {
+        float[] quotes = new float[vehicles.size() + 1];
+        quotes[vehicles.size()] = -1;
+        assertSame(quotes, PriceQuotes.lease(vehicles, 12, quotes));
+        assertArrayEquals(PriceQuotes.lease(vehicles, 12), Arrays.copyOf(quotes, vehicles.size()));
+        assertEquals(-1, quotes[vehicles.size()]);
+
+        assertThrows(IllegalArgumentException.class, () -> PriceQuotes.buy(vehicles, 0, new float[1]));
+    }
+}
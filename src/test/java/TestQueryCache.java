@@ -0,0 +1,99 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TestQueryCache {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(vehicle);
+        manager.enableQueryCache(10);
+    }
+
+    private Transaction rentFor(int id, String email) {
+        return TestUtils.rentFor(id, TestUtils.getTestCustomer(email), vehicle,
+                new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime());
+    }
+
+    /**
+     * Check that repeating a query is answered from the cache, and that a change only drops the entries it affects
+     */
+    @Test
+    void testHitsAndPreciseInvalidation() throws IOException {
+        manager.addTransaction(rentFor(1, "a@test.null"));
+        manager.addTransaction(rentFor(2, "b@test.null"));
+
+        QueryCache cache = manager.getQueryCache();
+
+        assertEquals(1, manager.getTransactions().withEmail("a@test.null").asList().size());
+        assertEquals(1, manager.getTransactions().withEmail("b@test.null").asList().size());
+        assertEquals(1, manager.getTransactions().withEmail("a@test.null").asList().size());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // A new transaction for customer a only invalidates a's entry
+        manager.addTransaction(rentFor(3, "a@test.null"));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(2, manager.getTransactions().withEmail("a@test.null").asList().size());
+        assertEquals(1, manager.getTransactions().withEmail("b@test.null").asList().size());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    /**
+     * Check that the least recently used entry is evicted once the cache is full
+     */
+    @Test
+    void testEviction() throws IOException {
+        manager.enableQueryCache(2);
+        manager.addTransaction(rentFor(1, "a@test.null"));
+
+        manager.getTransactions().withID(1).asList();
+        manager.getTransactions().withID(2).asList();
+        manager.getTransactions().withID(1).asList();
+        manager.getTransactions().withID(3).asList();
+
+        QueryCache cache = manager.getQueryCache();
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+
+        // ID 1 was used most recently before 3 came in, so 2 was the one evicted
+        manager.getTransactions().withID(1).asList();
+        assertEquals(2, cache.getHits());
+    }
+
+    /**
+     * Check that filters built the same way share an entry, while ones using a custom predicate stay out of the cache
+     */
+    @Test
+    void testCustomPredicatesNotCached() throws IOException {
+        manager.addTransaction(rentFor(1, "a@test.null"));
+        QueryCache cache = manager.getQueryCache();
+
+        manager.getTransactions().where(TransactionFilter.email("a@test.null")).asList();
+        manager.getTransactions().where(TransactionFilter.email("a@test.null")).asList();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.size());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, manager.getTransactions().where(TransactionFilter.email("a@test.null")
+                    .and(TransactionFilter.where(t -> t.getId() == 1))).asList().size());
+        }
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -0,0 +1,75 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TestRegionIndex {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(vehicle);
+        manager.addTransaction(rentFor(1, "Maryland", "Baltimore", "21201"));
+        manager.addTransaction(rentFor(2, "Maryland", "Annapolis", "21401"));
+        manager.addTransaction(rentFor(3, "Virginia", "Arlington", "22201"));
+    }
+
+    private Transaction rentFor(int id, String state, String city, String zip) {
+        Address address = new Address("1 Main St.", state, zip, "USA", city);
+        Customer customer = TestUtils.getTestCustomer("Customer", address, "5550000000", "test@test.null");
+        return TestUtils.rentFor(id, customer, vehicle, TestUtils.day(1));
+    }
+
+    private List<Integer> ids(ArrayList<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        transactions.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+
+    /**
+     * Check each address filter on its own and combined
+     */
+    @Test
+    void testRegionFilters() throws IOException {
+        assertEquals(List.of(1, 2), ids(manager.getTransactions().withAddressState("Maryland").asList()));
+        assertEquals(List.of(3), ids(manager.getTransactions().withZip("22201").asList()));
+        assertEquals(List.of(2), ids(manager.getTransactions().withCity("Annapolis").asList()));
+        assertEquals(List.of(1, 2, 3), ids(manager.getTransactions().withCountry("USA").asList()));
+        assertEquals(List.of(1), ids(manager.getTransactions().withCountry("USA").withAddressState("Maryland")
+                .withZip("21201").asList()));
+        assertEquals(0, manager.getTransactions().withAddressState("Texas").asList().size());
+    }
+
+    /**
+     * Check that grouped counts and revenue follow adds, activations and cancellations
+     */
+    @Test
+    void testGroupedCountsAndRevenue() throws IOException {
+        float price = manager.getTransactions().withID(1).asList().get(0).getPrice();
+
+        assertEquals(Map.of("Maryland", 2, "Virginia", 1), manager.countByRegion(AddressField.STATE));
+        assertEquals(Map.of("USA", 3), manager.countByRegion(AddressField.COUNTRY));
+        assertEquals(2 * Math.round(price * 100) / 100.0, manager.revenueByRegion(AddressField.STATE).get("Maryland"),
+                0.001);
+
+        manager.activateTransaction(1);
+        manager.cancelTransaction(3);
+        assertEquals(Map.of("Maryland", 1), manager.countByRegion(AddressField.STATE, TransactionState.ACTIVE));
+        assertEquals(Map.of("21201", 1, "21401", 1), manager.countByRegion(AddressField.ZIP));
+        assertEquals(Math.round(price * 100) / 100.0,
+                manager.revenueByRegion(AddressField.STATE, TransactionState.DRAFT).get("Maryland"), 0.001);
+    }
+}
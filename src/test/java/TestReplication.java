@@ -0,0 +1,212 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestReplication {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager leader;
+    private ReplicationLeader replication;
+    private Vehicle sedan = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private Vehicle suv = new Vehicle("Jeep", "Cherokee", "76543210987654321", 2019, 30000, VehicleType.SUV);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        leader = manager("leader");
+        replication = new ReplicationLeader(leader, 0);
+        replication.start();
+    }
+
+    private VehicleManager manager(String name) throws IOException {
+        File vehicles = tempDir.resolve(name + "-vehicles.json").toFile();
+        File transactions = tempDir.resolve(name + "-transactions.json").toFile();
+        if (!vehicles.exists()) {
+            new FileWriter(vehicles).close();
+            new FileWriter(transactions).close();
+        }
+        return new VehicleManager(vehicles, transactions);
+    }
+
+    /**
+     * Wait for the follower to apply everything the leader has published so far
+     */
+    private void catchUp(ReplicationFollower follower) throws InterruptedException {
+        assertTrue(follower.awaitSequence(leader.getChangeFeed().getLastSequence(), TIMEOUT_MILLIS));
+    }
+
+    private static List<String> describe(VehicleManager manager) {
+        List<String> transactions = new ArrayList<>();
+        manager.getTransactions().orderBy(TransactionOrder.byId()).asList().forEach(t -> transactions.add(
+                t.getId() + " " + t.getType() + " " + t.getState() + " " + t.getPrice() + " " + t.getStartTime()
+                        + " " + t.getActivationTime()));
+        return transactions;
+    }
+
+    /**
+     * Check that a follower starting empty takes a snapshot, then follows adds, updates, activations, cancels and
+     * vehicle changes, and answers the same queries as the leader
+     */
+    @Test
+    void testFollowsLeader() throws IOException, InterruptedException {
+        ReplicationFollower follower = null;
+        try {
+            leader.addVehicle(sedan);
+            leader.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 3));
+
+            VehicleManager replica = manager("replica");
+            follower = new ReplicationFollower(replica, "localhost", replication.getPort());
+            follower.start();
+            catchUp(follower);
+            assertEquals(1, follower.getSnapshotCount());
+            assertEquals(describe(leader), describe(replica));
+
+            leader.addVehicle(suv);
+            leader.addTransaction(new LeaseTransaction(2, TestUtils.getTestCustomer(), suv, TestUtils.day(5), 12));
+            leader.addTransaction(new BuyTransaction(3, TestUtils.getTestCustomer(), suv, TestUtils.day(6), 500));
+            leader.updateTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), sedan, TestUtils.day(2), 4));
+            leader.activateTransaction(2);
+            leader.cancelTransaction(3);
+            catchUp(follower);
+
+            assertEquals(describe(leader), describe(replica));
+            assertEquals(2, replica.getVehicles().size());
+            assertEquals(TransactionState.ACTIVE, replica.getTransactions().withID(2).asList().get(0).getState());
+            assertEquals(1, replica.getTransactions().withLastNamePrefix("str").withState(TransactionState.DRAFT)
+                    .asList().size());
+
+            leader.removeVehicle(suv.getVin());
+            catchUp(follower);
+            assertEquals(1, replica.getVehicles().size());
+            assertEquals(1, follower.getSnapshotCount());
+        } finally {
+            if (follower != null) {
+                follower.stop();
+            }
+            replication.stop();
+        }
+    }
+
+    /**
+     * Check that a follower picks up after the last change it applied, both when its connection drops and when it is
+     * started again on the same replica, without another snapshot
+     */
+    @Test
+    void testResumesAfterDisconnect() throws IOException, InterruptedException {
+        ReplicationFollower follower = null;
+        try {
+            leader.addVehicle(sedan);
+            VehicleManager replica = manager("replica");
+            follower = new ReplicationFollower(replica, "localhost", replication.getPort());
+            follower.start();
+            catchUp(follower);
+
+            follower.disconnect();
+            leader.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 3));
+            catchUp(follower);
+            assertEquals(describe(leader), describe(replica));
+
+            // Stop, miss some changes, then carry on from the sequence reached
+            follower.stop();
+            long reached = follower.getLastSequence();
+            long epoch = follower.getEpoch();
+            assertEquals(leader.getChangeFeed().getEpoch(), epoch);
+            leader.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), sedan, TestUtils.day(8), 2));
+            leader.activateTransaction(1);
+            follower = new ReplicationFollower(replica, "localhost", replication.getPort(), reached, epoch);
+            follower.start();
+            catchUp(follower);
+            assertEquals(0, follower.getSnapshotCount());
+            assertEquals(describe(leader), describe(replica));
+        } finally {
+            if (follower != null) {
+                follower.stop();
+            }
+            replication.stop();
+        }
+    }
+
+    /**
+     * Check that a follower claiming changes the leader never made, as after the leader restarts, is sent a snapshot
+     * and ends up matching the leader
+     */
+    @Test
+    void testSnapshotWhenLeaderCannotReplay() throws IOException, InterruptedException {
+        ReplicationFollower follower = null;
+        try {
+            leader.addVehicle(sedan);
+            leader.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 3));
+            VehicleManager replica = manager("replica");
+            follower = new ReplicationFollower(replica, "localhost", replication.getPort(), 999,
+                    leader.getChangeFeed().getEpoch());
+            follower.start();
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (follower.getSnapshotCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, follower.getSnapshotCount());
+            assertEquals(describe(leader), describe(replica));
+        } finally {
+            if (follower != null) {
+                follower.stop();
+            }
+            replication.stop();
+        }
+    }
+
+    /**
+     * Check that a follower resuming against a restarted leader, whose new feed has already gone past the follower's
+     * sequence with different changes, is sent a snapshot rather than skipping those changes
+     */
+    @Test
+    void testSnapshotAfterLeaderRestart() throws IOException, InterruptedException {
+        ReplicationFollower follower = null;
+        try {
+            leader.addVehicle(sedan);
+            leader.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 3));
+            VehicleManager replica = manager("replica");
+            follower = new ReplicationFollower(replica, "localhost", replication.getPort());
+            follower.start();
+            catchUp(follower);
+            follower.stop();
+            long reached = follower.getLastSequence();
+            long epoch = follower.getEpoch();
+
+            // Restart the leader on its files, and publish more changes than the follower had seen
+            replication.stop();
+            leader = manager("leader");
+            replication = new ReplicationLeader(leader, 0);
+            replication.start();
+            leader.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), sedan, TestUtils.day(8), 2));
+            leader.addTransaction(new RentTransaction(3, TestUtils.getTestCustomer(), sedan, TestUtils.day(12), 2));
+            leader.addTransaction(new RentTransaction(4, TestUtils.getTestCustomer(), sedan, TestUtils.day(16), 2));
+            assertTrue(leader.getChangeFeed().getLastSequence() > reached);
+
+            follower = new ReplicationFollower(replica, "localhost", replication.getPort(), reached, epoch);
+            follower.start();
+            catchUp(follower);
+            assertEquals(1, follower.getSnapshotCount());
+            assertEquals(leader.getChangeFeed().getEpoch(), follower.getEpoch());
+            assertEquals(describe(leader), describe(replica));
+        } finally {
+            if (follower != null) {
+                follower.stop();
+            }
+            replication.stop();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TestTopK {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        File vehiclesFile = tempDir.resolve("vehicles.json").toFile();
+        File transactionsFile = tempDir.resolve("transactions.json").toFile();
+        WorkloadGenerator generator = new WorkloadGenerator(11);
+        List<Vehicle> vehicles = generator.generateVehicles(40);
+        WorkloadGenerator.writeFiles(vehiclesFile, transactionsFile, vehicles,
+                generator.generateTransactions(3000, 1, vehicles, generator.generateCustomers(200)));
+        manager = new VehicleManager(vehiclesFile, transactionsFile, Clock.systemDefaultZone(), 1);
+    }
+
+    /**
+     * Check that the kept items are the same as the start of a stable sort, ties included
+     */
+    @Test
+    void testMatchesStableSort() {
+        Random random = new Random(3);
+        List<int[]> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // Few distinct keys so there are plenty of ties, the second value records the offer order
+            items.add(new int[]{random.nextInt(50), i});
+        }
+        Comparator<int[]> byKey = Comparator.comparingInt(item -> item[0]);
+
+        for (int k : new int[]{0, 1, 7, 100, 5000, 6000}) {
+            TopK<int[]> top = new TopK<>(byKey, k);
+            items.forEach(top::offer);
+            List<int[]> sorted = new ArrayList<>(items);
+            sorted.sort(byKey);
+            assertEquals(offers(sorted.subList(0, Math.min(k, sorted.size()))), offers(top.toSortedList()));
+        }
+
+        TopK<int[]> first = new TopK<>(null, 3);
+        items.forEach(first::offer);
+        assertEquals(offers(items.subList(0, 3)), offers(first.toSortedList()));
+        assertThrows(IllegalArgumentException.class, () -> new TopK<>(byKey, -1));
+    }
+
+    /**
+     * Check that a limited query gives the first results of the same query fully sorted
+     */
+    @Test
+    void testQueryMatchesFullSort() throws IOException {
+        Comparator<Transaction> mostExpensive = TransactionOrder.byPrice().reversed();
+        List<Integer> sorted = ids(manager.getTransactions().withState(TransactionState.ACTIVE)
+                .orderBy(mostExpensive).asList());
+        assertEquals(sorted.subList(0, 10), ids(manager.getTransactions().withState(TransactionState.ACTIVE)
+                .topK(mostExpensive, 10)));
+
+        List<Integer> byStart = ids(manager.getTransactions().orderBy(TransactionOrder.byStartDate()).asList());
+        assertEquals(byStart.subList(0, 20), ids(manager.getTransactions()
+                .topK(TransactionOrder.byStartDate(), 20)));
+
+        // Without an order the limit keeps the first results in the usual order
+        List<Integer> unordered = ids(manager.getTransactions().withState(TransactionState.DRAFT).asList());
+        assertEquals(unordered.subList(0, 5), ids(manager.getTransactions().withState(TransactionState.DRAFT)
+                .limit(5).asList()));
+        assertEquals(3000, manager.getTransactions().limit(5000).asList().size());
+    }
+
+    /**
+     * Check that changing a returned result doesn't change the stored transaction
+     */
+    @Test
+    void testReturnsCopies() throws IOException {
+        Transaction first = manager.getTransactions().topK(TransactionOrder.byId(), 1).get(0);
+        first.setCustomer(TestUtils.getTestCustomer());
+        Transaction stored = manager.getTransactions().topK(TransactionOrder.byId(), 1).get(0);
+        assertEquals(first.getId(), stored.getId());
+        assertNotEquals("Strang", stored.getCustomer().getLastName());
+    }
+
+    private static List<Integer> offers(List<int[]> items) {
+        List<Integer> offers = new ArrayList<>();
+        items.forEach(item -> offers.add(item[1]));
+        return offers;
+    }
+
+    private static List<Integer> ids(List<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        transactions.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+}
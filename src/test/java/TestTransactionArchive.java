@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTransactionArchive {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private Customer customer = TestUtils.getTestCustomer("a@test.null");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(vehicle);
+
+        Date longAgo = new GregorianCalendar(2020, Calendar.DECEMBER, 1).getTime();
+        Date future = new GregorianCalendar(2030, Calendar.DECEMBER, 1).getTime();
+        Date yesterday = new Date(System.currentTimeMillis() - 24 * 60 * 60 * 1000);
+        manager.addTransaction(active(new RentTransaction(1, customer, vehicle, longAgo, 3)));
+        manager.addTransaction(active(new LeaseTransaction(2, customer, vehicle, longAgo, 12)));
+        manager.addTransaction(active(new BuyTransaction(3, customer, vehicle, longAgo, 0)));
+        manager.addTransaction(active(new BuyTransaction(4, customer, vehicle, yesterday, 0)));
+        manager.addTransaction(active(new RentTransaction(5, customer, vehicle, future, 3)));
+        manager.addTransaction(new RentTransaction(6, customer, vehicle, longAgo, 3));
+    }
+
+    private Transaction active(Transaction transaction) {
+        transaction.state = TransactionState.ACTIVE;
+        return transaction;
+    }
+
+    private List<Integer> ids(List<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        transactions.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+
+    /**
+     * Check that only ended rentals and leases and old buys move to the archive, keeping their types
+     */
+    @Test
+    void testArchiveCompleted() throws IOException {
+        assertEquals(3, manager.archiveCompleted(Duration.ofDays(365)));
+        assertEquals(List.of(4, 5, 6), ids(manager.getTransactions().asList()));
+        assertEquals(1, manager.getArchive().getSegments().size());
+
+        List<Transaction> archived = manager.getArchive().readAll();
+        assertEquals(List.of(1, 2, 3), ids(archived));
+        assertTrue(archived.get(0) instanceof RentTransaction);
+        assertTrue(archived.get(1) instanceof LeaseTransaction);
+        assertTrue(archived.get(2) instanceof BuyTransaction);
+
+        // Nothing new to archive leaves the segments alone
+        assertEquals(0, manager.archiveCompleted(Duration.ofDays(365)));
+        assertEquals(1, manager.getArchive().getSegments().size());
+    }
+
+    /**
+     * Check that archived transactions only show up in queries that ask for them, after the main file's matches
+     */
+    @Test
+    void testIncludeArchived() throws IOException {
+        manager.archiveCompleted(Duration.ofDays(365));
+
+        assertEquals(List.of(4, 5), ids(manager.getTransactions().withState(TransactionState.ACTIVE).asList()));
+        assertEquals(List.of(4, 5, 1, 2, 3), ids(manager.getTransactions().withState(TransactionState.ACTIVE)
+                .includeArchived().asList()));
+        assertEquals(List.of(2), ids(manager.getTransactions().withID(2).includeArchived().asList()));
+    }
+}
@@ -0,0 +1,98 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TestTransactionExport {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus, \"ST\"", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private Date start = new GregorianCalendar(2030, Calendar.DECEMBER, 1).getTime();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(vehicle);
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 3));
+        manager.addTransaction(new BuyTransaction(2, TestUtils.getTestCustomer(), vehicle, start, 250.5f));
+        Customer other = new Customer("Ann", "Other", TestUtils.getTestAddress(), "5550000000", "ann@test.null");
+        manager.addTransaction(new LeaseTransaction(3, other, vehicle, start, 24));
+    }
+
+    private String export(VehicleManager.TransactionQuery query, ExportFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        query.export(out, format);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check the csv header, that values needing it are quoted, and that columns another type doesn't have are blank
+     */
+    @Test
+    void testCsv() throws IOException {
+        String[] lines = export(manager.getTransactions(), ExportFormat.CSV).split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(String.join(",", TransactionExporter.COLUMNS), lines[0]);
+
+        assertEquals("1,rent,DRAFT,119.97," + start.getTime() + ",,3,,,Jake,Strang,", lines[1].substring(0,
+                lines[1].indexOf("Strang,") + "Strang,".length()));
+        assertEquals("2,buy,DRAFT,2140.5," + start.getTime() + ",,,,250.5,", lines[2].substring(0,
+                lines[2].indexOf("250.5,") + "250.5,".length()));
+        assertEquals(",12345678901234567,Ford,\"Focus, \"\"ST\"\"\",2004,SEDAN,1800.0",
+                lines[3].substring(lines[3].indexOf(",12345678901234567")));
+    }
+
+    /**
+     * Check that ndjson rows are one object per line taking the query's filters, with missing values left out
+     */
+    @Test
+    void testNdjson() throws IOException {
+        String[] lines = export(manager.getTransactions().withLastNamePrefix("str"), ExportFormat.NDJSON).split("\n");
+        assertEquals(2, lines.length);
+
+        JsonObject rent = JsonParser.parseString(lines[0]).getAsJsonObject();
+        assertEquals(1, rent.get("id").getAsInt());
+        assertEquals(3, rent.get("days").getAsInt());
+        assertEquals(start.getTime(), rent.get("startTime").getAsLong());
+        assertEquals("Focus, \"ST\"", rent.get("model").getAsString());
+        assertFalse(rent.has("activationTime"));
+        assertFalse(rent.has("warrantyPrice"));
+
+        JsonObject buy = JsonParser.parseString(lines[1]).getAsJsonObject();
+        assertEquals("buy", buy.get("type").getAsString());
+        assertEquals("250.5", buy.get("warrantyPrice").getAsString());
+    }
+
+    /**
+     * Check that archived transactions are exported after the main file's when asked for
+     */
+    @Test
+    void testIncludesArchived() throws IOException {
+        Transaction finished = new RentTransaction(4, TestUtils.getTestCustomer(), vehicle,
+                new GregorianCalendar(2020, Calendar.JANUARY, 1).getTime(), 3);
+        finished.state = TransactionState.ACTIVE;
+        manager.addTransaction(finished);
+        manager.archiveCompleted(Duration.ofDays(365));
+
+        assertEquals(3, manager.getTransactions().export(new ByteArrayOutputStream(), ExportFormat.NDJSON));
+        String[] lines = export(manager.getTransactions().includeArchived(), ExportFormat.NDJSON).split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(4, JsonParser.parseString(lines[3]).getAsJsonObject().get("id").getAsInt());
+    }
+}
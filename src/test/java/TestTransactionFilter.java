@@ -0,0 +1,141 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TestTransactionFilter {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private Vehicle sedan = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private Vehicle suv = new Vehicle("Jeep", "Cherokee", "76543210987654321", 2019, 30000, VehicleType.SUV);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        manager.addVehicle(sedan);
+        manager.addVehicle(suv);
+
+        // Lease of the SUV for 12 months is 3600, renting it is a fee per day
+        manager.addTransaction(new LeaseTransaction(1, TestUtils.getTestCustomer(), suv, TestUtils.day(20), 12));
+        manager.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), suv, TestUtils.day(5), 5));
+        manager.addTransaction(new RentTransaction(3, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 5));
+        manager.addTransaction(new BuyTransaction(4, TestUtils.getTestCustomer(), suv, TestUtils.day(2), 0));
+        manager.addTransaction(new LeaseTransaction(5, TestUtils.getTestCustomer(), suv, TestUtils.day(10), 1));
+    }
+
+    private List<Integer> ids(VehicleManager.TransactionQuery query) {
+        List<Integer> ids = new ArrayList<>();
+        query.asList().forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+
+    /**
+     * Check the kind of query the filters are for: leases or rents of SUVs in a price range, sorted by start date
+     */
+    @Test
+    void testCombinedQuery() throws IOException {
+        TransactionFilter filter = TransactionFilter.type("lease").or(TransactionFilter.type("rent"))
+                .and(TransactionFilter.priceBetween(100, 1000))
+                .and(TransactionFilter.vehicleType(VehicleType.SUV));
+        assertEquals(Arrays.asList(2, 5), ids(manager.getTransactions().where(filter)
+                .orderBy(TransactionOrder.byStartDate())));
+
+        assertEquals(Arrays.asList(3, 2, 5, 1), ids(manager.getTransactions()
+                .where(TransactionFilter.not(TransactionFilter.type("buy")))
+                .orderBy(TransactionOrder.byPrice())));
+        assertEquals(Arrays.asList(4, 1, 5, 2, 3), ids(manager.getTransactions()
+                .orderBy(TransactionOrder.byPrice().reversed())));
+
+        assertEquals(Arrays.asList(4, 2), ids(manager.getTransactions()
+                .where(TransactionFilter.startsBetween(TestUtils.day(2), TestUtils.day(10)))
+                .orderBy(TransactionOrder.byStartDate())));
+
+        // Exact match filters and a where filter all have to pass
+        assertEquals(Arrays.asList(2), ids(manager.getTransactions().withID(2)
+                .where(TransactionFilter.vehicleType(VehicleType.SUV))));
+        assertEquals(Arrays.asList(), ids(manager.getTransactions().withID(3)
+                .where(TransactionFilter.vehicleType(VehicleType.SUV))));
+    }
+
+    /**
+     * Check that nested combinations are flattened, cheap conditions go first, and filters built the same way are
+     * equal and share a cache entry
+     */
+    @Test
+    void testPlanAndEquality() throws IOException {
+        Predicate<Transaction> custom = t -> t.getId() > 1;
+        TransactionFilter a = TransactionFilter.where(custom);
+        TransactionFilter b = TransactionFilter.lastNameStartsWith("str");
+        TransactionFilter c = TransactionFilter.state(TransactionState.DRAFT);
+
+        TransactionFilter nested = a.and(b.and(c));
+        assertEquals(TransactionFilter.allOf(a, b, c), nested);
+        assertEquals(TransactionFilter.allOf(c, b, a), nested);
+        assertEquals("and(state[DRAFT], lastName[str], where[" + custom + "])", nested.toString());
+        assertEquals(c, TransactionFilter.not(TransactionFilter.not(c)));
+        assertNotEquals(a, TransactionFilter.where(t -> t.getId() > 1));
+
+        manager.enableQueryCache(10);
+        ids(manager.getTransactions().where(TransactionFilter.priceAtLeast(500)));
+        ids(manager.getTransactions().where(TransactionFilter.priceAtLeast(500))
+                .orderBy(TransactionOrder.byId()));
+        assertEquals(1, manager.getQueryCache().getHits());
+    }
+
+    /**
+     * Check which candidates the indexes narrow a filter down to
+     */
+    @Test
+    void testCandidates() {
+        List<Transaction> smiths = Arrays.asList(
+                new RentTransaction(1, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 1));
+        List<Transaction> domain = Arrays.asList(
+                new RentTransaction(2, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 1),
+                new RentTransaction(3, TestUtils.getTestCustomer(), sedan, TestUtils.day(1), 1));
+        TransactionFilter.Indexes indexes = new TransactionFilter.Indexes() {
+            public Transaction byId(int id) {
+                return null;
+            }
+
+            public Collection<Transaction> byRegion(AddressField field, String value) {
+                return domain;
+            }
+
+            public Collection<Transaction> byLastNamePrefix(String prefix) {
+                return smiths;
+            }
+
+            public Collection<Transaction> byEmailDomain(String domain) {
+                return Arrays.asList();
+            }
+
+            public Collection<Transaction> byPhonePrefix(String prefix) {
+                return domain;
+            }
+        };
+
+        TransactionFilter name = TransactionFilter.lastNameStartsWith("smi");
+        TransactionFilter region = TransactionFilter.address(AddressField.STATE, "Maryland");
+        TransactionFilter state = TransactionFilter.state(TransactionState.ACTIVE);
+
+        assertEquals(smiths, name.and(region).and(state).candidates(indexes));
+        assertEquals(3, name.or(TransactionFilter.phoneStartsWith("555")).candidates(indexes).size());
+        assertNull(name.or(state).candidates(indexes));
+        assertNull(TransactionFilter.not(name).candidates(indexes));
+        assertEquals(0, TransactionFilter.id(9).candidates(indexes).size());
+    }
+}
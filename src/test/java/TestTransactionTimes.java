@@ -0,0 +1,161 @@
+import com.google.gson.Gson;
+import exceptions.InvalidTransactionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTransactionTimes {
+
+    @TempDir
+    Path tempDir;
+
+    private File vehicles;
+    private File transactions;
+    private TestDeadlineScheduler.MutableClock clock;
+    private VehicleManager manager;
+    private Vehicle vehicle = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+    private Date start = new GregorianCalendar(2030, Calendar.DECEMBER, 1).getTime();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        vehicles = TestUtils.emptyFile(tempDir, "vehicles.json");
+        transactions = TestUtils.emptyFile(tempDir, "transactions.json");
+
+        clock = new TestDeadlineScheduler.MutableClock(new GregorianCalendar(2030, Calendar.NOVEMBER, 1).getTime());
+        manager = new VehicleManager(vehicles, transactions, clock);
+        manager.addVehicle(vehicle);
+    }
+
+    /**
+     * Check that activation and cancellation go by the manager's clock rather than the system time
+     */
+    @Test
+    void testClockDecidesActivationAndCancellation() throws IOException {
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 3));
+        manager.addTransaction(new RentTransaction(2, TestUtils.getTestCustomer(), vehicle, start, 3));
+        manager.activateTransaction(1);
+        manager.activateTransaction(2);
+
+        Transaction activated = manager.getTransactions().withID(1).asList().get(0);
+        assertEquals(clock.millis(), activated.getActivationTime());
+        assertEquals(clock.millis(), activated.getActivationDate().getTime());
+
+        // Still before the start date, so it can go
+        manager.cancelTransaction(1);
+        assertTrue(manager.getTransactions().withID(1).asList().isEmpty());
+
+        // Once the clock passes the start date an active transaction has to stay
+        clock.set(new GregorianCalendar(2030, Calendar.DECEMBER, 2).getTime());
+        manager.cancelTransaction(2);
+        assertEquals(1, manager.getTransactions().withID(2).asList().size());
+
+        manager.addTransaction(new RentTransaction(3, TestUtils.getTestCustomer(), vehicle, start, 3));
+        assertThrows(InvalidTransactionException.class, () -> manager.activateTransaction(3));
+    }
+
+    /**
+     * Check that times are written as plain numbers, with unset ones left out
+     */
+    @Test
+    void testWrittenAsNumbers() throws IOException {
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 3));
+
+        String text = new String(Files.readAllBytes(transactions.toPath()));
+        assertTrue(text.contains("\"startDate\":" + start.getTime()));
+        assertFalse(text.contains("activationDate"));
+
+        Transaction loaded = manager.getTransactions().withID(1).asList().get(0);
+        assertEquals(start, loaded.getStartDate());
+        assertEquals(Transaction.NO_TIME, loaded.getActivationTime());
+        assertNull(loaded.getActivationDate());
+    }
+
+    /**
+     * Check that files written with gson's formatted date strings still load, and are rewritten as numbers
+     */
+    @Test
+    void testReadsLegacyDateStrings() throws IOException {
+        Date activated = new GregorianCalendar(2030, Calendar.OCTOBER, 15, 9, 30).getTime();
+        String legacy = "[{\"type\":\"rent\",\"days\":3,\"id\":7,\"state\":\"ACTIVE\",\"customer\":"
+                + VehicleManager.gson.toJson(TestUtils.getTestCustomer()) + ",\"vehicle\":"
+                + VehicleManager.gson.toJson(vehicle) + ",\"price\":150.0,"
+                + "\"startDate\":" + new Gson().toJson(start) + ","
+                + "\"activationDate\":" + new Gson().toJson(activated) + "}]";
+        try (Writer writer = new FileWriter(transactions)) {
+            writer.write(legacy);
+        }
+
+        Transaction loaded = manager.getTransactions().withID(7).asList().get(0);
+        assertEquals(start.getTime(), loaded.getStartTime());
+        assertEquals(activated.getTime(), loaded.getActivationTime());
+
+        manager.addTransaction(new RentTransaction(8, TestUtils.getTestCustomer(), vehicle, start, 3));
+        String text = new String(Files.readAllBytes(transactions.toPath()));
+        assertTrue(text.contains("\"activationDate\":" + activated.getTime()));
+    }
+
+    /**
+     * Check that the epoch itself is a real time, kept through the file and exports rather than taken as unset, and
+     * that change events are stamped by the manager's clock
+     */
+    @Test
+    void testEpochIsARealTime() throws IOException, InterruptedException {
+        clock.set(new Date(0));
+        List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(2);
+        manager.getChangeFeed().subscribe(new ChangeListener() {
+            @Override
+            public void onSubscribe(ChangeFeed.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onEvent(ChangeEvent event) {
+                events.add(event);
+                received.countDown();
+            }
+
+            @Override
+            public void onOverflow(long lastSequence) {
+            }
+        }, 10);
+
+        manager.addTransaction(new RentTransaction(1, TestUtils.getTestCustomer(), vehicle, start, 3));
+        manager.activateTransaction(1);
+
+        Transaction loaded = new VehicleManager(vehicles, transactions, clock).getTransactions().withID(1).asList()
+                .get(0);
+        assertEquals(0, loaded.getActivationTime());
+        assertEquals(new Date(0), loaded.getActivationDate());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manager.getTransactions().withID(1).export(out, ExportFormat.NDJSON);
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\"activationTime\":0"), out.toString());
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertEquals(0, events.get(0).getTimestamp());
+        assertEquals(0, events.get(1).getTimestamp());
+    }
+}
@@ -1,4 +1,10 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.GregorianCalendar;
 
 public class TestUtils {
@@ -39,4 +45,49 @@ public class TestUtils {
         return leaseTransaction;
     }
 
+    /**
+     * The test customer's address and name with their own contact details, for telling customers apart
+     */
+    static Customer getTestCustomer(String lastName, Address address, String phone, String email) {
+        return new Customer("Test", lastName, address, phone, email);
+    }
+
+    static Customer getTestCustomer(String email) {
+        return getTestCustomer("Customer", address, "5550000000", email);
+    }
+
+    /**
+     * A three day draft rental
+     */
+    static RentTransaction rentFor(int id, Customer customer, Vehicle vehicle, Date start) {
+        return new RentTransaction(id, customer, vehicle, start, 3);
+    }
+
+    /**
+     * A day of December 2030, far enough ahead that transactions starting then can still be activated
+     */
+    static Date day(int day) {
+        return new GregorianCalendar(2030, Calendar.DECEMBER, day).getTime();
+    }
+
+    /**
+     * Create an empty file in the directory, or empty the one already there
+     */
+    static File emptyFile(Path dir, String name) throws IOException {
+        File file = dir.resolve(name).toFile();
+        new FileWriter(file).close();
+        return file;
+    }
+
+    /**
+     * A manager on empty vehicles.json and transactions.json files in the directory
+     */
+    static VehicleManager emptyManager(Path dir) throws IOException {
+        return new VehicleManager(emptyFile(dir, "vehicles.json"), emptyFile(dir, "transactions.json"));
+    }
+
+    static VehicleManager emptyManager(Path dir, Clock clock) throws IOException {
+        return new VehicleManager(emptyFile(dir, "vehicles.json"), emptyFile(dir, "transactions.json"), clock);
+    }
+
 }
@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestVehicleManagerServer {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private VehicleManagerServer server;
+    private String base;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+        server = new VehicleManagerServer(manager, 0, 4);
+        server.start();
+        base = "http://localhost:" + server.getPort();
+    }
+
+    /**
+     * Make a request and return the status code followed by the response body
+     */
+    private String send(String path, String method, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return status + " " + (in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Walk through adding a vehicle and a transaction, querying it, and cancelling it over HTTP
+     */
+    @Test
+    void testTransactionLifecycle() throws IOException {
+        try {
+            String vehicle = "{\"make\":\"Ford\",\"model\":\"Focus\",\"vin\":\"12345678901234567\",\"year\":2004,"
+                    + "\"price\":1800.0,\"type\":\"SEDAN\"}";
+            assertTrue(send("/vehicles", "POST", vehicle).startsWith("201"));
+            assertTrue(send("/vehicles?make=ford&maxPrice=2000", "GET", null).contains("12345678901234567"));
+            assertEquals("200 []", send("/vehicles?type=suv,truck_or_van", "GET", null));
+            assertTrue(send("/vehicles?type=boat", "GET", null).startsWith("400"));
+            assertTrue(send("/vehicles/available?type=sedan&from=0&days=2", "GET", null).contains("12345678901234567"));
+            assertTrue(send("/vehicles/available?type=sedan&days=2", "GET", null).startsWith("400"));
+
+            String rent = "{\"type\":\"rent\",\"id\":7,\"days\":3,\"state\":\"DRAFT\",\"vehicle\":" + vehicle
+                    + ",\"customer\":{\"firstName\":\"Jake\",\"lastName\":\"Strang\",\"email\":\"jake@notadomain.null\"}}";
+            assertTrue(send("/transactions", "POST", rent).startsWith("201"));
+
+            String found = send("/transactions?email=jake%40notadomain.null&state=draft", "GET", null);
+            assertTrue(found.startsWith("200 [{"), found);
+            assertTrue(found.contains("\"id\":7") && found.contains("\"type\":\"rent\""), found);
+
+            // Price is worked out by the server rather than trusted from the client
+            assertTrue(found.contains("\"price\":119.97"), found);
+            assertTrue(send("/transactions/7", "GET", null).startsWith("200"));
+
+            // Exports take the same filters and stream back one row per transaction
+            String export = send("/transactions/export?format=ndjson&email=jake%40notadomain.null", "GET", null);
+            assertTrue(export.startsWith("200 {\"id\":7,\"type\":\"rent\""), export);
+            assertTrue(send("/transactions/export?format=xml", "GET", null).startsWith("400"));
+
+            assertEquals("200 []", send("/transactions?sort=-price&limit=0", "GET", null));
+            assertTrue(send("/transactions?sort=-price&limit=1", "GET", null).contains("\"id\":7"));
+            assertTrue(send("/transactions?limit=-1", "GET", null).startsWith("400"));
+
+            // Bad requests come back as client errors with a message
+            assertTrue(send("/transactions/999/activate", "POST", null).startsWith("400 {\"error\""));
+            assertTrue(send("/transactions/abc", "GET", null).startsWith("400"));
+            assertTrue(send("/vehicles", "PUT", null).startsWith("405"));
+            assertTrue(send("/vehiclesX", "GET", null).startsWith("404"));
+            assertTrue(send("/transactionsfoo/7", "GET", null).startsWith("404"));
+            assertTrue(send("/transactions/7/foo", "POST", null).startsWith("404"));
+            assertTrue(send("/transactions/7/activate", "GET", null).startsWith("405"));
+
+            // Transactions can't be created or updated straight into ACTIVE, only activated
+            String active = rent.replace("\"id\":7", "\"id\":8").replace("DRAFT", "ACTIVE")
+                    .replace("\"days\":3", "\"days\":3,\"activationDate\":1000");
+            assertTrue(send("/transactions", "POST", active).startsWith("201"));
+            String created = send("/transactions/8", "GET", null);
+            assertTrue(created.contains("\"state\":\"DRAFT\"") && !created.contains("activationDate"), created);
+            assertTrue(send("/transactions/8", "PUT", active).startsWith("400"));
+            assertTrue(send("/transactions/8", "PUT", rent.replace("\"id\":7", "\"id\":8")).startsWith("200"));
+            assertTrue(send("/transactions/8", "DELETE", null).startsWith("204"));
+            assertTrue(send("/transactions/8", "DELETE", null).startsWith("404"));
+
+            assertTrue(send("/transactions/7", "DELETE", null).startsWith("204"));
+            assertEquals("200 []", send("/transactions", "GET", null));
+
+            // An active transaction that has started can't be cancelled, and stays put
+            Transaction started = TestUtils.rentFor(9, TestUtils.getTestCustomer(), manager.getVehicles().get(0),
+                    new Date(System.currentTimeMillis() - 24 * 60 * 60 * 1000));
+            started.state = TransactionState.ACTIVE;
+            manager.addTransaction(started);
+            assertTrue(send("/transactions/9", "DELETE", null).startsWith("409"));
+            assertTrue(send("/transactions/9", "GET", null).startsWith("200"));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TestVehicleQuery {
+
+    @TempDir
+    Path tempDir;
+
+    private VehicleManager manager;
+    private List<Vehicle> catalog;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        File vehicles = tempDir.resolve("vehicles.json").toFile();
+        File transactions = tempDir.resolve("transactions.json").toFile();
+        catalog = new WorkloadGenerator(13).generateVehicles(2000);
+        WorkloadGenerator.writeFiles(vehicles, transactions, catalog, new ArrayList<>());
+        manager = new VehicleManager(vehicles, transactions);
+    }
+
+    private List<Vehicle> scan(Predicate<Vehicle> filter) {
+        List<Vehicle> matches = new ArrayList<>();
+        for (Vehicle vehicle : manager.getVehicles()) {
+            if (filter.test(vehicle)) {
+                matches.add(vehicle);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Check that combined conditions find the same vehicles as scanning the catalog
+     */
+    @Test
+    void testMatchesScan() throws IOException {
+        String make = catalog.get(0).getMake();
+        assertEquals(scan(v -> v.getType() == VehicleType.SUV || v.getType() == VehicleType.SEDAN),
+                manager.findVehicles().withType(VehicleType.SUV, VehicleType.SEDAN).asList());
+        assertEquals(scan(v -> v.getMake().equals(make) && v.getYear() >= 2010 && v.getYear() <= 2015),
+                manager.findVehicles().withMake(make.toUpperCase()).withYearBetween(2010, 2015).asList());
+        assertEquals(scan(v -> v.getType() == VehicleType.TRUCK_OR_VAN && v.getPrice() >= 10000
+                        && v.getPrice() <= 20000),
+                manager.findVehicles().withPriceBetween(10000, 20000).withType(VehicleType.TRUCK_OR_VAN).asList());
+
+        assertEquals(2000, manager.findVehicles().count());
+        assertEquals(0, manager.findVehicles().withMake("No such make").count());
+        assertEquals(0, manager.findVehicles().withYearBetween(2020, 2010).count());
+    }
+
+    /**
+     * Check that ordering by price walks the price index cheapest first, ties kept in catalog order
+     */
+    @Test
+    void testOrderByPrice() throws IOException {
+        List<Vehicle> expected = scan(v -> v.getType() == VehicleType.SEDAN);
+        expected.sort(Comparator.comparingDouble(Vehicle::getPrice));
+        assertEquals(expected, manager.findVehicles().withType(VehicleType.SEDAN).orderByPrice().asList());
+    }
+
+    /**
+     * Check that searches see vehicles added after the last search
+     */
+    @Test
+    void testSeesChanges() throws IOException {
+        manager = TestUtils.emptyManager(tempDir);
+
+        assertEquals(0, manager.findVehicles().withModel("focus").count());
+        Vehicle focus = new Vehicle("Ford", "Focus", "12345678901234567", 2004, 1800, VehicleType.SEDAN);
+        manager.addVehicle(focus);
+        assertEquals(Arrays.asList(focus), manager.findVehicles().withModel("focus").asList());
+        assertEquals(Arrays.asList(focus), manager.getVehicles(VehicleType.SEDAN));
+    }
+
+    /**
+     * Check that changing the list getVehicles returns doesn't change the vehicles or what a search finds
+     */
+    @Test
+    void testReturnedListIsACopy() throws IOException {
+        long suvs = manager.findVehicles().withType(VehicleType.SUV).count();
+        List<Vehicle> returned = manager.getVehicles();
+        returned.clear();
+        assertEquals(2000, manager.getVehicles().size());
+        assertEquals(suvs, manager.findVehicles().withType(VehicleType.SUV).count());
+        assertEquals(2000, manager.findVehicles().count());
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds synthetic vehicles, customers and transactions at whatever scale a load test needs, with rough real world
+ * shapes: most vehicles are sedans, a minority of customers account for most transactions, rentals far outnumber
+ * leases and buys and are mostly short, and start dates spread a year either side of now.
+ *
+ * Generation is seeded so two runs with the same settings produce the same data.
+ */
+public class WorkloadGenerator {
+
+    private static final String[][] MODELS = {
+            {"Toyota", "Camry"}, {"Toyota", "Rav 4"}, {"Honda", "Civic"}, {"Honda", "CR-V"}, {"Ford", "Focus"},
+            {"Ford", "F-150"}, {"Chevrolet", "Malibu"}, {"Chevrolet", "Tahoe"}, {"Nissan", "Altima"},
+            {"Mazda", "6"}, {"Subaru", "Outback"}, {"Dodge", "Caravan"}
+    };
+    private static final String[] FIRST_NAMES = {"Jake", "Maria", "Wei", "Aisha", "Carlos", "Emma", "Noah", "Priya",
+            "Liam", "Fatima", "Olga", "Kenji"};
+    private static final String[] LAST_NAMES = {"Strang", "Garcia", "Chen", "Okafor", "Smith", "Nguyen", "Kowalski",
+            "Patel", "Johnson", "Rossi", "Ivanova", "Tanaka", "Brown", "Silva"};
+    private static final String[] DOMAINS = {"gmail.test", "yahoo.test", "outlook.test", "corp.test", "umgc.test"};
+    private static final String[][] PLACES = {
+            {"Maryland", "Baltimore", "21201"}, {"Virginia", "Arlington", "22201"}, {"California", "San Jose", "95112"},
+            {"Texas", "Austin", "73301"}, {"New York", "Buffalo", "14201"}, {"Florida", "Tampa", "33601"}
+    };
+    private static final char[] VIN_CHARS = "ABCDEFGHJKLMNPRSTUVWXYZ0123456789".toCharArray();
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Random random;
+
+    public WorkloadGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public List<Vehicle> generateVehicles(int count) {
+        List<Vehicle> vehicles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] model = MODELS[random.nextInt(MODELS.length)];
+            double roll = random.nextDouble();
+            VehicleType type = roll < 0.5 ? VehicleType.SEDAN : roll < 0.8 ? VehicleType.SUV : VehicleType.TRUCK_OR_VAN;
+
+            // Prices cluster around 25k with a long tail towards the expensive end
+            float price = (float) Math.round(25000 * Math.exp(random.nextGaussian() * 0.4));
+            vehicles.add(new Vehicle(model[0], model[1], vin(i), 2005 + random.nextInt(20), price, type));
+        }
+        return vehicles;
+    }
+
+    public List<Customer> generateCustomers(int count) {
+        List<Customer> customers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            String[] place = PLACES[(int) Math.min(PLACES.length - 1, Math.abs(random.nextGaussian()) * 2)];
+            Address address = new Address((100 + random.nextInt(9900)) + " Main St.", place[0], place[2], "USA",
+                    place[1]);
+            String phone = String.format("555%07d", random.nextInt(10_000_000));
+            String email = first.toLowerCase() + "." + last.toLowerCase() + i + "@" + DOMAINS[random.nextInt(DOMAINS.length)];
+            customers.add(new Customer(first, last, address, phone, email));
+        }
+        return customers;
+    }
+
+    /**
+     * Generate transactions with sequential IDs starting at firstId against the given vehicles and customers
+     */
+    public List<Transaction> generateTransactions(int count, int firstId, List<Vehicle> vehicles,
+                                                  List<Customer> customers) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            // Squaring a uniform skews picks towards the start of the list, so some customers are regulars
+            Customer customer = customers.get((int) (Math.pow(random.nextDouble(), 2) * customers.size()));
+            Vehicle vehicle = vehicles.get(random.nextInt(vehicles.size()));
+            Date start = new Date(now + (long) ((random.nextDouble() * 2 - 1) * 365) * DAY_MILLIS);
+            transactions.add(generateTransaction(firstId + i, customer, vehicle, start));
+        }
+        return transactions;
+    }
+
+    /**
+     * One transaction of a random kind, 60% rentals, 25% leases and 15% buys
+     */
+    public Transaction generateTransaction(int id, Customer customer, Vehicle vehicle, Date start) {
+        double roll = random.nextDouble();
+        Transaction transaction;
+        if (roll < 0.6) {
+            // Mostly short rentals, occasionally a few weeks
+            transaction = new RentTransaction(id, customer, vehicle, start, 1 + (int) (-Math.log(random.nextDouble()) * 5));
+        } else if (roll < 0.85) {
+            transaction = new LeaseTransaction(id, customer, vehicle, start, 12 * (1 + random.nextInt(4)));
+        } else {
+            transaction = new BuyTransaction(id, customer, vehicle, start, random.nextInt(4) * 500f);
+        }
+
+        // Transactions that have already started are mostly active
+        if (start.getTime() < System.currentTimeMillis() && random.nextDouble() < 0.8) {
+            transaction.state = TransactionState.ACTIVE;
+            transaction.activationTime = start.getTime() - DAY_MILLIS;
+        }
+        return transaction;
+    }
+
+    /**
+     * A draft of a random kind starting up to sixty days from now, so it can still be activated
+     */
+    public Transaction generateDraft(int id, Customer customer, Vehicle vehicle) {
+        return generateTransaction(id, customer, vehicle,
+                new Date(System.currentTimeMillis() + (1 + random.nextInt(60)) * DAY_MILLIS));
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Write vehicles and transactions straight to data files in the manager's format. Much faster than adding them
+     * one by one through a manager, which rewrites the whole file on every add
+     */
+    public static void writeFiles(File vehiclesFile, File transactionsFile, List<Vehicle> vehicles,
+                                  List<Transaction> transactions) throws IOException {
+        try (Writer writer = new FileWriter(vehiclesFile)) {
+            VehicleManager.gson.toJson(vehicles, writer);
+        }
+        transactions.forEach(Transaction::labelType);
+        try (Writer writer = new FileWriter(transactionsFile)) {
+            VehicleManager.gson.toJson(transactions, writer);
+        }
+    }
+
+    private String vin(int index) {
+        // Unique per index, padded out with random characters to the 17 a VIN needs
+        StringBuilder vin = new StringBuilder(String.format("%08d", index));
+        while (vin.length() < 17) {
+            vin.append(VIN_CHARS[random.nextInt(VIN_CHARS.length)]);
+        }
+        return vin.toString();
+    }
+}